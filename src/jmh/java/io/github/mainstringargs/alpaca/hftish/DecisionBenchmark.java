@@ -0,0 +1,167 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import picocli.CommandLine;
+
+/**
+ * Measures the full onTrade decision when it signals: a new untraded level with a bid-heavy book,
+ * then a trade at the ask, through the position and buying power reservations to the order
+ * handed to a stubbed router. The reservations are released again after each operation so every
+ * trade signals. Run single-threaded, and with four symbols on four threads contending for the
+ * shared {@link AccountState}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecisionBenchmark {
+
+    /** The number of distinct levels cycled through. */
+    private static final int LEVELS = 1024;
+
+    /**
+     * The buying power every symbol reserves from.
+     */
+    @State(Scope.Benchmark)
+    public static class Account {
+
+        /** The account state. */
+        final AccountState accountState = new AccountState(null);
+
+        /**
+         * Sets up buying power that is never exhausted.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            accountState.setBuyingPowerCents(Long.MAX_VALUE / 2);
+        }
+    }
+
+    /**
+     * One symbol's algorithm and the router that captures its orders.
+     */
+    @State(Scope.Thread)
+    public static class Symbol implements OrderRouter {
+
+        /** The algorithm. */
+        Algorithm algorithm;
+
+        /** The account state. */
+        AccountState accountState;
+
+        /**
+         * The risk gate. Each thread keeps its own, since the threads' trade clocks drift apart
+         * and would trip a shared order rate limit; {@link RiskGateBenchmark} measures sharing.
+         */
+        RiskGate riskGate;
+
+        /** The last intent submitted. */
+        OrderIntent intent;
+
+        /** The bids, in ticks. */
+        final long[] bids = new long[LEVELS];
+
+        /** The time. */
+        long time;
+
+        /** The next level. */
+        int next;
+
+        /**
+         * Sets up the algorithm on alternating penny-spread levels, so every quote is a level
+         * change.
+         *
+         * @param account the account
+         */
+        @Setup(Level.Trial)
+        public void setUp(Account account) {
+            AlgoConfig algoConfig = new AlgoConfig();
+            new CommandLine(algoConfig).parseArgs("--quantity", "1000");
+
+            accountState = account.accountState;
+            riskGate = new RiskGate(algoConfig);
+            algorithm = new Algorithm("SNAP", algoConfig, accountState, this, riskGate, null,
+                            null, null);
+
+            for (int i = 0; i < LEVELS; i++) {
+                bids[i] = 10 * Ticks.PER_DOLLAR + (i % 2) * Ticks.PER_CENT;
+            }
+
+            // Only a change from one penny-spread level to another resets the traded flag
+            algorithm.onQuote(0, bids[LEVELS - 1], bids[LEVELS - 1] + Ticks.PER_CENT, 900, 100);
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see io.github.mainstringargs.alpaca.hftish.OrderRouter#submit(io.github.mainstringargs.
+         * alpaca.hftish.OrderIntent)
+         */
+        @Override
+        public boolean submit(OrderIntent intent) {
+            this.intent = intent;
+            return true;
+        }
+    }
+
+    /**
+     * Runs one signalling quote and trade, then releases what the order reserved.
+     *
+     * @param symbol the symbol
+     * @return the order
+     */
+    private static OrderIntent signal(Symbol symbol) {
+        int i = symbol.next++ & (LEVELS - 1);
+        long ask = symbol.bids[i] + Ticks.PER_CENT;
+
+        symbol.time += 100;
+        symbol.algorithm.onQuote(symbol.time, symbol.bids[i], ask, 900, 100);
+        symbol.time += 100;
+        symbol.algorithm.onTrade(symbol.time, ask, 100, System.nanoTime());
+
+        OrderIntent intent = symbol.intent;
+        symbol.algorithm.getPosition().updatePendingBuyShares(-intent.getQuantity());
+        symbol.accountState.release(Ticks.toCents(intent.getLimitPrice()) * intent.getQuantity());
+        symbol.riskGate.release();
+
+        return intent;
+    }
+
+    /**
+     * A signal on one thread.
+     *
+     * @param symbol the symbol
+     * @return the order
+     */
+    @Benchmark
+    @Threads(1)
+    public OrderIntent decide(Symbol symbol) {
+        return signal(symbol);
+    }
+
+    /**
+     * A signal on each of four threads, sharing one account.
+     *
+     * @param symbol the symbol
+     * @return the order
+     */
+    @Benchmark
+    @Threads(4)
+    public OrderIntent decideContended(Symbol symbol) {
+        return signal(symbol);
+    }
+
+}
@@ -0,0 +1,111 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-tick cost of journaling a quote or trade and running it through an
+ * {@link Algorithm}. Run with the gc profiler; gc.alloc.rate.norm should be 0 bytes per operation
+ * in steady state. The trades never signal, so no order is built.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HotPathBenchmark {
+
+    /** The Constant SYMBOL. */
+    private static final String SYMBOL = "SNAP";
+
+    /** The number of distinct quotes cycled through. */
+    private static final int QUOTES = 1024;
+
+    /** The journal. */
+    private EventJournal journal;
+
+    /** The algorithm. */
+    private Algorithm algorithm;
+
+    /** The bids, in ticks. */
+    private final long[] bids = new long[QUOTES];
+
+    /** The time. */
+    private long time;
+
+    /** The next quote. */
+    private int next;
+
+    /**
+     * Sets up the journal, its drain thread and the algorithm, on alternating penny-spread levels
+     * so roughly half of the quotes are level changes.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        journal = new EventJournal(EventJournal.DEFAULT_CAPACITY);
+        journal.start();
+
+        AlgoConfig algoConfig = new AlgoConfig();
+        AccountState accountState = new AccountState(null);
+        algorithm = new Algorithm(SYMBOL, algoConfig, accountState, new SimulatedBroker(),
+                        new RiskGate(algoConfig), journal, null, null);
+
+        for (int i = 0; i < QUOTES; i++) {
+            bids[i] = 10 * Ticks.PER_DOLLAR + (i % 2) * Ticks.PER_CENT;
+        }
+
+        // Two penny-spread levels in a row, so the current level is untraded and trades are
+        // evaluated all the way through the imbalance checks
+        algorithm.onQuote(0, bids[0], bids[0] + Ticks.PER_CENT, 10, 10);
+        algorithm.onQuote(0, bids[1], bids[1] + Ticks.PER_CENT, 10, 10);
+    }
+
+    /**
+     * Stops the drain thread.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        journal.stop();
+    }
+
+    /**
+     * A quote.
+     */
+    @Benchmark
+    public void quote() {
+        int i = next++ & (QUOTES - 1);
+        long bid = bids[i];
+        long nanos = System.nanoTime();
+        time += 100;
+
+        journal.recordQuote(SYMBOL, time, bid, bid + Ticks.PER_CENT, 10, 10, nanos);
+        algorithm.onQuote(time, bid, bid + Ticks.PER_CENT, 10, 10);
+    }
+
+    /**
+     * A trade at the ask with balanced sizes, so it is evaluated but not followed.
+     */
+    @Benchmark
+    public void trade() {
+        int i = next++ & (QUOTES - 1);
+        long price = bids[i] + Ticks.PER_CENT;
+        long nanos = System.nanoTime();
+        time += 100;
+
+        journal.recordTrade(SYMBOL, time, price, 100, nanos);
+        algorithm.onTrade(time, price, 100, nanos);
+    }
+
+}
@@ -0,0 +1,63 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures counting an event in {@link EngineMetrics} on one thread and on four counting the same
+ * metric, as the feed threads and workers do, against a single shared {@link AtomicLong}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    /** The metrics. */
+    private final EngineMetrics metrics = new EngineMetrics();
+
+    /** The shared counter. */
+    private final AtomicLong counter = new AtomicLong();
+
+    /**
+     * An increment on one thread.
+     */
+    @Benchmark
+    @Threads(1)
+    public void increment() {
+        metrics.increment(Metric.TRADES);
+    }
+
+    /**
+     * An increment on each of four threads.
+     */
+    @Benchmark
+    @Threads(4)
+    public void incrementContended() {
+        metrics.increment(Metric.TRADES);
+    }
+
+    /**
+     * An increment of one shared atomic on each of four threads.
+     *
+     * @return the count
+     */
+    @Benchmark
+    @Threads(4)
+    public long atomicContended() {
+        return counter.incrementAndGet();
+    }
+
+}
@@ -0,0 +1,162 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The monitor-based Quote as it was before the sequence lock and fixed-point prices, kept as a
+ * baseline for {@link QuoteBenchmark}. Every accessor takes the monitor, and level changes are
+ * detected by rounding doubles.
+ */
+public class MonitorQuote {
+
+    /** The Constant DOUBLE_THRESHOLD. */
+    private static final double DOUBLE_THRESHOLD = .0001;
+
+    /** The prev bid. */
+    private double prevBid = 0.0;
+
+    /** The prev ask. */
+    private double prevAsk = 0.0;
+
+    /** The prev spread. */
+    private double prevSpread = 0.0;
+
+    /** The bid. */
+    private double bid = 0.0;
+
+    /** The ask. */
+    private double ask = 0.0;
+
+    /** The bid size. */
+    private long bidSize = 0;
+
+    /** The ask size. */
+    private long askSize = 0;
+
+    /** The spread. */
+    private double spread = 0.0;
+
+    /** The traded. */
+    private boolean traded = true;
+
+    /** The level ct. */
+    private long levelCt = 1;
+
+    /** The time. */
+    private long time = 0;
+
+    /**
+     * Round value to specified number of places.
+     *
+     * @param value the value
+     * @param places the places
+     * @return the double
+     */
+    private static double round(double value, int places) {
+        double scale = Math.pow(10, places);
+        return Math.round(value * scale) / scale;
+    }
+
+    /**
+     * Update.
+     *
+     * @param quoteTime the quote time
+     * @param bidPrice the bid price
+     * @param askPrice the ask price
+     * @param quoteBidSize the quote bid size
+     * @param quoteAskSize the quote ask size
+     */
+    public synchronized void update(long quoteTime, double bidPrice, double askPrice,
+                    long quoteBidSize, long quoteAskSize) {
+        this.bidSize = quoteBidSize;
+        this.askSize = quoteAskSize;
+
+        if ((Math.abs(round(bid - bidPrice, 3)) > DOUBLE_THRESHOLD)
+                        && (Math.abs(round(ask - askPrice, 3)) > DOUBLE_THRESHOLD)
+                        && (round(askPrice - bidPrice, 2) == 0.01)) {
+            this.prevBid = this.bid;
+            this.prevAsk = this.ask;
+            this.bid = bidPrice;
+            this.ask = askPrice;
+            this.time = quoteTime;
+            this.prevSpread = round(this.prevAsk - this.prevBid, 3);
+            this.spread = round(this.ask - this.bid, 3);
+
+            if (prevSpread == 0.01) {
+                traded = false;
+                levelCt += 1;
+            }
+        }
+    }
+
+    /**
+     * Gets the bid.
+     *
+     * @return the bid
+     */
+    public synchronized double getBid() {
+        return bid;
+    }
+
+    /**
+     * Gets the ask.
+     *
+     * @return the ask
+     */
+    public synchronized double getAsk() {
+        return ask;
+    }
+
+    /**
+     * Gets the bid size.
+     *
+     * @return the bid size
+     */
+    public synchronized long getBidSize() {
+        return bidSize;
+    }
+
+    /**
+     * Gets the ask size.
+     *
+     * @return the ask size
+     */
+    public synchronized long getAskSize() {
+        return askSize;
+    }
+
+    /**
+     * Gets the time.
+     *
+     * @return the time
+     */
+    public synchronized long getTime() {
+        return time;
+    }
+
+    /**
+     * Checks if is traded.
+     *
+     * @return true, if is traded
+     */
+    public synchronized boolean isTraded() {
+        return traded;
+    }
+
+    /**
+     * Gets the spread.
+     *
+     * @return the spread
+     */
+    public synchronized double getSpread() {
+        return spread;
+    }
+
+    /**
+     * Gets the level ct.
+     *
+     * @return the level ct
+     */
+    public synchronized long getLevelCt() {
+        return levelCt;
+    }
+
+}
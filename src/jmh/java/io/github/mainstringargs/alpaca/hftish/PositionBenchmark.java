@@ -0,0 +1,165 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+
+/**
+ * Measures {@link Position} bookkeeping: the single-threaded life of an order from reservation
+ * through ack, a partial fill and the final fill, and the share reservations alone with buyers
+ * and sellers contending for one position.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionBenchmark {
+
+    /** The number of distinct order ids cycled through. */
+    private static final int ORDERS = 1024;
+
+    /** The limit. */
+    private static final long LIMIT = 1000;
+
+    /**
+     * A position and precomputed order ids, so the cycle allocates nothing of its own.
+     */
+    @State(Scope.Thread)
+    public static class Orders {
+
+        /** The position. */
+        final Position position = new Position();
+
+        /** The order ids. */
+        final String[] orderIds = new String[ORDERS];
+
+        /** The buy intent. */
+        final OrderIntent buy = new OrderIntent("SNAP", 100, OrderSide.BUY, Ticks.PER_DOLLAR, 0);
+
+        /** The sell intent. */
+        final OrderIntent sell =
+                        new OrderIntent("SNAP", 100, OrderSide.SELL, Ticks.PER_DOLLAR, 0);
+
+        /** The next order. */
+        int next;
+
+        /**
+         * Instantiates the order ids.
+         */
+        public Orders() {
+            for (int i = 0; i < ORDERS; i++) {
+                orderIds[i] = "order-" + i;
+            }
+        }
+    }
+
+    /**
+     * A position shared by the contending threads.
+     */
+    @State(Scope.Group)
+    public static class Shared {
+
+        /** The position. */
+        final Position position = new Position();
+
+        /**
+         * Sets up shares for the sellers to reserve.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            position.setTotalShares(LIMIT / 2);
+        }
+    }
+
+    /**
+     * Runs one order's life.
+     *
+     * @param orders the orders
+     * @param intent the intent
+     * @param orderId the order id
+     */
+    private static void cycle(Orders orders, OrderIntent intent, String orderId) {
+        Position position = orders.position;
+        OrderSide side = intent.getSide();
+
+        if (side == OrderSide.BUY) {
+            position.tryReserveBuy(intent.getQuantity(), LIMIT);
+        } else {
+            position.tryReserveSell(intent.getQuantity());
+        }
+
+        position.onOrderAccepted(intent, orderId);
+        position.updateFilledAmount(orderId, intent.getQuantity() / 2, side);
+        position.updateFilledAmount(orderId, intent.getQuantity(), side);
+        position.removePendingOrder(orderId, intent.getQuantity(), side);
+    }
+
+    /**
+     * A buy and then a sell, each reserved, acknowledged, partially filled and filled.
+     *
+     * @param orders the orders
+     * @return the total shares
+     */
+    @Benchmark
+    public long fillCycle(Orders orders) {
+        int i = orders.next;
+        orders.next = (i + 2) & (ORDERS - 1);
+
+        cycle(orders, orders.buy, orders.orderIds[i]);
+        cycle(orders, orders.sell, orders.orderIds[i + 1]);
+
+        return orders.position.getTotalShares();
+    }
+
+    /**
+     * Reserves and releases buy shares on the shared position.
+     *
+     * @param shared the shared
+     * @return true, if the shares were reserved
+     */
+    @Benchmark
+    @Group("reservations")
+    @GroupThreads(2)
+    public boolean reserveBuy(Shared shared) {
+        boolean reserved = shared.position.tryReserveBuy(100, LIMIT);
+
+        if (reserved) {
+            shared.position.updatePendingBuyShares(-100);
+        }
+
+        return reserved;
+    }
+
+    /**
+     * Reserves and releases sell shares on the shared position.
+     *
+     * @param shared the shared
+     * @return true, if the shares were reserved
+     */
+    @Benchmark
+    @Group("reservations")
+    @GroupThreads(2)
+    public boolean reserveSell(Shared shared) {
+        boolean reserved = shared.position.tryReserveSell(100);
+
+        if (reserved) {
+            shared.position.updatePendingSellShares(-100);
+        }
+
+        return reserved;
+    }
+
+}
@@ -0,0 +1,201 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the sequence-locked, fixed-point {@link Quote} with the old monitor-based, floating
+ * point {@link MonitorQuote} under contention: one market data writer updating the quote while
+ * three readers take the six-field view that onTrade decides on. The uncontended update, as the
+ * symbol's worker runs it, is measured on its own, as are recording a trade against the level
+ * statistics and reading a level back from the history.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuoteBenchmark {
+
+    /** The number of distinct quotes the writer cycles through. */
+    private static final int QUOTES = 1024;
+
+    /** The bids. */
+    private static final double[] BIDS = new double[QUOTES];
+
+    /** The asks. */
+    private static final double[] ASKS = new double[QUOTES];
+
+    /** The bids, in ticks. */
+    private static final long[] BID_TICKS = new long[QUOTES];
+
+    /** The asks, in ticks. */
+    private static final long[] ASK_TICKS = new long[QUOTES];
+
+    // The tape: alternating penny-spread levels so roughly half of the updates are level changes
+    static {
+        for (int i = 0; i < QUOTES; i++) {
+            BIDS[i] = 10.00 + (i % 2) * 0.01;
+            ASKS[i] = BIDS[i] + 0.01;
+            BID_TICKS[i] = Ticks.fromPrice(BIDS[i]);
+            ASK_TICKS[i] = Ticks.fromPrice(ASKS[i]);
+        }
+    }
+
+    /**
+     * The quotes shared by a group's writer and readers.
+     */
+    @State(Scope.Group)
+    public static class Quotes {
+
+        /** The quote. */
+        final Quote quote = new Quote();
+
+        /** The monitor quote. */
+        final MonitorQuote monitorQuote = new MonitorQuote();
+
+        /** The next quote. */
+        int next;
+    }
+
+    /**
+     * A quote of the thread's own, for the uncontended benchmarks.
+     */
+    @State(Scope.Thread)
+    public static class OwnQuote {
+
+        /** The quote. */
+        final Quote quote = new Quote();
+
+        /** The level view. */
+        final LevelView levelView = new LevelView();
+
+        /** The next quote. */
+        int next;
+    }
+
+    /**
+     * The per-reader view.
+     */
+    @State(Scope.Thread)
+    public static class Reader {
+
+        /** The view. */
+        final QuoteView view = new QuoteView();
+    }
+
+    /**
+     * Seqlock update with no readers.
+     *
+     * @param own the thread's quote
+     * @return true, if the level changed
+     */
+    @Benchmark
+    public boolean update(OwnQuote own) {
+        int i = own.next++ & (QUOTES - 1);
+        return own.quote.update(i, BID_TICKS[i], ASK_TICKS[i], 100 + i, 200 + i);
+    }
+
+    /**
+     * Recording a trade against the current level.
+     *
+     * @param own the thread's quote
+     */
+    @Benchmark
+    public void recordTrade(OwnQuote own) {
+        int i = own.next++ & (QUOTES - 1);
+        own.quote.recordTrade(ASK_TICKS[i], 100 + i);
+    }
+
+    /**
+     * Reading a level from part way back in the history, as a look back over recent levels would.
+     *
+     * @param own the thread's quote
+     * @return true, if the level was still in the history
+     */
+    @Benchmark
+    public boolean readLevel(OwnQuote own) {
+        int i = own.next++ & (QUOTES - 1);
+        own.quote.update(i, BID_TICKS[i], ASK_TICKS[i], 100 + i, 200 + i);
+
+        Quote quote = own.quote;
+        return quote.readLevel(quote.getLevelCt() - (i & 31), own.levelView);
+    }
+
+    /**
+     * Seqlock writer.
+     *
+     * @param quotes the quotes
+     */
+    @Benchmark
+    @Group("seqlock")
+    @GroupThreads(1)
+    public void seqlockWrite(Quotes quotes) {
+        int i = quotes.next++ & (QUOTES - 1);
+        quotes.quote.update(i, BID_TICKS[i], ASK_TICKS[i], 100 + i, 200 + i);
+    }
+
+    /**
+     * Seqlock reader.
+     *
+     * @param quotes the quotes
+     * @param reader the reader
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    @Group("seqlock")
+    @GroupThreads(3)
+    public void seqlockRead(Quotes quotes, Reader reader, Blackhole blackhole) {
+        quotes.quote.read(reader.view);
+        blackhole.consume(reader.view.getBid());
+        blackhole.consume(reader.view.getAsk());
+        blackhole.consume(reader.view.getBidSize());
+        blackhole.consume(reader.view.getAskSize());
+        blackhole.consume(reader.view.getTime());
+        blackhole.consume(reader.view.isTraded());
+    }
+
+    /**
+     * Monitor writer.
+     *
+     * @param quotes the quotes
+     */
+    @Benchmark
+    @Group("monitor")
+    @GroupThreads(1)
+    public void monitorWrite(Quotes quotes) {
+        int i = quotes.next++ & (QUOTES - 1);
+        quotes.monitorQuote.update(i, BIDS[i], ASKS[i], 100 + i, 200 + i);
+    }
+
+    /**
+     * Monitor reader, taking the monitor once per field the way onTrade used to.
+     *
+     * @param quotes the quotes
+     * @param blackhole the blackhole
+     */
+    @Benchmark
+    @Group("monitor")
+    @GroupThreads(3)
+    public void monitorRead(Quotes quotes, Blackhole blackhole) {
+        MonitorQuote quote = quotes.monitorQuote;
+        blackhole.consume(quote.getBid());
+        blackhole.consume(quote.getAsk());
+        blackhole.consume(quote.getBidSize());
+        blackhole.consume(quote.getAskSize());
+        blackhole.consume(quote.getTime());
+        blackhole.consume(quote.isTraded());
+    }
+
+}
@@ -0,0 +1,99 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import picocli.CommandLine;
+
+/**
+ * Measures the {@link RiskGate} check on the order path: an order that passes every check and
+ * gives its slot straight back, on one thread and on four sharing the gate, and an order the
+ * price collar rejects.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RiskGateBenchmark {
+
+    /** The bid, in ticks. */
+    private static final long BID = 10 * Ticks.PER_DOLLAR;
+
+    /** The ask, in ticks. */
+    private static final long ASK = BID + Ticks.PER_CENT;
+
+    /** The trade time. Every order is at the same instant, so only the rate CAS is measured. */
+    private static final long TIME = 1000;
+
+    /** The risk gate. */
+    private RiskGate riskGate;
+
+    /**
+     * Sets up a gate whose order rate never runs out at a single instant.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        AlgoConfig algoConfig = new AlgoConfig();
+        new CommandLine(algoConfig).parseArgs("--max-orders-per-second", "2000000000",
+                        "--max-open-orders", "1000");
+
+        riskGate = new RiskGate(algoConfig);
+    }
+
+    /**
+     * Checks an order that passes and releases it.
+     *
+     * @return the check
+     */
+    private RiskCheck pass() {
+        RiskCheck check = riskGate.check(100, ASK, BID, ASK, TIME);
+        riskGate.release();
+        return check;
+    }
+
+    /**
+     * A passing order on one thread.
+     *
+     * @return the check
+     */
+    @Benchmark
+    @Threads(1)
+    public RiskCheck check() {
+        return pass();
+    }
+
+    /**
+     * A passing order on each of four threads, sharing the gate.
+     *
+     * @return the check
+     */
+    @Benchmark
+    @Threads(4)
+    public RiskCheck checkContended() {
+        return pass();
+    }
+
+    /**
+     * An order priced far outside the collar.
+     *
+     * @return the check
+     */
+    @Benchmark
+    @Threads(1)
+    public RiskCheck collarRejected() {
+        return riskGate.check(100, 2 * ASK, BID, ASK, TIME);
+    }
+
+}
@@ -0,0 +1,79 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures converting wire prices to {@link Ticks}, which replaced rounding doubles in the quote:
+ * from a decoded double, and parsed straight from the text with Double.parseDouble as the
+ * baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TicksBenchmark {
+
+    /** The number of distinct prices cycled through. */
+    private static final int PRICES = 1024;
+
+    /** The prices. */
+    private final double[] prices = new double[PRICES];
+
+    /** The prices, as text. */
+    private final String[] texts = new String[PRICES];
+
+    /** The next price. */
+    private int next;
+
+    /**
+     * Instantiates the prices, from $10.00 up in cents with the odd sub-penny price.
+     */
+    public TicksBenchmark() {
+        for (int i = 0; i < PRICES; i++) {
+            prices[i] = 10 + i / 100.0 + (i % 7 == 0 ? 0.0025 : 0);
+            texts[i] = Double.toString(prices[i]);
+        }
+    }
+
+    /**
+     * Converts a double.
+     *
+     * @return the ticks
+     */
+    @Benchmark
+    public long fromPrice() {
+        return Ticks.fromPrice(prices[next++ & (PRICES - 1)]);
+    }
+
+    /**
+     * Parses text.
+     *
+     * @return the ticks
+     */
+    @Benchmark
+    public long parse() {
+        return Ticks.parse(texts[next++ & (PRICES - 1)]);
+    }
+
+    /**
+     * Parses text as a double first.
+     *
+     * @return the ticks
+     */
+    @Benchmark
+    public long parseDouble() {
+        return Ticks.fromPrice(Double.parseDouble(texts[next++ & (PRICES - 1)]));
+    }
+
+}
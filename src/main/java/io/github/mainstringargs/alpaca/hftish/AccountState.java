@@ -0,0 +1,211 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.text.DecimalFormat;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The AccountState is a local view of the account's buying power, so a buy decision can be checked
+ * without a REST round trip. It is seeded from the {@link Broker}, adjusted as our own orders are
+ * reserved and filled, and periodically reconciled against the broker in the background.
+ * All amounts are held in cents.
+ */
+public class AccountState {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(AccountState.class);
+
+    /** The Constant DEFAULT_RECONCILE_SECONDS. */
+    public static final long DEFAULT_RECONCILE_SECONDS = 30;
+
+    /** The broker. */
+    private final Broker broker;
+
+    /** The buying power last reported by the broker, adjusted by fills since. */
+    private final AtomicLong buyingPowerCents = new AtomicLong();
+
+    /** The cents reserved by orders that have not finished yet. */
+    private final AtomicLong reservedCents = new AtomicLong();
+
+    /** The reconcile task. */
+    private ScheduledFuture<?> reconcileTask;
+
+    /** The curr format. */
+    DecimalFormat currFormat = new DecimalFormat("'$'0.00");
+
+    /**
+     * Instantiates a new account state.
+     *
+     * @param broker the broker, or null to only track local state
+     */
+    public AccountState(Broker broker) {
+        this.broker = broker;
+    }
+
+    /**
+     * Sets the buying power, for runs without a broker to reconcile against.
+     *
+     * @param cents the cents
+     */
+    public void setBuyingPowerCents(long cents) {
+        buyingPowerCents.set(cents);
+    }
+
+    /**
+     * Replaces the local buying power with the one reported by the broker. Reservations are kept,
+     * so orders still in flight stay accounted for.
+     */
+    public void reconcile() {
+        if (broker == null) {
+            return;
+        }
+
+        long reported;
+        try {
+            reported = broker.getBuyingPowerCents();
+        } catch (BrokerException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        long previous = buyingPowerCents.getAndSet(reported);
+
+        if (previous != reported) {
+            LOGGER.debug("Reconciled buying power " + currFormat.format(previous / 100.0) + " -> "
+                            + currFormat.format(reported / 100.0) + " (reserved "
+                            + currFormat.format(reservedCents.get() / 100.0) + ")");
+        }
+    }
+
+    /**
+     * Starts reconciling on the given scheduler.
+     *
+     * @param scheduledService the scheduled service
+     * @param periodSeconds the period seconds
+     */
+    public synchronized void startReconciliation(ScheduledExecutorService scheduledService,
+                    long periodSeconds) {
+        stopReconciliation();
+        reconcileTask = scheduledService.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                reconcile();
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the background reconciliation.
+     */
+    public synchronized void stopReconciliation() {
+        if (reconcileTask != null) {
+            reconcileTask.cancel(false);
+            reconcileTask = null;
+        }
+    }
+
+    /**
+     * Reserves buying power for an order if enough is available.
+     *
+     * @param cents the notional of the order in cents
+     * @return true, if the buying power was reserved
+     */
+    public boolean tryReserve(long cents) {
+        while (true) {
+            long reserved = reservedCents.get();
+
+            if (buyingPowerCents.get() - reserved <= cents) {
+                return false;
+            }
+
+            if (reservedCents.compareAndSet(reserved, reserved + cents)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reserves buying power for an order submitted before a restart, whether or not it is still
+     * available.
+     *
+     * @param cents the notional of the order in cents
+     */
+    public void reserve(long cents) {
+        reservedCents.addAndGet(cents);
+    }
+
+    /**
+     * Releases a reservation made by {@link #tryReserve(long)}.
+     *
+     * @param cents the cents
+     */
+    public void release(long cents) {
+        while (true) {
+            long reserved = reservedCents.get();
+            long updated = Math.max(0, reserved - cents);
+
+            if (reservedCents.compareAndSet(reserved, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies a fill to the buying power.
+     *
+     * @param buy true if the fill was a buy
+     * @param cents the filled notional in cents
+     */
+    public void onFill(boolean buy, long cents) {
+        buyingPowerCents.addAndGet(buy ? -cents : cents);
+    }
+
+    /**
+     * Gets the buying power not already reserved by in-flight orders.
+     *
+     * @return the available buying power in cents
+     */
+    public long getAvailableCents() {
+        return buyingPowerCents.get() - reservedCents.get();
+    }
+
+    /**
+     * Converts a dollar amount to cents.
+     *
+     * @param dollars the dollars
+     * @return the cents
+     */
+    public static long toCents(double dollars) {
+        return Math.round(dollars * 100);
+    }
+
+    /**
+     * Converts a dollar amount as reported by the REST API to cents.
+     *
+     * @param dollars the dollars
+     * @return the cents, or 0 if the amount is missing
+     */
+    public static long toCents(String dollars) {
+        if (dollars == null || dollars.trim().isEmpty()) {
+            return 0;
+        }
+        return toCents(Double.parseDouble(dollars.trim()));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "AccountState [buyingPower=" + currFormat.format(buyingPowerCents.get() / 100.0)
+                        + ", reserved=" + currFormat.format(reservedCents.get() / 100.0) + "]";
+    }
+
+}
@@ -1,7 +1,12 @@
 package io.github.mainstringargs.alpaca.hftish;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import io.github.mainstringargs.alpaca.enums.OrderSide;
 import io.github.mainstringargs.alpaca.websocket.listener.AlpacaStreamListenerAdapter;
 import io.github.mainstringargs.alpaca.websocket.message.AlpacaStreamMessageType;
+import io.github.mainstringargs.domain.alpaca.order.Order;
 import io.github.mainstringargs.domain.alpaca.websocket.AlpacaStreamMessage;
 import io.github.mainstringargs.domain.alpaca.websocket.trade.TradeUpdateMessage;
 
@@ -15,17 +20,22 @@ import io.github.mainstringargs.domain.alpaca.websocket.trade.TradeUpdateMessage
  */
 public class AlgoAlpacaStreamListener extends AlpacaStreamListenerAdapter {
 
-    /** The algorithm. */
-    private Algorithm algorithm;
+    /** The listener. */
+    private OrderUpdateListener listener;
+
+    /** The symbols traded, as the listener knows them. */
+    private final Set<String> symbols;
 
     /**
      * Instantiates a new algo alpaca stream listener.
      *
-     * @param algorithm the algorithm
+     * @param symbols the symbols traded
+     * @param listener the listener
      */
-    public AlgoAlpacaStreamListener(Algorithm algorithm) {
+    public AlgoAlpacaStreamListener(Collection<String> symbols, OrderUpdateListener listener) {
         super(AlpacaStreamMessageType.TRADE_UPDATES);
-        this.algorithm = algorithm;
+        this.symbols = new HashSet<String>(symbols);
+        this.listener = listener;
     }
 
 
@@ -42,9 +52,69 @@ public class AlgoAlpacaStreamListener extends AlpacaStreamListenerAdapter {
         switch (streamMessageType) {
             case TRADE_UPDATES:
 
-                algorithm.onTradeUpdates((TradeUpdateMessage) streamMessage);
+                onTradeUpdates((TradeUpdateMessage) streamMessage);
                 break;
         }
     }
 
+    /**
+     * Decodes a trade update and hands it to the listener. The stream's fields are passed on as
+     * they are whenever they are already in the form the listener expects, so decoding allocates
+     * nothing.
+     *
+     * @param message the message
+     */
+    private void onTradeUpdates(TradeUpdateMessage message) {
+        Order order = message.getData().getOrder();
+
+        listener.onOrderUpdate(symbolOf(order.getSymbol()),
+                        OrderUpdateType.fromEvent(message.getData().getEvent()),
+                        trim(order.getId()),
+                        OrderUpdateType.matches(order.getSide(), "buy") ? OrderSide.BUY
+                                        : OrderSide.SELL,
+                        parseQuantity(order.getQty()), parseQuantity(order.getFilledQty()),
+                        Ticks.parse(order.getLimitPrice()),
+                        Ticks.parse(order.getFilledAvgPrice()));
+    }
+
+    /**
+     * Gets a symbol as the listener knows it. A traded symbol is normally sent just as it was
+     * subscribed, so it is found as it is, and only a symbol sent any other way is normalized.
+     *
+     * @param symbol the symbol
+     * @return the symbol
+     */
+    private String symbolOf(String symbol) {
+        return symbols.contains(symbol) ? symbol : symbol.trim().toUpperCase();
+    }
+
+    /**
+     * Trims a field only if it has surrounding whitespace.
+     *
+     * @param value the value
+     * @return the value, trimmed
+     */
+    private static String trim(String value) {
+        int last = value.length() - 1;
+
+        if (last < 0 || (value.charAt(0) > ' ' && value.charAt(last) > ' ')) {
+            return value;
+        }
+
+        return value.trim();
+    }
+
+    /**
+     * Parses a quantity as reported by the REST API.
+     *
+     * @param quantity the quantity
+     * @return the quantity, or 0 if it is missing
+     */
+    private static long parseQuantity(String quantity) {
+        if (quantity == null || quantity.isEmpty()) {
+            return 0;
+        }
+        return Long.parseLong(quantity.trim());
+    }
+
 }
@@ -1,11 +1,20 @@
 package io.github.mainstringargs.alpaca.hftish;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import picocli.CommandLine.Option;
 
 /**
  * The Class AlgoConfig.
  */
-class AlgoConfig {
+class AlgoConfig implements Cloneable {
 
     /** The Constant PLACEHOLDER_DEFAULT. */
     public static final String PLACEHOLDER_DEFAULT = "<PLACEHOLDER>";
@@ -15,11 +24,196 @@ class AlgoConfig {
                     description = "the stock to trade (defaults to \"SNAP\"")
     private String symbol;
 
+    /** The symbols. */
+    @Option(names = {"--symbols"}, split = ",",
+                    description = "comma separated stocks to trade, or a file with one stock per line. Overrides --symbol.")
+    private List<String> symbols = new ArrayList<String>();
+
+    /** The workers. */
+    @Option(names = {"--workers"}, defaultValue = "0",
+                    description = "the number of threads symbols are pinned to (Default 0, one per core)")
+    private int workers;
+
+    /** The wait strategy. */
+    @Option(names = {"--wait-strategy"}, defaultValue = "PARK",
+                    description = "how idle symbol workers wait for events: BUSY_SPIN, YIELD or PARK (Default PARK)")
+    private WaitStrategy waitStrategy;
+
     /** The quantity. */
     @Option(names = {"-q", "--quantity"}, defaultValue = "500",
                     description = "the maximum number of shares to hold at once. Note that this does not account for any existing position; the algorithm only tracks what is bought as part of its execution. (Default 500, minimum 100.)")
     private int quantity;
 
+    /** The min trade size. */
+    @Option(names = {"--min-trade-size"}, defaultValue = "100",
+                    description = "the smallest trade, in shares, the algorithm follows (Default 100)")
+    private long minTradeSize = 100;
+
+    /** The imbalance ratio. */
+    @Option(names = {"--imbalance-ratio"}, defaultValue = "1.8",
+                    description = "how many times the size on the other side of the book the size on one side must be to signal a move that way (Default 1.8)")
+    private double imbalanceRatio = 1.8;
+
+    /** The quote guard millis. */
+    @Option(names = {"--quote-guard-millis"}, defaultValue = "50",
+                    description = "trades within this many milliseconds of a level change are ignored, since they may have been at the previous level (Default 50)")
+    private long quoteGuardMillis = 50;
+
+    /** The lot size. */
+    @Option(names = {"--lot-size"}, defaultValue = "100",
+                    description = "the shares bought or sold by each order (Default 100)")
+    private long lotSize = 100;
+
+    /** The min flow imbalance. */
+    @Option(names = {"--min-flow-imbalance"}, defaultValue = "0",
+                    description = "how far, from 0 to 1, the trade flow over the feature window must lean towards buys before a buy, or sells before a sell; 0 ignores the flow (Default 0)")
+    private double minFlowImbalance;
+
+    /** The feature window millis. */
+    @Option(names = {"--feature-window-millis"}, defaultValue = "1000",
+                    description = "the rolling window the trade flow imbalance covers (Default 1000)")
+    private long featureWindowMillis = 1000;
+
+    /** The max order notional. */
+    @Option(names = {"--max-order-notional"}, defaultValue = "50000",
+                    description = "the largest order, in dollars, the risk gate lets through (Default 50000)")
+    private double maxOrderNotional = 50000;
+
+    /** The price collar bps. */
+    @Option(names = {"--price-collar-bps"}, defaultValue = "100",
+                    description = "how far, in basis points of the mid, an order's limit may be from the current quote (Default 100)")
+    private long priceCollarBps = 100;
+
+    /** The max daily loss. */
+    @Option(names = {"--max-daily-loss"}, defaultValue = "5000",
+                    description = "the realized loss, in dollars, after which the risk gate stops new orders for the day (Default 5000)")
+    private double maxDailyLoss = 5000;
+
+    /** The max open orders. */
+    @Option(names = {"--max-open-orders"}, defaultValue = "20",
+                    description = "the most orders the risk gate allows in flight at once, across all symbols (Default 20)")
+    private int maxOpenOrders = 20;
+
+    /** The max orders per second. */
+    @Option(names = {"--max-orders-per-second"}, defaultValue = "50",
+                    description = "the most orders the risk gate allows per second of market time, across all symbols (Default 50)")
+    private int maxOrdersPerSecond = 50;
+
+    /** The replay files. */
+    @Option(names = {"--replay"}, split = ",",
+                    description = "tick files, or day directories written by --record-dir, to replay offline for --symbol against a simulated broker, instead of trading live")
+    private List<File> replayFiles = new ArrayList<File>();
+
+    /** The replay cash. */
+    @Option(names = {"--replay-cash"}, defaultValue = "100000",
+                    description = "the buying power a replay or simulation starts with (Default 100000)")
+    private double replayCash;
+
+    /** The swept min trade sizes. */
+    @Option(names = {"--sweep-min-trade-size"}, split = ",",
+                    description = "comma separated --min-trade-size values to backtest the --replay files with")
+    private List<Long> sweepMinTradeSizes = new ArrayList<Long>();
+
+    /** The swept imbalance ratios. */
+    @Option(names = {"--sweep-imbalance-ratio"}, split = ",",
+                    description = "comma separated --imbalance-ratio values to backtest the --replay files with")
+    private List<Double> sweepImbalanceRatios = new ArrayList<Double>();
+
+    /** The swept quote guard millis. */
+    @Option(names = {"--sweep-quote-guard-millis"}, split = ",",
+                    description = "comma separated --quote-guard-millis values to backtest the --replay files with")
+    private List<Long> sweepQuoteGuardMillis = new ArrayList<Long>();
+
+    /** The swept lot sizes. */
+    @Option(names = {"--sweep-lot-size"}, split = ",",
+                    description = "comma separated --lot-size values to backtest the --replay files with")
+    private List<Long> sweepLotSizes = new ArrayList<Long>();
+
+    /** The sweep threads. */
+    @Option(names = {"--sweep-threads"}, defaultValue = "0",
+                    description = "the number of threads a sweep runs on (Default 0, one per core)")
+    private int sweepThreads;
+
+    /** The simulate seconds. */
+    @Option(names = {"--simulate"}, defaultValue = "0",
+                    description = "run against an in-process simulated exchange for this many seconds, instead of trading live (Default 0, off)")
+    private int simulateSeconds;
+
+    /** The simulated event rate. */
+    @Option(names = {"--sim-rate"}, defaultValue = "100000",
+                    description = "quotes and trades per second the simulated exchange publishes (Default 100000)")
+    private int simulatedEventRate;
+
+    /** The simulated ack latency. */
+    @Option(names = {"--sim-ack-micros"}, defaultValue = "500",
+                    description = "how long the simulated exchange takes to acknowledge an order, in microseconds (Default 500)")
+    private long simulatedAckMicros;
+
+    /** The simulated partial fill probability. */
+    @Option(names = {"--sim-partial-fill"}, defaultValue = "0.2",
+                    description = "the probability a marketable simulated order only partially fills (Default 0.2)")
+    private double simulatedPartialFillProbability;
+
+    /** The simulated reject probability. */
+    @Option(names = {"--sim-reject"}, defaultValue = "0.05",
+                    description = "the probability the simulated exchange rejects an order (Default 0.05)")
+    private double simulatedRejectProbability;
+
+    /** The record directory. */
+    @Option(names = {"--record-dir"},
+                    description = "capture every quote and trade for the traded symbols to tick files under this directory, one directory per day")
+    private File recordDirectory;
+
+    /** The cancel on ack flag. */
+    @Option(names = {"--cancel-on-ack"},
+                    description = "submit day orders and cancel them once acknowledged, for venues without immediate-or-cancel orders")
+    private boolean cancelOnAck;
+
+    /** The requests per minute. */
+    @Option(names = {"--requests-per-minute"}, defaultValue = "200",
+                    description = "the most REST requests sent to Alpaca per minute, orders first, then cancels, then reads (Default 200)")
+    private int requestsPerMinute = 200;
+
+    /** The request burst. */
+    @Option(names = {"--request-burst"}, defaultValue = "10",
+                    description = "the most REST requests sent back to back before the per minute rate applies (Default 10)")
+    private int requestBurst = 10;
+
+    /** The order wait millis. */
+    @Option(names = {"--order-wait-millis"}, defaultValue = "250",
+                    description = "how long an order waits for the request limit before it is dropped as stale (Default 250)")
+    private long orderWaitMillis = 250;
+
+    /** The reconcile threads. */
+    @Option(names = {"--reconcile-threads"}, defaultValue = "4",
+                    description = "the most requests made at once while reconciling with Alpaca at the open and close, such as cancels (Default 4)")
+    private int reconcileThreads = 4;
+
+    /** The warmup levels. */
+    @Option(names = {"--warmup-levels"}, defaultValue = "1000",
+                    description = "the synthetic price levels per round driven through the decision path before the open to warm up the JIT, 0 to skip the warmup (Default 1000)")
+    private int warmupLevels = 1000;
+
+    /** The warmup lead minutes. */
+    @Option(names = {"--warmup-lead-minutes"}, defaultValue = "5",
+                    description = "how many minutes before the open to warm up and connect to the streams (Default 5)")
+    private long warmupLeadMinutes = 5;
+
+    /** The metrics port. */
+    @Option(names = {"--metrics-port"}, defaultValue = "0",
+                    description = "the local port to serve metrics on at /metrics, 0 to expose them through JMX only (Default 0)")
+    private int metricsPort = 0;
+
+    /** The journal directory. */
+    @Option(names = {"--journal-dir"},
+                    description = "journal positions and orders to this directory and recover them from it after a restart during the session")
+    private File journalDirectory;
+
+    /** The journal commit millis. */
+    @Option(names = {"--journal-commit-millis"}, defaultValue = "10",
+                    description = "how often journaled position changes are forced to disk, the most a machine crash can lose (Default 10)")
+    private long journalCommitMillis = 10;
+
     /** The key. */
     @Option(names = {"-key", "--alpaca-key"}, defaultValue = PLACEHOLDER_DEFAULT,
                     description = "The key used for Alpaca authentication")
@@ -39,6 +233,66 @@ class AlgoConfig {
         return symbol;
     }
 
+    /**
+     * Gets the symbols to trade. Entries of --symbols that name a file are replaced by the
+     * symbols listed in it; without --symbols this is just --symbol.
+     *
+     * @return the symbols
+     */
+    public List<String> getSymbols() {
+        if (symbols.isEmpty()) {
+            return Collections.singletonList(symbol.trim().toUpperCase());
+        }
+
+        Set<String> resolved = new LinkedHashSet<String>();
+
+        for (String entry : symbols) {
+            File file = new File(entry.trim());
+
+            if (file.isFile()) {
+                try {
+                    for (String line : Files.readAllLines(file.toPath(),
+                                    StandardCharsets.UTF_8)) {
+                        String content = line.split("#", 2)[0];
+
+                        for (String fileSymbol : content.split("[,\\s]+")) {
+                            if (!fileSymbol.isEmpty()) {
+                                resolved.add(fileSymbol.toUpperCase());
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            } else if (!entry.trim().isEmpty()) {
+                resolved.add(entry.trim().toUpperCase());
+            }
+        }
+
+        return new ArrayList<String>(resolved);
+    }
+
+    /**
+     * Gets the number of symbol worker threads.
+     *
+     * @return the workers
+     */
+    public int getWorkers() {
+        if (workers <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return workers;
+    }
+
+    /**
+     * Gets the wait strategy of the symbol workers.
+     *
+     * @return the wait strategy
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
     /**
      * Gets the quantity.
      *
@@ -48,6 +302,354 @@ class AlgoConfig {
         return quantity;
     }
 
+    /**
+     * Gets the min trade size.
+     *
+     * @return the min trade size
+     */
+    public long getMinTradeSize() {
+        return minTradeSize;
+    }
+
+    /**
+     * Gets the imbalance ratio.
+     *
+     * @return the imbalance ratio
+     */
+    public double getImbalanceRatio() {
+        return imbalanceRatio;
+    }
+
+    /**
+     * Gets the quote guard millis.
+     *
+     * @return the quote guard millis
+     */
+    public long getQuoteGuardMillis() {
+        return quoteGuardMillis;
+    }
+
+    /**
+     * Gets the lot size.
+     *
+     * @return the lot size
+     */
+    public long getLotSize() {
+        return lotSize;
+    }
+
+    /**
+     * Gets the min flow imbalance.
+     *
+     * @return the min flow imbalance
+     */
+    public double getMinFlowImbalance() {
+        return minFlowImbalance;
+    }
+
+    /**
+     * Gets the feature window millis.
+     *
+     * @return the feature window millis
+     */
+    public long getFeatureWindowMillis() {
+        return featureWindowMillis;
+    }
+
+    /**
+     * Gets the max order notional.
+     *
+     * @return the max order notional
+     */
+    public double getMaxOrderNotional() {
+        return maxOrderNotional;
+    }
+
+    /**
+     * Gets the price collar bps.
+     *
+     * @return the price collar bps
+     */
+    public long getPriceCollarBps() {
+        return priceCollarBps;
+    }
+
+    /**
+     * Gets the max daily loss.
+     *
+     * @return the max daily loss
+     */
+    public double getMaxDailyLoss() {
+        return maxDailyLoss;
+    }
+
+    /**
+     * Gets the max open orders.
+     *
+     * @return the max open orders
+     */
+    public int getMaxOpenOrders() {
+        return maxOpenOrders;
+    }
+
+    /**
+     * Gets the max orders per second.
+     *
+     * @return the max orders per second
+     */
+    public int getMaxOrdersPerSecond() {
+        return maxOrdersPerSecond;
+    }
+
+    /**
+     * Copies this configuration with different strategy parameters.
+     *
+     * @param minTradeSize the min trade size
+     * @param imbalanceRatio the imbalance ratio
+     * @param quoteGuardMillis the quote guard millis
+     * @param lotSize the lot size
+     * @return the copy
+     */
+    public AlgoConfig withStrategy(long minTradeSize, double imbalanceRatio,
+                    long quoteGuardMillis, long lotSize) {
+        AlgoConfig copy;
+
+        try {
+            copy = (AlgoConfig) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+
+        copy.minTradeSize = minTradeSize;
+        copy.imbalanceRatio = imbalanceRatio;
+        copy.quoteGuardMillis = quoteGuardMillis;
+        copy.lotSize = lotSize;
+        return copy;
+    }
+
+    /**
+     * Gets the replay files.
+     *
+     * @return the replay files
+     */
+    public List<File> getReplayFiles() {
+        return replayFiles;
+    }
+
+    /**
+     * Gets the replay cash.
+     *
+     * @return the replay cash
+     */
+    public double getReplayCash() {
+        return replayCash;
+    }
+
+    /**
+     * Checks if any strategy parameter is to be swept over the replay files.
+     *
+     * @return true, if sweeping
+     */
+    public boolean isSweep() {
+        return !sweepMinTradeSizes.isEmpty() || !sweepImbalanceRatios.isEmpty()
+                        || !sweepQuoteGuardMillis.isEmpty() || !sweepLotSizes.isEmpty();
+    }
+
+    /**
+     * Gets the swept min trade sizes, or just the configured one.
+     *
+     * @return the min trade sizes
+     */
+    public List<Long> getSweepMinTradeSizes() {
+        return sweepMinTradeSizes.isEmpty() ? Collections.singletonList(minTradeSize)
+                        : sweepMinTradeSizes;
+    }
+
+    /**
+     * Gets the swept imbalance ratios, or just the configured one.
+     *
+     * @return the imbalance ratios
+     */
+    public List<Double> getSweepImbalanceRatios() {
+        return sweepImbalanceRatios.isEmpty() ? Collections.singletonList(imbalanceRatio)
+                        : sweepImbalanceRatios;
+    }
+
+    /**
+     * Gets the swept quote guard millis, or just the configured one.
+     *
+     * @return the quote guard millis
+     */
+    public List<Long> getSweepQuoteGuardMillis() {
+        return sweepQuoteGuardMillis.isEmpty() ? Collections.singletonList(quoteGuardMillis)
+                        : sweepQuoteGuardMillis;
+    }
+
+    /**
+     * Gets the swept lot sizes, or just the configured one.
+     *
+     * @return the lot sizes
+     */
+    public List<Long> getSweepLotSizes() {
+        return sweepLotSizes.isEmpty() ? Collections.singletonList(lotSize) : sweepLotSizes;
+    }
+
+    /**
+     * Gets the number of sweep threads.
+     *
+     * @return the sweep threads
+     */
+    public int getSweepThreads() {
+        if (sweepThreads <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return sweepThreads;
+    }
+
+    /**
+     * Gets the simulate seconds.
+     *
+     * @return the simulate seconds
+     */
+    public int getSimulateSeconds() {
+        return simulateSeconds;
+    }
+
+    /**
+     * Gets the simulated event rate.
+     *
+     * @return the simulated event rate
+     */
+    public int getSimulatedEventRate() {
+        return simulatedEventRate;
+    }
+
+    /**
+     * Gets the simulated ack micros.
+     *
+     * @return the simulated ack micros
+     */
+    public long getSimulatedAckMicros() {
+        return simulatedAckMicros;
+    }
+
+    /**
+     * Gets the simulated partial fill probability.
+     *
+     * @return the simulated partial fill probability
+     */
+    public double getSimulatedPartialFillProbability() {
+        return simulatedPartialFillProbability;
+    }
+
+    /**
+     * Gets the simulated reject probability.
+     *
+     * @return the simulated reject probability
+     */
+    public double getSimulatedRejectProbability() {
+        return simulatedRejectProbability;
+    }
+
+    /**
+     * Gets the directory ticks are recorded to.
+     *
+     * @return the record directory, or null if ticks aren't recorded
+     */
+    public File getRecordDirectory() {
+        return recordDirectory;
+    }
+
+    /**
+     * Checks if orders are cancelled on ack instead of submitted immediate-or-cancel.
+     *
+     * @return true, if cancel on ack
+     */
+    public boolean isCancelOnAck() {
+        return cancelOnAck;
+    }
+
+    /**
+     * Gets the requests per minute.
+     *
+     * @return the requests per minute
+     */
+    public int getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    /**
+     * Gets the request burst.
+     *
+     * @return the request burst
+     */
+    public int getRequestBurst() {
+        return requestBurst;
+    }
+
+    /**
+     * Gets the order wait millis.
+     *
+     * @return the order wait millis
+     */
+    public long getOrderWaitMillis() {
+        return orderWaitMillis;
+    }
+
+    /**
+     * Gets the reconcile threads.
+     *
+     * @return the reconcile threads
+     */
+    public int getReconcileThreads() {
+        return reconcileThreads;
+    }
+
+    /**
+     * Gets the warmup levels.
+     *
+     * @return the warmup levels
+     */
+    public int getWarmupLevels() {
+        return warmupLevels;
+    }
+
+    /**
+     * Gets the warmup lead minutes.
+     *
+     * @return the warmup lead minutes
+     */
+    public long getWarmupLeadMinutes() {
+        return warmupLeadMinutes;
+    }
+
+    /**
+     * Gets the metrics port.
+     *
+     * @return the metrics port
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * Gets the directory positions and orders are journaled to, or null.
+     *
+     * @return the journal directory
+     */
+    public File getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * Gets how often journaled position changes are forced to disk.
+     *
+     * @return the journal commit millis
+     */
+    public long getJournalCommitMillis() {
+        return journalCommitMillis;
+    }
+
     /**
      * Gets the key.
      *
@@ -73,8 +675,28 @@ class AlgoConfig {
      */
     @Override
     public String toString() {
-        return "AlgoConfig [symbol=" + symbol + ", quantity=" + quantity + ", key=" + key
-                        + ", secret=" + secret + "]";
+        return "AlgoConfig [symbol=" + symbol + ", symbols=" + symbols + ", workers=" + workers
+                        + ", waitStrategy=" + waitStrategy + ", quantity=" + quantity
+                        + ", minTradeSize=" + minTradeSize + ", imbalanceRatio=" + imbalanceRatio
+                        + ", quoteGuardMillis=" + quoteGuardMillis + ", lotSize=" + lotSize
+                        + ", minFlowImbalance=" + minFlowImbalance + ", featureWindowMillis="
+                        + featureWindowMillis + ", maxOrderNotional=" + maxOrderNotional + ", priceCollarBps="
+                        + priceCollarBps + ", maxDailyLoss=" + maxDailyLoss + ", maxOpenOrders="
+                        + maxOpenOrders + ", maxOrdersPerSecond=" + maxOrdersPerSecond
+                        + ", replayFiles=" + replayFiles + ", replayCash="
+                        + replayCash + ", simulateSeconds=" + simulateSeconds
+                        + ", simulatedEventRate=" + simulatedEventRate + ", simulatedAckMicros="
+                        + simulatedAckMicros + ", simulatedPartialFillProbability="
+                        + simulatedPartialFillProbability + ", simulatedRejectProbability="
+                        + simulatedRejectProbability + ", recordDirectory=" + recordDirectory
+                        + ", cancelOnAck=" + cancelOnAck + ", requestsPerMinute="
+                        + requestsPerMinute + ", requestBurst=" + requestBurst
+                        + ", orderWaitMillis=" + orderWaitMillis + ", reconcileThreads="
+                        + reconcileThreads + ", warmupLevels=" + warmupLevels
+                        + ", warmupLeadMinutes=" + warmupLeadMinutes + ", metricsPort="
+                        + metricsPort + ", journalDirectory=" + journalDirectory
+                        + ", journalCommitMillis=" + journalCommitMillis + ", key=" + key + ", secret=" + secret
+                        + "]";
     }
 
 
@@ -0,0 +1,890 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+import io.github.mainstringargs.util.concurrency.ExecutorTracer;
+
+/**
+ * The AlgoEngine runs one {@link Algorithm} per configured symbol. It owns the market open/close
+ * schedule and the shared {@link OrderGateway} and {@link AccountState}, and talks to the outside
+ * world only through a {@link Broker} and a {@link MarketDataFeed}. All symbols share one market
+ * data subscription and one order updates listener; events are published by symbol into the
+ * {@link EventLoop} of the {@link SymbolWorkers} thread that symbol is pinned to.
+ */
+public class AlgoEngine implements MarketDataListener, OrderUpdateListener, OrderGatewayListener {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(AlgoEngine.class);
+
+    /** The algo config. */
+    private final AlgoConfig algoConfig;
+
+    /** The broker. */
+    private final Broker broker;
+
+    /** The market data feed. */
+    private final MarketDataFeed marketDataFeed;
+
+    /** The algorithms by symbol. */
+    private final Map<String, Algorithm> algorithms;
+
+    /** The symbol workers. */
+    private final SymbolWorkers workers;
+
+    /** The account state. */
+    private final AccountState accountState;
+
+    /** The order gateway. */
+    private final OrderGateway orderGateway;
+
+    /** The risk gate. */
+    private final RiskGate riskGate;
+
+    /** The event journal. */
+    private final EventJournal journal;
+
+    /** The tick recorder, or null. */
+    private final TickRecorder tickRecorder;
+
+    /** The tick-to-trade latency stats. */
+    private final LatencyStats latencyStats;
+
+    /** The metrics. */
+    private final EngineMetrics metrics;
+
+    /** The position journal, or null. */
+    private final PositionJournal positionJournal;
+
+    /** The position recovery, or null if positions aren't journaled. */
+    private final PositionRecovery recovery;
+
+    /** The threads reconciliation requests are made from at the open and close. */
+    private final ExecutorService reconcileService;
+
+    /** Whether the engine is subscribed to market data and order updates. */
+    private boolean listening;
+
+    /**
+     * Whether events are passed to the algorithms. The streams connect before the open, and their
+     * events are dropped until the engine has reconciled.
+     */
+    private volatile boolean trading;
+
+    /** The pre-open keepalive, or null. */
+    private ScheduledFuture<?> keepAlive;
+
+    /** The Constant KEEPALIVE_SECONDS. */
+    public static final long KEEPALIVE_SECONDS = 30;
+
+    /** The Constant scheduledService. */
+    private static final ScheduledExecutorService scheduledService =
+                    ExecutorTracer.newScheduledThreadPool(1);
+
+    /**
+     * Instantiates a new algo engine. Nothing is requested from the broker until
+     * {@link #start()}.
+     *
+     * @param algoConfig the algo config
+     * @param broker the broker
+     * @param marketDataFeed the market data feed
+     */
+    public AlgoEngine(AlgoConfig algoConfig, Broker broker, MarketDataFeed marketDataFeed) {
+        this.algoConfig = algoConfig;
+        this.broker = broker;
+        this.marketDataFeed = marketDataFeed;
+
+        accountState = new AccountState(broker);
+        riskGate = new RiskGate(algoConfig);
+        latencyStats = new LatencyStats();
+        metrics = new EngineMetrics();
+        orderGateway = new OrderGateway(broker, this, OrderGateway.DEFAULT_CAPACITY,
+                        latencyStats);
+        workers = new SymbolWorkers(algoConfig.getWorkers(), algoConfig.getWaitStrategy(),
+                        latencyStats);
+        journal = new EventJournal(EventJournal.DEFAULT_CAPACITY);
+        journal.start();
+
+        reconcileService = Executors.newFixedThreadPool(Math.max(1,
+                        algoConfig.getReconcileThreads()), new ThreadFactory() {
+
+                            @Override
+                            public Thread newThread(Runnable runnable) {
+                                Thread thread = new Thread(runnable, "reconcile");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+
+        if (algoConfig.getRecordDirectory() != null) {
+            tickRecorder = new TickRecorder(algoConfig.getRecordDirectory());
+            tickRecorder.start();
+        } else {
+            tickRecorder = null;
+        }
+
+        positionJournal = openPositionJournal(algoConfig);
+
+        Map<String, Algorithm> algorithmsBySymbol = new LinkedHashMap<String, Algorithm>();
+        for (String symbol : algoConfig.getSymbols()) {
+            algorithmsBySymbol.put(symbol,
+                            new Algorithm(symbol, algoConfig, accountState, orderGateway,
+                                            riskGate, journal, metrics, positionJournal));
+        }
+        algorithms = Collections.unmodifiableMap(algorithmsBySymbol);
+        recovery = positionJournal != null ? new PositionRecovery(algorithms, workers, broker)
+                        : null;
+
+        addGauges();
+
+        LOGGER.info("Trading " + algorithms.keySet() + " on " + workers.size() + " "
+                        + algoConfig.getWaitStrategy() + " workers");
+    }
+
+    /**
+     * Starts trading now if the market is open, or schedules the start for the next open. The
+     * warmup only runs ahead of a scheduled open; once the market is open, trading starts without
+     * it and the first live ticks warm the decision path instead.
+     */
+    public void start() {
+        metrics.start(algoConfig.getMetricsPort());
+
+        MarketHours marketClock = getMarketHours();
+
+        if (marketClock != null)
+            if (marketClock.isOpen()) {
+                if (canRecover(marketClock)) {
+                    recover(marketClock);
+                } else {
+                    init();
+                }
+            } else {
+                scheduleNextOpen(marketClock);
+            }
+    }
+
+    /**
+     * Gets the market hours, or null if the broker couldn't be reached.
+     *
+     * @return the market hours
+     */
+    private MarketHours getMarketHours() {
+        try {
+            return broker.getMarketHours();
+        } catch (BrokerException e1) {
+            e1.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Opens the configured position journal, if any.
+     *
+     * @param algoConfig the algo config
+     * @return the position journal, or null
+     */
+    private static PositionJournal openPositionJournal(AlgoConfig algoConfig) {
+        File directory = algoConfig.getJournalDirectory();
+
+        if (directory == null) {
+            return null;
+        }
+
+        try {
+            directory.mkdirs();
+
+            PositionJournal positionJournal = new PositionJournal(
+                            new File(directory, PositionJournal.FILE_NAME),
+                            PositionJournal.DEFAULT_CAPACITY, algoConfig.getJournalCommitMillis());
+            positionJournal.start();
+
+            return positionJournal;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Gets the session a market clock is in, identified by its next close.
+     *
+     * @param marketClock the market clock
+     * @return the session
+     */
+    private static long sessionOf(MarketHours marketClock) {
+        return marketClock == null ? 0 : marketClock.getNextClose().toEpochSecond();
+    }
+
+    /**
+     * Checks if the position journal holds records of the session the market is in, left by a
+     * run of the engine that didn't reach the close.
+     *
+     * @param marketClock the market clock
+     * @return true, if the positions can be recovered
+     */
+    private boolean canRecover(MarketHours marketClock) {
+        return positionJournal != null && positionJournal.getRecoveredCount() > 0
+                        && positionJournal.getSession() == sessionOf(marketClock);
+    }
+
+    /**
+     * Gets the algo config.
+     *
+     * @return the algo config
+     */
+    public AlgoConfig getAlgoConfig() {
+        return algoConfig;
+    }
+
+    /**
+     * Gets the metrics.
+     *
+     * @return the metrics
+     */
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Adds the gauges over each symbol's position and the engine's queues to the metrics.
+     */
+    private void addGauges() {
+        for (Algorithm algorithm : algorithms.values()) {
+            final Position position = algorithm.getPosition();
+
+            metrics.addGauge("position_total_shares", algorithm.getSymbol(),
+                            new EngineMetrics.Gauge() {
+
+                                @Override
+                                public long get() {
+                                    return position.getTotalShares();
+                                }
+                            });
+        }
+        for (Algorithm algorithm : algorithms.values()) {
+            final Position position = algorithm.getPosition();
+
+            metrics.addGauge("position_pending_buy_shares", algorithm.getSymbol(),
+                            new EngineMetrics.Gauge() {
+
+                                @Override
+                                public long get() {
+                                    return position.getPendingBuyShares();
+                                }
+                            });
+        }
+        for (Algorithm algorithm : algorithms.values()) {
+            final Position position = algorithm.getPosition();
+
+            metrics.addGauge("position_pending_sell_shares", algorithm.getSymbol(),
+                            new EngineMetrics.Gauge() {
+
+                                @Override
+                                public long get() {
+                                    return position.getPendingSellShares();
+                                }
+                            });
+        }
+
+        metrics.addGauge("event_queue_depth", new EngineMetrics.Gauge() {
+
+            @Override
+            public long get() {
+                return workers.getQueueDepth();
+            }
+        });
+        metrics.addGauge("order_queue_depth", new EngineMetrics.Gauge() {
+
+            @Override
+            public long get() {
+                return orderGateway.getQueueDepth();
+            }
+        });
+        metrics.addGauge("open_orders", new EngineMetrics.Gauge() {
+
+            @Override
+            public long get() {
+                return riskGate.getOpenOrders();
+            }
+        });
+        metrics.addGauge("available_buying_power_cents", new EngineMetrics.Gauge() {
+
+            @Override
+            public long get() {
+                return accountState.getAvailableCents();
+            }
+        });
+    }
+
+    /**
+     * Gets the symbols being traded.
+     *
+     * @return the symbols
+     */
+    public Set<String> getSymbols() {
+        return algorithms.keySet();
+    }
+
+    /**
+     * Reconciles with the broker and starts trading. The positions and buying power are fetched
+     * while the open orders are cancelled, and the stream listeners start as soon as all three
+     * are done.
+     */
+    private void init() {
+        MarketHours marketClock = getMarketHours();
+
+        LOGGER.info("Market is now open. Current Clock " + marketClock);
+
+        scheduleNextClose(marketClock);
+
+        if (keepAlive != null) {
+            keepAlive.cancel(false);
+            keepAlive = null;
+        }
+
+        long start = System.nanoTime();
+
+        Future<Map<String, Long>> positions =
+                        reconcileService.submit(new Callable<Map<String, Long>>() {
+
+                            @Override
+                            public Map<String, Long> call() {
+                                return getPositions();
+                            }
+                        });
+        Future<?> buyingPower = reconcileService.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                accountState.reconcile();
+            }
+        });
+
+        int cancelled = cancelPendingOrders();
+        resetPositions();
+        riskGate.reset();
+
+        // A cancelled order may have filled before the cancel landed, so the prefetched positions
+        // are only used if there was nothing to cancel
+        updateInitialStates(cancelled == 0 ? await(positions) : getPositions());
+        await(buyingPower);
+        startPositionJournal(marketClock);
+
+        accountState.startReconciliation(scheduledService, AccountState.DEFAULT_RECONCILE_SECONDS);
+        latencyStats.reset();
+        latencyStats.startReporting(scheduledService, LatencyStats.DEFAULT_REPORT_SECONDS);
+        startStreamListeners();
+        trading = true;
+
+        LOGGER.info("Reconciled and trading in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    /**
+     * Rebuilds the positions and live orders from the position journal and resumes trading
+     * without cancelling anything. The buying power and the recovered orders and positions are
+     * reconciled with the broker in the background afterwards.
+     *
+     * @param marketClock the market clock
+     */
+    private void recover(MarketHours marketClock) {
+        LOGGER.info("Market is open, recovering from the position journal. Current Clock "
+                        + marketClock);
+
+        scheduleNextClose(marketClock);
+
+        long start = System.nanoTime();
+
+        resetPositions();
+        riskGate.reset();
+
+        long count = recovery.replay(positionJournal);
+
+        // Buys are refused for want of buying power until the broker's figure arrives
+        Future<?> buyingPower = reconcileService.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                accountState.reconcile();
+            }
+        });
+
+        accountState.startReconciliation(scheduledService, AccountState.DEFAULT_RECONCILE_SECONDS);
+        latencyStats.reset();
+        latencyStats.startReporting(scheduledService, LatencyStats.DEFAULT_REPORT_SECONDS);
+        startStreamListeners();
+        trading = true;
+
+        LOGGER.info("Recovered " + count + " journal records and trading in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+
+        await(buyingPower);
+
+        reconcileService.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                recovery.reconcile();
+            }
+        });
+    }
+
+    /**
+     * Starts a new session in the position journal with every symbol's position as reconciled.
+     *
+     * @param marketClock the market clock
+     */
+    private void startPositionJournal(MarketHours marketClock) {
+        if (positionJournal == null) {
+            return;
+        }
+
+        recovery.reset();
+        positionJournal.startSession(sessionOf(marketClock));
+
+        for (Algorithm algorithm : algorithms.values()) {
+            positionJournal.recordCheckpoint(algorithm.getSymbol(),
+                            algorithm.getPosition().getTotalShares());
+        }
+    }
+
+    /**
+     * Waits for a reconciliation request.
+     *
+     * @param <T> the result type
+     * @param future the future
+     * @return the result, or null if it failed
+     */
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Schedule next open.
+     *
+     * @param marketClock the market clock
+     */
+    private void scheduleNextOpen(MarketHours marketClock) {
+
+        long delay = ChronoUnit.MILLIS.between(ZonedDateTime.now(), (marketClock.getNextOpen()));
+
+        if (delay < 0) {
+
+            marketClock = getMarketHours();
+
+            LOGGER.info("Clock has not yet rolled over after market close, sleeping for 15 minutes");
+
+            try {
+                Thread.sleep(TimeUnit.MILLISECONDS.convert(15, TimeUnit.MINUTES));
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+
+            scheduleNextOpen(marketClock);
+
+            return;
+        }
+
+        LOGGER.info("Market is closed. Will Open in "
+                        + TimeUnit.MINUTES.convert(delay, TimeUnit.MILLISECONDS) + " minutes");
+
+        long preOpenDelay = Math.max(0, delay
+                        - TimeUnit.MINUTES.toMillis(algoConfig.getWarmupLeadMinutes()));
+
+        scheduledService.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                preOpen();
+            }
+        }, preOpenDelay, TimeUnit.MILLISECONDS);
+
+        scheduledService.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                init();
+
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets ready for the open: warms up the decision path, connects the streams and keeps the
+     * REST connection alive, so the first signal after the open runs at steady state latency.
+     */
+    private void preOpen() {
+        warmUp();
+        startStreamListeners();
+
+        keepAlive = scheduledService.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                getMarketHours();
+            }
+        }, 0, KEEPALIVE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Runs the configured warmup, if any.
+     */
+    private void warmUp() {
+        if (algoConfig.getWarmupLevels() > 0) {
+            new Warmup(algoConfig).run(algoConfig.getWarmupLevels());
+        }
+    }
+
+    /**
+     * Schedule next close.
+     *
+     * @param marketClock the market clock
+     */
+    private void scheduleNextClose(MarketHours marketClock) {
+
+        long delay = ChronoUnit.MILLIS.between(ZonedDateTime.now(), (marketClock.getNextClose()));
+
+        LOGGER.info("Market will Close in " + TimeUnit.MINUTES.convert(delay, TimeUnit.MILLISECONDS)
+                        + " minutes");
+
+        scheduledService.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                closeStreamListeners();
+                rollTickRecorder();
+                accountState.stopReconciliation();
+                latencyStats.stopReporting();
+                logStatistics();
+                cancelPendingOrders();
+                resetPositions();
+
+                MarketHours marketClock = getMarketHours();
+
+                LOGGER.info("Market is now closed. Current Clock " + marketClock);
+
+                scheduleNextOpen(marketClock);
+
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancel pending orders for all traded symbols, several at a time, and wait for the answers.
+     *
+     * @return the number of orders there were to cancel
+     */
+    private int cancelPendingOrders() {
+        List<String> orderIds = null;
+        try {
+            orderIds = broker.getOpenOrderIds(algorithms.keySet());
+        } catch (BrokerException e) {
+            e.printStackTrace();
+        }
+
+        if (orderIds == null || orderIds.isEmpty()) {
+            return 0;
+        }
+
+        List<Callable<Boolean>> cancels = new ArrayList<Callable<Boolean>>();
+
+        for (final String orderId : orderIds) {
+            cancels.add(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() {
+                    try {
+                        boolean cancelledOrder = broker.cancelOrder(orderId);
+
+                        LOGGER.info("Cancelling " + orderId + " " + cancelledOrder);
+                        return cancelledOrder;
+                    } catch (BrokerException e) {
+                        e.printStackTrace();
+                        return false;
+                    }
+                }
+            });
+        }
+
+        try {
+            reconcileService.invokeAll(cancels);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return orderIds.size();
+    }
+
+    /**
+     * Resets every symbol's position and features. Stream events aren't passed on whenever this
+     * is called, so the workers are idle.
+     */
+    private void resetPositions() {
+        for (Algorithm algorithm : algorithms.values()) {
+            algorithm.getPosition().reset();
+            algorithm.getFeatures().reset();
+        }
+    }
+
+    /**
+     * Gets the account's open positions.
+     *
+     * @return the share quantity by symbol, or null if they couldn't be fetched
+     */
+    private Map<String, Long> getPositions() {
+        try {
+            return broker.getPositions();
+        } catch (BrokerException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Seeds every symbol's position from the account's open positions.
+     *
+     * @param positions the share quantity by symbol, or null if they couldn't be fetched
+     */
+    private void updateInitialStates(Map<String, Long> positions) {
+        if (positions != null) {
+            for (Map.Entry<String, Long> currentPosition : positions.entrySet()) {
+                Algorithm algorithm = algorithms.get(currentPosition.getKey());
+
+                if (algorithm != null) {
+                    LOGGER.info("Currently own " + currentPosition.getValue() + " of "
+                                    + currentPosition.getKey());
+                    algorithm.getPosition().setTotalShares(currentPosition.getValue());
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Start stream listeners.
+     */
+    private void startStreamListeners() {
+        if (!listening) {
+            marketDataFeed.subscribe(algorithms.keySet(), this);
+            broker.addOrderUpdateListener(this);
+            listening = true;
+        }
+    }
+
+    /**
+     * Close stream listeners.
+     */
+    protected void closeStreamListeners() {
+        trading = false;
+
+        if (listening) {
+            marketDataFeed.unsubscribe(this);
+            broker.removeOrderUpdateListener(this);
+            listening = false;
+        }
+    }
+
+    /**
+     * Closes the day's tick segments once the recorder has written everything received.
+     */
+    private void rollTickRecorder() {
+        if (tickRecorder != null) {
+            tickRecorder.awaitWritten();
+            tickRecorder.roll();
+        }
+    }
+
+    /**
+     * Logs the order gateway, request limiter, risk gate, tick-to-trade latency, worker, event
+     * journal, tick recorder and position journal statistics.
+     */
+    public void logStatistics() {
+        orderGateway.logStatistics();
+
+        if (broker instanceof RateLimitedBroker) {
+            ((RateLimitedBroker) broker).logStatistics();
+        }
+
+        riskGate.logStatistics();
+        latencyStats.logStatistics();
+
+        if (workers.getStallCount() > 0) {
+            LOGGER.info("Symbol workers stalled publishers " + workers.getStallCount() + " times");
+        }
+
+        if (journal.getDroppedCount() > 0) {
+            LOGGER.info("Event journal dropped " + journal.getDroppedCount() + " records");
+        }
+
+        if (tickRecorder != null && tickRecorder.getStallCount() > 0) {
+            LOGGER.info("Tick recorder stalled the feed " + tickRecorder.getStallCount()
+                            + " times");
+        }
+
+        if (positionJournal != null && positionJournal.getDroppedCount() > 0) {
+            LOGGER.info("Position journal dropped " + positionJournal.getDroppedCount()
+                            + " records");
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.MarketDataListener#onQuote(java.lang.String,
+     * long, long, long, long, long, long)
+     */
+    @Override
+    public void onQuote(String symbol, long time, long bidPrice, long askPrice, long bidSize,
+                    long askSize, long receivedNanos) {
+        if (!trading) {
+            return;
+        }
+
+        metrics.increment(Metric.QUOTES);
+        journal.recordQuote(symbol, time, bidPrice, askPrice, bidSize, askSize, receivedNanos);
+
+        Algorithm algorithm = algorithms.get(symbol);
+
+        if (algorithm != null) {
+            workers.loopFor(symbol).publishQuote(algorithm, time, bidPrice, askPrice, bidSize,
+                            askSize);
+        }
+
+        // Recorded after the algorithm has the quote, so a recorder stall never delays it
+        if (tickRecorder != null) {
+            tickRecorder.recordQuote(symbol, time, bidPrice, askPrice, bidSize, askSize);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.MarketDataListener#onTrade(java.lang.String,
+     * long, long, long, long)
+     */
+    @Override
+    public void onTrade(String symbol, long time, long price, long size, long receivedNanos) {
+        if (!trading) {
+            return;
+        }
+
+        latencyStats.record(LatencyStage.DECODE, receivedNanos);
+        metrics.increment(Metric.TRADES);
+        journal.recordTrade(symbol, time, price, size, receivedNanos);
+
+        Algorithm algorithm = algorithms.get(symbol);
+
+        if (algorithm != null) {
+            workers.loopFor(symbol).publishTrade(algorithm, time, price, size, receivedNanos);
+        }
+
+        if (tickRecorder != null) {
+            tickRecorder.recordTrade(symbol, time, price, size);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.OrderUpdateListener#onOrderUpdate(java.lang.
+     * String, io.github.mainstringargs.alpaca.hftish.OrderUpdateType, java.lang.String,
+     * io.github.mainstringargs.alpaca.enums.OrderSide, long, long, long, long)
+     */
+    @Override
+    public void onOrderUpdate(String symbol, OrderUpdateType type, String orderId, OrderSide side,
+                    long qty, long filledQty, long limitPrice, long filledAvgPrice) {
+        if (!trading || (recovery != null && !recovery.accept(orderId, type))) {
+            return;
+        }
+
+        journal.recordOrderUpdate(symbol, type, orderId, qty, filledQty, limitPrice,
+                        filledAvgPrice);
+        latencyStats.onOrderUpdate(orderId, type);
+        countOrderUpdate(type);
+
+        Algorithm algorithm = algorithms.get(symbol);
+
+        if (algorithm != null) {
+            workers.loopFor(symbol).publishOrderUpdate(algorithm, type, orderId, side, qty,
+                            filledQty, limitPrice, filledAvgPrice);
+        }
+    }
+
+    /**
+     * Counts the fills, cancels and rejects among the order updates.
+     *
+     * @param type the type
+     */
+    private void countOrderUpdate(OrderUpdateType type) {
+        switch (type) {
+            case FILL:
+                metrics.increment(Metric.FILLS);
+                break;
+            case CANCELLED:
+                metrics.increment(Metric.CANCELS);
+                break;
+            case REJECTED:
+                metrics.increment(Metric.REJECTS);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.OrderGatewayListener#onOrderAccepted(io.github.
+     * mainstringargs.alpaca.hftish.OrderIntent, java.lang.String)
+     */
+    @Override
+    public void onOrderAccepted(OrderIntent intent, String orderId) {
+        metrics.increment(Metric.ORDERS);
+
+        Algorithm algorithm = algorithms.get(intent.getSymbol());
+
+        workers.loopFor(algorithm.getSymbol()).publishOrderAccepted(algorithm, intent, orderId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.OrderGatewayListener#onOrderFailed(io.github.
+     * mainstringargs.alpaca.hftish.OrderIntent, java.lang.String)
+     */
+    @Override
+    public void onOrderFailed(OrderIntent intent, String reason) {
+        metrics.increment(Metric.REJECTS);
+
+        Algorithm algorithm = algorithms.get(intent.getSymbol());
+
+        workers.loopFor(algorithm.getSymbol()).publishOrderFailed(algorithm, intent, reason);
+    }
+
+}
@@ -1,5 +1,10 @@
 package io.github.mainstringargs.alpaca.hftish;
 
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import io.github.mainstringargs.domain.polygon.websocket.PolygonStreamMessage;
 import io.github.mainstringargs.domain.polygon.websocket.quote.QuoteMessage;
 import io.github.mainstringargs.domain.polygon.websocket.trade.TradeMessage;
@@ -15,18 +20,38 @@ import io.github.mainstringargs.polygon.websocket.message.PolygonStreamMessageTy
  */
 public class AlgoPolygonStreamListener extends PolygonStreamListenerAdapter {
 
-    /** The algorithm. */
-    private Algorithm algorithm;
+    /** The listener. */
+    private MarketDataListener listener;
 
     /**
-     * Instantiates a new algo polygon stream listener.
+     * Instantiates a new algo polygon stream listener, subscribed to quotes and trades for the
+     * symbols.
      *
-     * @param algorithm the algorithm
+     * @param symbols the symbols
+     * @param listener the listener
      */
-    public AlgoPolygonStreamListener(Algorithm algorithm) {
-        super(algorithm.getAlgoConfig().getSymbol(), PolygonStreamMessageType.QUOTE,
-                        PolygonStreamMessageType.TRADE);
-        this.algorithm = algorithm;
+    public AlgoPolygonStreamListener(Collection<String> symbols, MarketDataListener listener) {
+        super(channelsFor(symbols));
+        this.listener = listener;
+    }
+
+    /**
+     * Builds the quote and trade channels for the symbols.
+     *
+     * @param symbols the symbols
+     * @return the channel types by symbol
+     */
+    private static Map<String, Set<PolygonStreamMessageType>> channelsFor(
+                    Collection<String> symbols) {
+        Map<String, Set<PolygonStreamMessageType>> channels =
+                        new HashMap<String, Set<PolygonStreamMessageType>>();
+
+        for (String symbol : symbols) {
+            channels.put(symbol, EnumSet.of(PolygonStreamMessageType.QUOTE,
+                            PolygonStreamMessageType.TRADE));
+        }
+
+        return channels;
     }
 
 
@@ -40,12 +65,19 @@ public class AlgoPolygonStreamListener extends PolygonStreamListenerAdapter {
     @Override
     public void onStreamUpdate(PolygonStreamMessageType streamMessageType,
                     PolygonStreamMessage streamMessage) {
+        long receivedNanos = System.nanoTime();
+
         switch (streamMessageType) {
             case QUOTE:
-                algorithm.onQuote((QuoteMessage) streamMessage);
+                QuoteMessage quote = (QuoteMessage) streamMessage;
+                listener.onQuote(quote.getSym(), quote.getT(), Ticks.fromPrice(quote.getBp()),
+                                Ticks.fromPrice(quote.getAp()), quote.getBs(), quote.getAs(),
+                                receivedNanos);
                 break;
             case TRADE:
-                algorithm.onTrade((TradeMessage) streamMessage);
+                TradeMessage trade = (TradeMessage) streamMessage;
+                listener.onTrade(trade.getSym(), trade.getT(), Ticks.fromPrice(trade.getP()),
+                                trade.getS(), receivedNanos);
                 break;
         }
 
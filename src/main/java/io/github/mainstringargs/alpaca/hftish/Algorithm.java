@@ -1,323 +1,210 @@
 package io.github.mainstringargs.alpaca.hftish;
 
 import java.text.DecimalFormat;
-import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
-import java.util.List;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import io.github.mainstringargs.alpaca.AlpacaAPI;
-import io.github.mainstringargs.alpaca.enums.Direction;
 import io.github.mainstringargs.alpaca.enums.OrderSide;
-import io.github.mainstringargs.alpaca.enums.OrderStatus;
-import io.github.mainstringargs.alpaca.enums.OrderTimeInForce;
-import io.github.mainstringargs.alpaca.enums.OrderType;
-import io.github.mainstringargs.alpaca.properties.AlpacaProperties;
-import io.github.mainstringargs.alpaca.rest.exception.AlpacaAPIRequestException;
-import io.github.mainstringargs.domain.alpaca.clock.Clock;
-import io.github.mainstringargs.domain.alpaca.order.Order;
-import io.github.mainstringargs.domain.alpaca.websocket.trade.TradeUpdateMessage;
-import io.github.mainstringargs.domain.polygon.websocket.quote.QuoteMessage;
-import io.github.mainstringargs.domain.polygon.websocket.trade.TradeMessage;
-import io.github.mainstringargs.polygon.PolygonAPI;
-import io.github.mainstringargs.util.concurrency.ExecutorTracer;
 
 /**
- * The Class Algorithm.
+ * The Algorithm trades a single symbol. It owns that symbol's {@link Quote}, {@link FeatureEngine}
+ * and {@link Position} and is only ever called from the {@link EventLoop} thread the symbol is pinned to, so none of its
+ * state needs a lock.
  */
-public class Algorithm {
+public class Algorithm implements OrderGatewayListener {
 
 
     /** The logger. */
     private static Logger LOGGER = LogManager.getLogger(Algorithm.class);
 
+    /** The symbol. */
+    private final String symbol;
+
     /** The algo config. */
-    private AlgoConfig algoConfig;
+    private final AlgoConfig algoConfig;
+
+    /** The smallest trade followed. */
+    private final long minTradeSize;
+
+    /** The imbalance ratio, in hundredths. */
+    private final long imbalanceHundredths;
 
-    /** The polygon api. */
-    private final PolygonAPI polygonApi;
+    /** The quote guard millis. */
+    private final long quoteGuardMillis;
 
-    /** The alpaca api. */
-    private final AlpacaAPI alpacaApi;
+    /** The lot size. */
+    private final long lotSize;
+
+    /** The trade flow imbalance a signal must agree with, or 0 to ignore the flow. */
+    private final double minFlowImbalance;
 
     /** The quote. */
-    private Quote quote;
+    private final Quote quote;
+
+    /** The view of the quote that onTrade decides on. */
+    private final QuoteView quoteView = new QuoteView();
+
+    /** The features. */
+    private final FeatureEngine features;
 
     /** The position. */
-    private Position position;
+    private final Position position;
 
-    /** The polygon stream listener. */
-    private AlgoPolygonStreamListener polygonStreamListener;
+    /** The account state. */
+    private final AccountState accountState;
 
-    /** The alpaca stream listener. */
-    private AlgoAlpacaStreamListener alpacaStreamListener;
+    /** The order router. */
+    private final OrderRouter orderRouter;
 
-    /** The Constant DOUBLE_THRESHOLD. */
-    public static final double DOUBLE_THRESHOLD = .0001;
+    /** The risk gate. */
+    private final RiskGate riskGate;
 
-    /** The Constant scheduledService. */
-    private static final ScheduledExecutorService scheduledService =
-                    ExecutorTracer.newScheduledThreadPool(1);
+    /** The event journal, or null. */
+    private final EventJournal journal;
 
-    /** The curr format. */
-    DecimalFormat currFormat = new DecimalFormat("'$'0.00");
+    /** The metrics, or null. */
+    private final EngineMetrics metrics;
 
+    /** The position journal, or null. */
+    private final PositionJournal positionJournal;
 
-    /**
-     * Gets the algo config.
-     *
-     * @return the algo config
-     */
-    public AlgoConfig getAlgoConfig() {
-        return algoConfig;
-    }
+    /** Whether buy and sell signals are logged. */
+    private boolean logSignals = true;
+
+    /** The curr format. */
+    DecimalFormat currFormat = new DecimalFormat("'$'0.00");
 
     /**
      * Instantiates a new algorithm.
      *
+     * @param symbol the symbol
      * @param algoConfig the algo config
+     * @param accountState the account state shared by all symbols
+     * @param orderRouter the order router shared by all symbols
+     * @param riskGate the risk gate shared by all symbols
+     * @param journal the event journal level changes are recorded to, or null
+     * @param metrics the metrics level changes and signals are counted in, or null
+     * @param positionJournal the journal every change to the position is written ahead to, or
+     *        null
      */
-    public Algorithm(AlgoConfig algoConfig) {
+    public Algorithm(String symbol, AlgoConfig algoConfig, AccountState accountState,
+                    OrderRouter orderRouter, RiskGate riskGate, EventJournal journal,
+                    EngineMetrics metrics, PositionJournal positionJournal) {
+        this.symbol = symbol;
         this.algoConfig = algoConfig;
+        this.accountState = accountState;
+        this.orderRouter = orderRouter;
+        this.riskGate = riskGate;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.positionJournal = positionJournal;
+
+        minTradeSize = algoConfig.getMinTradeSize();
+        imbalanceHundredths = Math.round(algoConfig.getImbalanceRatio() * 100);
+        quoteGuardMillis = algoConfig.getQuoteGuardMillis();
+        lotSize = algoConfig.getLotSize();
+        minFlowImbalance = algoConfig.getMinFlowImbalance();
 
         quote = new Quote();
+        features = new FeatureEngine(algoConfig);
         position = new Position();
-
-        String key = algoConfig.getKey();
-        String secret = algoConfig.getSecret();
-
-        if (key.equals(AlgoConfig.PLACEHOLDER_DEFAULT)) {
-            key = AlpacaProperties.KEY_ID_VALUE;
-        }
-        if (secret.equals(AlgoConfig.PLACEHOLDER_DEFAULT)) {
-            secret = AlpacaProperties.SECRET_VALUE;
-        }
-
-        alpacaApi = new AlpacaAPI(AlpacaProperties.API_VERSION_VALUE, key, secret,
-                        AlpacaProperties.BASE_API_URL_VALUE);
-        polygonApi = new PolygonAPI(key);
-
-
-        Clock marketClock = null;
-        try {
-            marketClock = alpacaApi.getClock();
-        } catch (AlpacaAPIRequestException e1) {
-            e1.printStackTrace();
-        }
-
-        if (marketClock != null)
-            if (marketClock.getIsOpen()) {
-                init();
-            } else {
-                scheduleNextOpen(marketClock);
-            }
-
     }
 
     /**
-     * Inits the.
+     * Gets the symbol.
+     *
+     * @return the symbol
      */
-    private void init() {
-        Clock marketClock = null;
-        try {
-            marketClock = alpacaApi.getClock();
-        } catch (AlpacaAPIRequestException e1) {
-            e1.printStackTrace();
-        }
-
-        LOGGER.info("Market is now open. Current Clock " + marketClock);
-
-        scheduleNextClose(marketClock);
-
-        cancelPendingOrders();
-        position.reset();
-        updateInitialStates();
-        startStreamListeners();
+    public String getSymbol() {
+        return symbol;
     }
 
-
     /**
-     * Schedule next open.
+     * Gets the algo config.
      *
-     * @param marketClock the market clock
+     * @return the algo config
      */
-    private void scheduleNextOpen(Clock marketClock) {
-
-        long delay = ChronoUnit.MILLIS.between(ZonedDateTime.now(), (marketClock.getNextOpen()));
-
-        if (delay < 0) {
-
-            try {
-                marketClock = alpacaApi.getClock();
-            } catch (AlpacaAPIRequestException e1) {
-                e1.printStackTrace();
-            }
-
-            LOGGER.info("Clock has not yet rolled over after market close, sleeping for 15 minutes");
-
-            try {
-                Thread.sleep(TimeUnit.MILLISECONDS.convert(15, TimeUnit.MINUTES));
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-            scheduleNextOpen(marketClock);
-
-            return;
-        }
-
-        LOGGER.info("Market is closed. Will Open in "
-                        + TimeUnit.MINUTES.convert(delay, TimeUnit.MILLISECONDS) + " minutes");
-
-        scheduledService.schedule(new Runnable() {
-
-            @Override
-            public void run() {
-                init();
-
-            }
-        }, delay, TimeUnit.MILLISECONDS);
+    public AlgoConfig getAlgoConfig() {
+        return algoConfig;
     }
 
     /**
-     * Schedule next close.
+     * Gets the quote.
      *
-     * @param marketClock the market clock
+     * @return the quote
      */
-    private void scheduleNextClose(Clock marketClock) {
-
-        long delay = ChronoUnit.MILLIS.between(ZonedDateTime.now(), (marketClock.getNextClose()));
-
-        LOGGER.info("Market will Close in " + TimeUnit.MINUTES.convert(delay, TimeUnit.MILLISECONDS)
-                        + " minutes");
-
-        scheduledService.schedule(new Runnable() {
-
-            @Override
-            public void run() {
-                closeStreamListeners();
-                cancelPendingOrders();
-                position.reset();
-
-                Clock marketClock = null;
-                try {
-                    marketClock = alpacaApi.getClock();
-                } catch (AlpacaAPIRequestException e1) {
-                    e1.printStackTrace();
-                }
-
-                LOGGER.info("Market is now closed. Current Clock " + marketClock);
-
-                scheduleNextOpen(marketClock);
-
-            }
-        }, delay, TimeUnit.MILLISECONDS);
+    public Quote getQuote() {
+        return quote;
     }
 
     /**
-     * Cancel pending orders.
+     * Gets the features.
+     *
+     * @return the features
      */
-    private void cancelPendingOrders() {
-        List<Order> orders = null;
-        try {
-            orders = alpacaApi.getOrders(OrderStatus.OPEN, 50, null, ZonedDateTime.now(),
-                            Direction.ASCENDING, false);
-        } catch (AlpacaAPIRequestException e) {
-            e.printStackTrace();
-        }
-
-        if (orders != null) {
-            for (Order order : orders) {
-
-                if (order.getSymbol().trim().equalsIgnoreCase(algoConfig.getSymbol().trim())) {
-                    try {
-                        boolean cancelledOrder = alpacaApi.cancelOrder(order.getId());
-
-                        LOGGER.info("Cancelling " + order.getId() + " " + cancelledOrder);
-                    } catch (AlpacaAPIRequestException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        }
-
+    public FeatureEngine getFeatures() {
+        return features;
     }
 
     /**
-     * Update initial states.
-     */
-    private void updateInitialStates() {
-        String ticker = algoConfig.getSymbol();
-
-        io.github.mainstringargs.domain.alpaca.position.Position currentPosition = null;
-
-        try {
-            currentPosition = alpacaApi.getOpenPositionBySymbol(ticker.trim());
-        } catch (AlpacaAPIRequestException e) {
-            e.printStackTrace();
-        }
-
-        if (currentPosition != null) {
-            String qtyForTicker = currentPosition.getQty();
-
-            if (qtyForTicker != null && !qtyForTicker.isEmpty()) {
-                Integer qtyInt = Integer.parseInt(qtyForTicker);
-                LOGGER.info("Currently own " + qtyInt + " of " + ticker);
-                position.setTotalShares(qtyInt);
-            }
-        }
-
-    }
-
-    /**
-     * Start stream listeners.
+     * Gets the position.
+     *
+     * @return the position
      */
-    private void startStreamListeners() {
-
-        polygonStreamListener = new AlgoPolygonStreamListener(this);
-        alpacaStreamListener = new AlgoAlpacaStreamListener(this);
-
-        polygonApi.addPolygonStreamListener(polygonStreamListener);
-        alpacaApi.addAlpacaStreamListener(alpacaStreamListener);
+    public Position getPosition() {
+        return position;
     }
 
-
     /**
-     * Close stream listeners.
+     * Sets whether buy and sell signals are logged. Only called before publishing the trades it
+     * should apply to.
+     *
+     * @param logSignals true, to log signals
      */
-    protected void closeStreamListeners() {
-        if (polygonStreamListener != null) {
-            polygonApi.removePolygonStreamListener(polygonStreamListener);
-        }
-        if (alpacaStreamListener != null) {
-            alpacaApi.removeAlpacaStreamListener(alpacaStreamListener);
-        }
+    public void setLogSignals(boolean logSignals) {
+        this.logSignals = logSignals;
     }
 
-
     /**
      * On quote.
      *
-     * @param message the message
+     * @param time the time
+     * @param bidPrice the bid price, in ticks
+     * @param askPrice the ask price, in ticks
+     * @param bidSize the bid size
+     * @param askSize the ask size
      */
-    public synchronized void onQuote(QuoteMessage message) {
-        LOGGER.debug("onQuote " + message);
-        quote.update(message);
-        LOGGER.debug("updatedQuote " + quote);
+    public void onQuote(long time, long bidPrice, long askPrice, long bidSize, long askSize) {
+        if (minFlowImbalance != 0) {
+            features.onQuote(bidPrice, askPrice);
+        }
+
+        if (quote.update(time, bidPrice, askPrice, bidSize, askSize)) {
+            if (journal != null) {
+                journal.recordLevelChange(symbol, time, bidPrice, askPrice, quote.getLevelCt());
+            }
+            if (metrics != null) {
+                metrics.increment(Metric.LEVEL_CHANGES);
+            }
+        }
     }
 
 
     /**
      * On trade.
      *
-     * @param streamMessage the message
+     * @param time the trade time
+     * @param price the trade price, in ticks
+     * @param size the trade size
+     * @param signalNanos the System.nanoTime() at which the trade arrived
      */
-    public synchronized void onTrade(TradeMessage streamMessage) {
-        LOGGER.debug("onTrade " + streamMessage);
+    public void onTrade(long time, long price, long size, long signalNanos) {
+        if (minFlowImbalance != 0) {
+            features.onTrade(time, price, size);
+        }
+        quote.recordTrade(price, size);
+        quote.read(quoteView);
 
-        if (quote.isTraded()) {
+        if (quoteView.isTraded()) {
             return;
         }
 
@@ -325,137 +212,297 @@ public class Algorithm {
         // Date(quote.getTime()));
 
         // We've received a trade and might be ready to follow it
-        if (streamMessage.getT() <= (quote.getTime() + 50)) {
+        if (time <= (quoteView.getTime() + quoteGuardMillis)) {
             // The trade came too close to the quote update
             // and may have been for the previous level
             return;
         }
 
-        if (streamMessage.getS() >= 100) {
+        if (size >= minTradeSize) {
 
 
             // The trade was large enough to follow, so we check to see if
             // we're ready to trade. We also check to see that the
             // bid vs ask quantities (order book imbalance) indicate
             // a movement in that direction. We also want to be sure that
-            // we're not buying or selling more than we should.
+            // we're not buying or selling more than we should. An imbalance
+            // means one side is more than the imbalance ratio times the other.
+            // If configured, the recent trade flow must lean the same way.
+
+            if (price == quoteView.getAsk()
+                            && quoteView.getBidSize() * 100 > quoteView.getAskSize()
+                                            * imbalanceHundredths
+                            && (minFlowImbalance == 0 || features
+                                            .getTradeFlowImbalance(time) >= minFlowImbalance)) {
+
+                // Claiming the shares checks the limit in the same atomic step, so two signals
+                // can never both see room for the last lot
+                if (!position.tryReserveBuy(lotSize, algoConfig.getQuantity())) {
+                    return;
+                }
 
-            if (Math.abs(streamMessage.getP() - quote.getAsk()) < DOUBLE_THRESHOLD
-                            && Double.compare(quote.getBidSize(),
-                                            (double) quote.getAskSize() * 1.8) > 0.0
-                            && ((position.getTotalShares()
-                                            + position.getPendingBuyShares()) < algoConfig
-                                                            .getQuantity() - 100)) {
+                if (!accountState.tryReserve(Ticks.toCents(quoteView.getAsk()) * lotSize)) {
+                    position.updatePendingBuyShares(-lotSize);
 
+                    LOGGER.info("Ignoring buy; Not enough buying power: "
+                                    + currFormat.format(accountState.getAvailableCents() / 100.0));
+                    return;
+                }
 
+                // The risk gate goes last, so an order it passes is always sent
+                if (riskGate.check(lotSize, quoteView.getAsk(), quoteView.getBid(),
+                                quoteView.getAsk(), time) != RiskCheck.PASSED) {
+                    position.updatePendingBuyShares(-lotSize);
+                    accountState.release(Ticks.toCents(quoteView.getAsk()) * lotSize);
+                    return;
+                }
 
-                try {
+                if (logSignals) {
+                    LOGGER.info("Buy " + lotSize + " of " + symbol + " at "
+                                    + currFormat.format(Ticks.toPrice(quoteView.getAsk()))
+                                    + "; Current shares: " + position.getTotalShares());
+                }
 
-                    double buyingPower =
-                                    Double.parseDouble(alpacaApi.getAccount().getBuyingPower());
+                quote.setTraded(quoteView.getLevelCt());
 
-                    if (buyingPower > (quote.getAsk() * 100)) {
+                if (metrics != null) {
+                    metrics.increment(Metric.SIGNALS);
+                }
 
-                        LOGGER.info("Buy " + 100 + " of " + algoConfig.getSymbol() + " at "
-                                        + currFormat.format(quote.getAsk()) + "; Current shares: "
-                                        + position.getTotalShares());
+                submit(new OrderIntent(symbol, lotSize, OrderSide.BUY, quoteView.getAsk(),
+                                signalNanos));
 
-                        Order order = alpacaApi.requestNewOrder(algoConfig.getSymbol(), 100,
-                                        OrderSide.BUY, OrderType.LIMIT, OrderTimeInForce.DAY,
-                                        quote.getAsk(), null, false, null, null, null, null, null);
-                        // Approximate an IOC order by immediately cancelling
-                        alpacaApi.cancelOrder(order.getId().trim());
+            } else if (price == quoteView.getBid()
+                            && quoteView.getAskSize() * 100 > quoteView.getBidSize()
+                                            * imbalanceHundredths
+                            && (minFlowImbalance == 0 || features
+                                            .getTradeFlowImbalance(time) <= -minFlowImbalance)
+                            && position.tryReserveSell(lotSize)) {
 
-                        position.updatePendingBuyShares(100);
-                        position.setOrdersFilledAmount(order.getId(), 0);
+                if (riskGate.check(lotSize, quoteView.getBid(), quoteView.getBid(),
+                                quoteView.getAsk(), time) != RiskCheck.PASSED) {
+                    position.updatePendingSellShares(-lotSize);
+                    return;
+                }
 
+                if (logSignals) {
+                    LOGGER.info("Sell " + lotSize + " of " + symbol + " at "
+                                    + currFormat.format(Ticks.toPrice(quoteView.getBid()))
+                                    + "; Current shares: " + position.getTotalShares());
+                }
 
-                        quote.setTraded(true);
-                    } else {
-                        LOGGER.info("Ignoring buy; Not enough buying power: "
-                                        + currFormat.format(buyingPower));
-                    }
+                quote.setTraded(quoteView.getLevelCt());
 
-                } catch (AlpacaAPIRequestException e) {
-                    e.printStackTrace();
+                if (metrics != null) {
+                    metrics.increment(Metric.SIGNALS);
                 }
 
-            } else if (Math.abs(streamMessage.getP() - quote.getBid()) < DOUBLE_THRESHOLD
-                            && Double.compare(quote.getAskSize(),
-                                            (double) quote.getBidSize() * 1.8) > 0.0
-                            && ((position.getTotalShares()
-                                            - position.getPendingSellShares()) >= 100)
-                            && position.getTotalShares() > 0) {
+                submit(new OrderIntent(symbol, lotSize, OrderSide.SELL, quoteView.getBid(),
+                                signalNanos));
+            }
+        }
+    }
 
-                long numberToSell = 100;
+    /**
+     * Journals an order and hands it to the router.
+     *
+     * @param intent the intent
+     */
+    private void submit(OrderIntent intent) {
+        if (positionJournal != null) {
+            positionJournal.recordIntent(intent);
+        }
 
-                if (numberToSell > position.getTotalShares()) {
-                    numberToSell = position.getTotalShares();
-                }
+        orderRouter.submit(intent);
+    }
 
-                try {
+    /*
+     * (non-Javadoc)
+     * 
+     * @see io.github.mainstringargs.alpaca.hftish.OrderGatewayListener#onOrderAccepted(io.github.
+     * mainstringargs.alpaca.hftish.OrderIntent, java.lang.String)
+     */
+    @Override
+    public void onOrderAccepted(OrderIntent intent, String orderId) {
+        if (positionJournal != null) {
+            positionJournal.recordAccepted(intent, orderId);
+        }
 
-                    LOGGER.info("Sell " + numberToSell + " of " + algoConfig.getSymbol() + " at "
-                                    + currFormat.format(quote.getAsk()) + "; Current shares: "
-                                    + position.getTotalShares());
+        position.onOrderAccepted(intent, orderId);
+    }
 
-                    Order order = alpacaApi.requestNewOrder(algoConfig.getSymbol(),
-                                    (int) numberToSell, OrderSide.SELL, OrderType.LIMIT,
-                                    OrderTimeInForce.DAY, quote.getBid(), null, false, null, null,
-                                    null, null, null);
-                    // Approximate an IOC order by immediately cancelling
-                    alpacaApi.cancelOrder(order.getId().trim());
+    /*
+     * (non-Javadoc)
+     * 
+     * @see io.github.mainstringargs.alpaca.hftish.OrderGatewayListener#onOrderFailed(io.github.
+     * mainstringargs.alpaca.hftish.OrderIntent, java.lang.String)
+     */
+    @Override
+    public void onOrderFailed(OrderIntent intent, String reason) {
+        LOGGER.info("Order failed: " + intent + " " + reason);
 
-                    position.updatePendingSellShares(numberToSell);
-                    position.setOrdersFilledAmount(order.getId().trim(), 0);
+        if (positionJournal != null) {
+            positionJournal.recordFailed(intent);
+        }
 
+        release(intent, reason);
+    }
 
-                    quote.setTraded(true);
+    /**
+     * Releases the shares, risk gate slot and buying power reserved for an order that was never
+     * placed.
+     *
+     * @param intent the intent
+     * @param reason the reason
+     */
+    private void release(OrderIntent intent, String reason) {
+        position.onOrderFailed(intent, reason);
+        riskGate.release();
 
-                } catch (AlpacaAPIRequestException e) {
-                    e.printStackTrace();
-                }
-            }
+        if (intent.getSide() == OrderSide.BUY) {
+            accountState.release(Ticks.toCents(intent.getLimitPrice()) * intent.getQuantity());
         }
     }
 
     /**
-     * On trade updates.
+     * Applies an update to one of our orders.
      *
-     * @param message the message
+     * @param type the type
+     * @param orderId the order id
+     * @param side the side
+     * @param qty the order quantity
+     * @param filledQty the cumulative filled quantity
+     * @param limitPrice the limit price, in ticks
+     * @param filledAvgPrice the average fill price, in ticks
      */
-    public synchronized void onTradeUpdates(TradeUpdateMessage message) {
-        LOGGER.debug("onTradeUpdates " + message);
-
-        if (message.getData().getEvent().equalsIgnoreCase("fill")) {
-
-            if (message.getData().getOrder().getType().trim().equalsIgnoreCase("Buy")) {
-                // position.updateFilledAmount(message.getOrder().getId(),
-                // Integer.parseInt(message.getOrder().getFilledQty()),
-                // message.getOrder().getSide());
-                position.updateTotalShares(
-                                Integer.parseInt(message.getData().getOrder().getFilledQty()));
-            } else {
-                // position.updateFilledAmount(message.getOrder().getId(),
-                // Integer.parseInt(message.getOrder().getFilledQty()),
-                // message.getOrder().getSide());
-                position.updateTotalShares(
-                                -1 * Integer.parseInt(message.getData().getOrder().getFilledQty()));
-            }
+    public void onOrderUpdate(OrderUpdateType type, String orderId, OrderSide side, long qty,
+                    long filledQty, long limitPrice, long filledAvgPrice) {
+        if (positionJournal != null) {
+            positionJournal.recordUpdate(symbol, type, orderId, side, qty, filledQty, limitPrice,
+                            filledAvgPrice);
+        }
+
+        applyOrderUpdate(type, orderId, side, qty, filledQty, limitPrice, filledAvgPrice);
+    }
+
+    /**
+     * Applies an update to one of our orders to the position.
+     *
+     * @param type the type
+     * @param orderId the order id
+     * @param side the side
+     * @param qty the order quantity
+     * @param filledQty the cumulative filled quantity
+     * @param limitPrice the limit price, in ticks
+     * @param filledAvgPrice the average fill price, in ticks
+     */
+    private void applyOrderUpdate(OrderUpdateType type, String orderId, OrderSide side, long qty,
+                    long filledQty, long limitPrice, long filledAvgPrice) {
+        switch (type) {
+            case FILL:
+                position.updateFilledAmount(orderId, filledQty, side);
+                position.removePendingOrder(orderId, filledQty, side);
+                onOrderDone(side, qty, filledQty, limitPrice, filledAvgPrice);
+                break;
+            case PARTIAL_FILL:
+                position.updateFilledAmount(orderId, filledQty, side);
+                break;
+            case CANCELLED:
+            case REJECTED:
+                position.removePendingOrder(orderId, qty, side);
+                onOrderDone(side, qty, filledQty, limitPrice, filledAvgPrice);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Releases the buying power and risk gate slot held by a finished order and applies whatever
+     * was filled.
+     *
+     * @param side the side
+     * @param qty the order quantity
+     * @param filledQty the filled quantity
+     * @param limitPrice the limit price, in ticks
+     * @param filledAvgPrice the average fill price, in ticks
+     */
+    private void onOrderDone(OrderSide side, long qty, long filledQty, long limitPrice,
+                    long filledAvgPrice) {
+        boolean buy = side == OrderSide.BUY;
+
+        if (buy) {
+            accountState.release(Ticks.toCents(limitPrice) * qty);
+        }
 
-            position.removePendingOrder(message.getData().getOrder().getId().trim(),
-                            Integer.parseInt(message.getData().getOrder().getFilledQty()),
-                            message.getData().getOrder().getSide());
-        } else if (message.getData().getEvent().equalsIgnoreCase("partial_fill")) {
-            position.updateFilledAmount(message.getData().getOrder().getId().trim(),
-                            Integer.parseInt(message.getData().getOrder().getFilledQty()),
-                            message.getData().getOrder().getSide());
-        } else if (message.getData().getEvent().equalsIgnoreCase("cancelled")
-                        || message.getData().getEvent().equalsIgnoreCase("rejected")) {
-            position.removePendingOrder(message.getData().getOrder().getId().trim(),
-                            Integer.parseInt(message.getData().getOrder().getQty()),
-                            message.getData().getOrder().getSide());
+        if (filledQty > 0) {
+            accountState.onFill(buy, Ticks.toCents(filledAvgPrice) * filledQty);
+            riskGate.onOrderDone(position.realize(side, filledQty, filledAvgPrice));
+        } else {
+            riskGate.release();
         }
     }
 
+    /**
+     * Seeds the position from a session checkpoint being replayed.
+     *
+     * @param totalShares the total shares
+     */
+    public void recoverCheckpoint(long totalShares) {
+        position.reset();
+        position.setTotalShares(totalShares);
+    }
+
+    /**
+     * Reserves what a replayed order took when it was decided: its shares, a risk gate slot and,
+     * for a buy, its buying power.
+     *
+     * @param intent the intent
+     */
+    public void recoverIntent(OrderIntent intent) {
+        if (intent.getSide() == OrderSide.BUY) {
+            position.updatePendingBuyShares(intent.getQuantity());
+            accountState.reserve(Ticks.toCents(intent.getLimitPrice()) * intent.getQuantity());
+        } else {
+            position.updatePendingSellShares(intent.getQuantity());
+        }
+
+        riskGate.reserve();
+    }
+
+    /**
+     * Applies a replayed ack.
+     *
+     * @param intent the intent
+     * @param orderId the order id
+     */
+    public void recoverOrderAccepted(OrderIntent intent, String orderId) {
+        position.onOrderAccepted(intent, orderId);
+    }
+
+    /**
+     * Applies a replayed failure, or releases an order that can't have been placed.
+     *
+     * @param intent the intent
+     */
+    public void recoverOrderFailed(OrderIntent intent) {
+        release(intent, "recovered");
+    }
+
+    /**
+     * Applies a replayed order update.
+     *
+     * @param type the type
+     * @param orderId the order id
+     * @param side the side
+     * @param qty the order quantity
+     * @param filledQty the cumulative filled quantity
+     * @param limitPrice the limit price, in ticks
+     * @param filledAvgPrice the average fill price, in ticks
+     */
+    public void recoverOrderUpdate(OrderUpdateType type, String orderId, OrderSide side, long qty,
+                    long filledQty, long limitPrice, long filledAvgPrice) {
+        applyOrderUpdate(type, orderId, side, qty, filledQty, limitPrice, filledAvgPrice);
+    }
+
 }
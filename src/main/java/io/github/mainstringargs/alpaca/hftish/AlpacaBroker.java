@@ -0,0 +1,268 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import io.github.mainstringargs.alpaca.AlpacaAPI;
+import io.github.mainstringargs.alpaca.enums.Direction;
+import io.github.mainstringargs.alpaca.enums.OrderStatus;
+import io.github.mainstringargs.alpaca.enums.OrderTimeInForce;
+import io.github.mainstringargs.alpaca.enums.OrderType;
+import io.github.mainstringargs.alpaca.properties.AlpacaProperties;
+import io.github.mainstringargs.alpaca.rest.exception.AlpacaAPIRequestException;
+import io.github.mainstringargs.domain.alpaca.account.Account;
+import io.github.mainstringargs.domain.alpaca.clock.Clock;
+import io.github.mainstringargs.domain.alpaca.order.Order;
+
+/**
+ * The {@link Broker} backed by the Alpaca REST API and trade updates stream.
+ */
+public class AlpacaBroker implements Broker {
+
+    /** The most orders the REST API returns in one page. */
+    public static final int ORDERS_PAGE_SIZE = 500;
+
+    /** The key id. */
+    private final String keyId;
+
+    /** The alpaca api. */
+    private final AlpacaAPI alpacaApi;
+
+    /** The time in force orders are submitted with. */
+    private final OrderTimeInForce timeInForce;
+
+    /** The symbols traded. */
+    private final List<String> symbols;
+
+    /** The stream listeners registered for each order update listener. */
+    private final Map<OrderUpdateListener, AlgoAlpacaStreamListener> streamListeners =
+                    new ConcurrentHashMap<OrderUpdateListener, AlgoAlpacaStreamListener>();
+
+    /**
+     * Instantiates a new alpaca broker, using the key and secret from the config or, if those are
+     * left as placeholders, from alpaca.properties.
+     *
+     * @param algoConfig the algo config
+     */
+    public AlpacaBroker(AlgoConfig algoConfig) {
+        String key = algoConfig.getKey();
+        String secret = algoConfig.getSecret();
+
+        if (key.equals(AlgoConfig.PLACEHOLDER_DEFAULT)) {
+            key = AlpacaProperties.KEY_ID_VALUE;
+        }
+        if (secret.equals(AlgoConfig.PLACEHOLDER_DEFAULT)) {
+            secret = AlpacaProperties.SECRET_VALUE;
+        }
+
+        keyId = key;
+        symbols = algoConfig.getSymbols();
+        timeInForce = algoConfig.isCancelOnAck() ? OrderTimeInForce.DAY : OrderTimeInForce.IOC;
+        alpacaApi = new AlpacaAPI(AlpacaProperties.API_VERSION_VALUE, key, secret,
+                        AlpacaProperties.BASE_API_URL_VALUE);
+    }
+
+    /**
+     * Gets the key id, which Polygon also authenticates with.
+     *
+     * @return the key id
+     */
+    public String getKeyId() {
+        return keyId;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getMarketHours()
+     */
+    @Override
+    public MarketHours getMarketHours() throws BrokerException {
+        try {
+            Clock clock = alpacaApi.getClock();
+            return new MarketHours(clock.getIsOpen(), clock.getNextOpen(), clock.getNextClose());
+        } catch (AlpacaAPIRequestException e) {
+            throw new BrokerException("Unable to get clock", e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getBuyingPowerCents()
+     */
+    @Override
+    public long getBuyingPowerCents() throws BrokerException {
+        try {
+            Account account = alpacaApi.getAccount();
+            return AccountState.toCents(account.getBuyingPower());
+        } catch (AlpacaAPIRequestException e) {
+            throw new BrokerException("Unable to get account", e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getPositions()
+     */
+    @Override
+    public Map<String, Long> getPositions() throws BrokerException {
+        List<io.github.mainstringargs.domain.alpaca.position.Position> openPositions;
+
+        try {
+            openPositions = alpacaApi.getOpenPositions();
+        } catch (AlpacaAPIRequestException e) {
+            throw new BrokerException("Unable to get positions", e);
+        }
+
+        Map<String, Long> positions = new HashMap<String, Long>();
+
+        if (openPositions != null) {
+            for (io.github.mainstringargs.domain.alpaca.position.Position openPosition
+                            : openPositions) {
+                String qty = openPosition.getQty();
+
+                if (qty != null && !qty.isEmpty()) {
+                    positions.put(openPosition.getSymbol().trim().toUpperCase(),
+                                    Long.parseLong(qty.trim()));
+                }
+            }
+        }
+
+        return positions;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getOpenOrderIds(java.util.Collection)
+     */
+    @Override
+    public List<String> getOpenOrderIds(Collection<String> symbols) throws BrokerException {
+        Set<String> wanted = new HashSet<String>(symbols);
+        Set<String> seen = new HashSet<String>();
+        List<String> orderIds = new ArrayList<String>();
+        ZonedDateTime until = ZonedDateTime.now();
+        ZonedDateTime after = null;
+
+        // Pages are walked oldest first. Each page starts just before the last order of the one
+        // before, so orders submitted in the same instant aren't skipped, and repeats are dropped
+        while (true) {
+            List<Order> orders;
+
+            try {
+                orders = alpacaApi.getOrders(OrderStatus.OPEN, ORDERS_PAGE_SIZE, after, until,
+                                Direction.ASCENDING, false);
+            } catch (AlpacaAPIRequestException e) {
+                throw new BrokerException("Unable to get open orders", e);
+            }
+
+            if (orders == null || orders.isEmpty()) {
+                break;
+            }
+
+            boolean progressed = false;
+
+            for (Order order : orders) {
+                String orderId = order.getId().trim();
+
+                if (seen.add(orderId)) {
+                    progressed = true;
+
+                    if (wanted.contains(order.getSymbol().trim().toUpperCase())) {
+                        orderIds.add(orderId);
+                    }
+                }
+            }
+
+            ZonedDateTime last = orders.get(orders.size() - 1).getSubmittedAt();
+
+            if (!progressed || orders.size() < ORDERS_PAGE_SIZE || last == null) {
+                break;
+            }
+
+            after = last.minusNanos(1);
+        }
+
+        return orderIds;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#isImmediateOrCancel()
+     */
+    @Override
+    public boolean isImmediateOrCancel() {
+        return timeInForce == OrderTimeInForce.IOC;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#submitOrder(io.github.mainstringargs.
+     * alpaca.hftish.OrderIntent)
+     */
+    @Override
+    public String submitOrder(OrderIntent intent) throws BrokerException {
+        try {
+            Order order = alpacaApi.requestNewOrder(intent.getSymbol(), (int) intent.getQuantity(),
+                            intent.getSide(), OrderType.LIMIT, timeInForce,
+                            Ticks.toPrice(intent.getLimitPrice()), null, false, null, null,
+                            null, null, null);
+            return order.getId().trim();
+        } catch (AlpacaAPIRequestException e) {
+            throw new BrokerException("Order refused: " + intent, e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#cancelOrder(java.lang.String)
+     */
+    @Override
+    public boolean cancelOrder(String orderId) throws BrokerException {
+        try {
+            return alpacaApi.cancelOrder(orderId);
+        } catch (AlpacaAPIRequestException e) {
+            throw new BrokerException("Unable to cancel " + orderId, e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#addOrderUpdateListener(io.github.
+     * mainstringargs.alpaca.hftish.OrderUpdateListener)
+     */
+    @Override
+    public void addOrderUpdateListener(OrderUpdateListener listener) {
+        AlgoAlpacaStreamListener streamListener = new AlgoAlpacaStreamListener(symbols, listener);
+        streamListeners.put(listener, streamListener);
+        alpacaApi.addAlpacaStreamListener(streamListener);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#removeOrderUpdateListener(io.github.
+     * mainstringargs.alpaca.hftish.OrderUpdateListener)
+     */
+    @Override
+    public void removeOrderUpdateListener(OrderUpdateListener listener) {
+        AlgoAlpacaStreamListener streamListener = streamListeners.remove(listener);
+
+        if (streamListener != null) {
+            alpacaApi.removeAlpacaStreamListener(streamListener);
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The order entry and account side of a brokerage. Request methods block until the broker answers;
+ * order updates are pushed to the registered {@link OrderUpdateListener}s.
+ */
+public interface Broker {
+
+    /**
+     * Gets the market hours.
+     *
+     * @return the market hours
+     * @throws BrokerException the broker exception
+     */
+    MarketHours getMarketHours() throws BrokerException;
+
+    /**
+     * Gets the account's buying power.
+     *
+     * @return the buying power in cents
+     * @throws BrokerException the broker exception
+     */
+    long getBuyingPowerCents() throws BrokerException;
+
+    /**
+     * Gets the open positions.
+     *
+     * @return the share quantity by symbol
+     * @throws BrokerException the broker exception
+     */
+    Map<String, Long> getPositions() throws BrokerException;
+
+    /**
+     * Gets the ids of open orders for the symbols.
+     *
+     * @param symbols the symbols
+     * @return the open order ids
+     * @throws BrokerException the broker exception
+     */
+    List<String> getOpenOrderIds(Collection<String> symbols) throws BrokerException;
+
+    /**
+     * Checks if orders are submitted immediate-or-cancel. If not, the caller must cancel each
+     * order's unfilled remainder itself.
+     *
+     * @return true, if orders are immediate-or-cancel
+     */
+    boolean isImmediateOrCancel();
+
+    /**
+     * Submits a limit order, immediate-or-cancel if {@link #isImmediateOrCancel()}.
+     *
+     * @param intent the intent
+     * @return the order id
+     * @throws BrokerException if the order was refused
+     */
+    String submitOrder(OrderIntent intent) throws BrokerException;
+
+    /**
+     * Requests cancellation of an order.
+     *
+     * @param orderId the order id
+     * @return true, if the request was accepted
+     * @throws BrokerException the broker exception
+     */
+    boolean cancelOrder(String orderId) throws BrokerException;
+
+    /**
+     * Adds the order update listener.
+     *
+     * @param listener the listener
+     */
+    void addOrderUpdateListener(OrderUpdateListener listener);
+
+    /**
+     * Removes the order update listener.
+     *
+     * @param listener the listener
+     */
+    void removeOrderUpdateListener(OrderUpdateListener listener);
+
+}
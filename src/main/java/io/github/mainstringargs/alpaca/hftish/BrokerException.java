@@ -0,0 +1,30 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * Thrown when a {@link Broker} request fails or is refused.
+ */
+public class BrokerException extends Exception {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a new broker exception.
+     *
+     * @param message the message
+     */
+    public BrokerException(String message) {
+        super(message);
+    }
+
+    /**
+     * Instantiates a new broker exception.
+     *
+     * @param message the message
+     * @param cause the cause
+     */
+    public BrokerException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -1,5 +1,7 @@
 package io.github.mainstringargs.alpaca.hftish;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import picocli.CommandLine;
@@ -26,8 +28,85 @@ public class Driver {
         AlgoConfig algoConfig = (AlgoConfig) parsed.commandSpec().userObject();
         LOGGER.info("Arguments: " + algoConfig);
 
-        Algorithm algorithm = new Algorithm(algoConfig);
+        if (!algoConfig.getReplayFiles().isEmpty()) {
+            if (algoConfig.isSweep()) {
+                sweep(algoConfig);
+            } else {
+                replay(algoConfig);
+            }
+            return;
+        }
 
+        if (algoConfig.getSimulateSeconds() > 0) {
+            simulate(algoConfig);
+            return;
+        }
+
+        AlpacaBroker broker = new AlpacaBroker(algoConfig);
+        AlgoEngine engine = new AlgoEngine(algoConfig, new RateLimitedBroker(broker, algoConfig),
+                        new PolygonMarketDataFeed(broker.getKeyId()));
+        engine.start();
+
+    }
+
+    /**
+     * Runs the engine against an in-process simulated exchange for the configured number of
+     * seconds, then reports throughput and latency.
+     *
+     * @param algoConfig the algo config
+     */
+    private static void simulate(AlgoConfig algoConfig) {
+        SimulatedExchange exchange = new SimulatedExchange(algoConfig);
+        AlgoEngine engine = new AlgoEngine(algoConfig, exchange, exchange);
+        engine.start();
+        exchange.start();
+
+        try {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(algoConfig.getSimulateSeconds()));
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        exchange.stop();
+        exchange.logStatistics();
+        engine.logStatistics();
+        System.exit(0);
+    }
+
+    /**
+     * Replays the configured tick files for the first symbol.
+     *
+     * @param algoConfig the algo config
+     */
+    private static void replay(AlgoConfig algoConfig) {
+        ReplayEngine replayEngine = new ReplayEngine(algoConfig.getSymbols().get(0), algoConfig,
+                        algoConfig.getReplayCash());
+
+        try {
+            replayEngine.replay(algoConfig.getReplayFiles());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        replayEngine.logResults();
+    }
+
+    /**
+     * Backtests every combination of the swept strategy parameters over the configured tick files
+     * for the first symbol, and ranks them.
+     *
+     * @param algoConfig the algo config
+     */
+    private static void sweep(AlgoConfig algoConfig) {
+        String symbol = algoConfig.getSymbols().get(0);
+
+        try {
+            SweepRunner sweepRunner = new SweepRunner(symbol, algoConfig,
+                            TickStore.open(algoConfig.getReplayFiles(), symbol));
+            sweepRunner.logResults(sweepRunner.run(algoConfig.getSweepThreads()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
 }
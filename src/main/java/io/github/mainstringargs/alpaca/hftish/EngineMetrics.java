@@ -0,0 +1,392 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The EngineMetrics count the engine's events and expose them, with gauges read from its live
+ * state, through JMX and a local HTTP endpoint in the Prometheus text format.
+ * <p>
+ * Each {@link Metric} is a {@link LongAdder}, which stripes its count across cells so the feed
+ * threads and symbol workers counting at once neither lock nor contend on one cache line; an
+ * increment costs a few nanoseconds. The gauges cost nothing until they are read: each is a
+ * {@link Gauge} over state the engine keeps anyway, called only when JMX or the endpoint asks.
+ * <p>
+ * Counts and gauges are read one at a time without stopping the engine, so a scrape is a close
+ * approximation of a single moment, not an exact one.
+ */
+public class EngineMetrics implements DynamicMBean {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(EngineMetrics.class);
+
+    /** The name the metrics are registered under with JMX. */
+    public static final String OBJECT_NAME = "io.github.mainstringargs.alpaca.hftish:type=Engine";
+
+    /** The path the HTTP endpoint serves the metrics on. */
+    public static final String PATH = "/metrics";
+
+    /** The prefix of the metric names on the HTTP endpoint. */
+    private static final String PREFIX = "hftish_";
+
+    /** The Constant METRICS. */
+    private static final Metric[] METRICS = Metric.values();
+
+    /** The counters, by metric ordinal. */
+    private final LongAdder[] counters = new LongAdder[METRICS.length];
+
+    /** The gauges. */
+    private final List<NamedGauge> gauges = new CopyOnWriteArrayList<NamedGauge>();
+
+    /** The HTTP server, or null. */
+    private HttpServer server;
+
+    /** The name registered with JMX, or null. */
+    private ObjectName objectName;
+
+    /**
+     * A value read from the engine's state when the metrics are.
+     */
+    public interface Gauge {
+
+        /**
+         * Gets the value.
+         *
+         * @return the value
+         */
+        long get();
+    }
+
+    /**
+     * A gauge with the name and symbol it is exposed under.
+     */
+    private static class NamedGauge {
+
+        /** The name. */
+        final String name;
+
+        /** The symbol, or null. */
+        final String symbol;
+
+        /** The gauge. */
+        final Gauge gauge;
+
+        /**
+         * Instantiates a new named gauge.
+         *
+         * @param name the name
+         * @param symbol the symbol, or null
+         * @param gauge the gauge
+         */
+        NamedGauge(String name, String symbol, Gauge gauge) {
+            this.name = name;
+            this.symbol = symbol;
+            this.gauge = gauge;
+        }
+
+        /**
+         * Gets the JMX attribute name, the name and symbol joined by a dot.
+         *
+         * @return the attribute name
+         */
+        String getAttributeName() {
+            return symbol == null ? name : name + "." + symbol;
+        }
+    }
+
+    /**
+     * Instantiates new engine metrics with every count at 0.
+     */
+    public EngineMetrics() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Counts an event.
+     *
+     * @param metric the metric
+     */
+    public void increment(Metric metric) {
+        counters[metric.ordinal()].increment();
+    }
+
+    /**
+     * Gets an event count.
+     *
+     * @param metric the metric
+     * @return the count
+     */
+    public long get(Metric metric) {
+        return counters[metric.ordinal()].sum();
+    }
+
+    /**
+     * Adds a gauge.
+     *
+     * @param name the name
+     * @param gauge the gauge
+     */
+    public void addGauge(String name, Gauge gauge) {
+        addGauge(name, null, gauge);
+    }
+
+    /**
+     * Adds a gauge for one symbol.
+     *
+     * @param name the name
+     * @param symbol the symbol, or null
+     * @param gauge the gauge
+     */
+    public void addGauge(String name, String symbol, Gauge gauge) {
+        gauges.add(new NamedGauge(name, symbol, gauge));
+    }
+
+    /**
+     * Reads every count and gauge.
+     *
+     * @return the values, by JMX attribute name
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<String, Long>();
+
+        for (Metric metric : METRICS) {
+            snapshot.put(metric.getName(), get(metric));
+        }
+        for (NamedGauge gauge : gauges) {
+            snapshot.put(gauge.getAttributeName(), gauge.gauge.get());
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Formats every count and gauge in the Prometheus text format.
+     *
+     * @return the text
+     */
+    public String format() {
+        StringBuilder text = new StringBuilder();
+
+        for (Metric metric : METRICS) {
+            String name = PREFIX + metric.getName() + "_total";
+            text.append("# TYPE ").append(name).append(" counter\n");
+            text.append(name).append(' ').append(get(metric)).append('\n');
+        }
+
+        String typed = null;
+
+        for (NamedGauge gauge : gauges) {
+            String name = PREFIX + gauge.name;
+
+            // Gauges for the same name are added together, one per symbol
+            if (!name.equals(typed)) {
+                text.append("# TYPE ").append(name).append(" gauge\n");
+                typed = name;
+            }
+
+            text.append(name);
+            if (gauge.symbol != null) {
+                text.append("{symbol=\"").append(gauge.symbol).append("\"}");
+            }
+            text.append(' ').append(gauge.gauge.get()).append('\n');
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Registers the metrics with JMX and, if a port is given, serves them over HTTP on the
+     * loopback interface.
+     *
+     * @param httpPort the HTTP port, or 0 for JMX only
+     */
+    public synchronized void start(int httpPort) {
+        if (objectName == null) {
+            try {
+                MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+
+                if (!mBeanServer.isRegistered(name)) {
+                    mBeanServer.registerMBean(this, name);
+                    objectName = name;
+                }
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (httpPort > 0 && server == null) {
+            try {
+                server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                httpPort), 0);
+                server.createContext(PATH, new HttpHandler() {
+
+                    @Override
+                    public void handle(HttpExchange exchange) throws IOException {
+                        byte[] body = format().getBytes(StandardCharsets.UTF_8);
+
+                        exchange.getResponseHeaders().set("Content-Type",
+                                        "text/plain; version=0.0.4; charset=utf-8");
+                        exchange.sendResponseHeaders(200, body.length);
+
+                        OutputStream out = exchange.getResponseBody();
+                        try {
+                            out.write(body);
+                        } finally {
+                            out.close();
+                        }
+                    }
+                });
+                server.start();
+
+                LOGGER.info("Serving metrics on http://localhost:" + httpPort + PATH);
+            } catch (IOException e) {
+                e.printStackTrace();
+                server = null;
+            }
+        }
+    }
+
+    /**
+     * Stops the HTTP endpoint and unregisters from JMX.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            objectName = null;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.management.DynamicMBean#getAttribute(java.lang.String)
+     */
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        for (Metric metric : METRICS) {
+            if (metric.getName().equals(attribute)) {
+                return get(metric);
+            }
+        }
+        for (NamedGauge gauge : gauges) {
+            if (gauge.getAttributeName().equals(attribute)) {
+                return gauge.gauge.get();
+            }
+        }
+
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.management.DynamicMBean#getAttributes(java.lang.String[])
+     */
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Left out, as the DynamicMBean contract asks
+            }
+        }
+
+        return list;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.management.DynamicMBean#setAttribute(javax.management.Attribute)
+     */
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read only");
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.management.DynamicMBean#setAttributes(javax.management.AttributeList)
+     */
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.management.DynamicMBean#invoke(java.lang.String, java.lang.Object[],
+     * java.lang.String[])
+     */
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+                    throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.management.DynamicMBean#getMBeanInfo()
+     */
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+
+        for (Metric metric : METRICS) {
+            attributes.add(new MBeanAttributeInfo(metric.getName(), "long",
+                            "Count of " + metric.getName(), true, false, false));
+        }
+        for (NamedGauge gauge : gauges) {
+            attributes.add(new MBeanAttributeInfo(gauge.getAttributeName(), "long", gauge.name,
+                            true, false, false));
+        }
+
+        return new MBeanInfo(getClass().getName(), "Trading engine metrics",
+                        attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null,
+                        null);
+    }
+
+}
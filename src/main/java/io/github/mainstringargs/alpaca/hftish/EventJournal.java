@@ -0,0 +1,346 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The EventJournal records hot path events as fixed-size records in a preallocated ring, so
+ * tracing a quote or trade costs a few array stores instead of building a log message. Any thread
+ * may record; a background thread drains the ring and formats the records to this class's log4j2
+ * logger at debug level, where they can be routed to their own file. Nothing is formatted while
+ * that level is off.
+ * <p>
+ * Recording never blocks: if the drain thread falls a full ring behind, new records are dropped
+ * and counted instead. The journal is a trace, not the tape; the tape is captured losslessly by a
+ * {@link TickRecorder}.
+ */
+public class EventJournal {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(EventJournal.class);
+
+    /** The Constant DEFAULT_CAPACITY. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** The Constant QUOTE. */
+    public static final byte QUOTE = 'Q';
+
+    /** The Constant TRADE. */
+    public static final byte TRADE = 'T';
+
+    /** The Constant LEVEL_CHANGE. */
+    public static final byte LEVEL_CHANGE = 'L';
+
+    /** The Constant ORDER_UPDATE. */
+    public static final byte ORDER_UPDATE = 'O';
+
+    /** The number of longs in a record. */
+    private static final int RECORD_LONGS = 6;
+
+    /** The Constant NANOS. */
+    private static final int NANOS = 0;
+
+    /** The Constant TIME. */
+    private static final int TIME = 1;
+
+    /** The Constant PRICE1. */
+    private static final int PRICE1 = 2;
+
+    /** The Constant PRICE2. */
+    private static final int PRICE2 = 3;
+
+    /** The Constant SIZE1. */
+    private static final int SIZE1 = 4;
+
+    /** The Constant SIZE2. */
+    private static final int SIZE2 = 5;
+
+    /** The mask from a sequence to its slot. */
+    private final int mask;
+
+    /** The record fields, RECORD_LONGS per slot. */
+    private final long[] records;
+
+    /** The record types. */
+    private final byte[] types;
+
+    /** The record symbols. */
+    private final String[] symbols;
+
+    /** The record order ids, for order updates. */
+    private final String[] orderIds;
+
+    /** The sequence each slot was last published with. */
+    private final AtomicLongArray published;
+
+    /** The next sequence to claim. */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /** The next sequence to drain. */
+    private final AtomicLong drained = new AtomicLong();
+
+    /** The dropped record count. */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** The drain thread. */
+    private Thread drainThread;
+
+    /** The running flag. */
+    private volatile boolean running;
+
+    /**
+     * Instantiates a new event journal.
+     *
+     * @param capacity the number of records the ring holds, rounded up to a power of two
+     */
+    public EventJournal(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        mask = size - 1;
+        records = new long[size * RECORD_LONGS];
+        types = new byte[size];
+        symbols = new String[size];
+        orderIds = new String[size];
+        published = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Records a quote.
+     *
+     * @param symbol the symbol
+     * @param time the quote time
+     * @param bidPrice the bid price, in ticks
+     * @param askPrice the ask price, in ticks
+     * @param bidSize the bid size
+     * @param askSize the ask size
+     * @param nanos the System.nanoTime() of the event
+     */
+    public void recordQuote(String symbol, long time, long bidPrice, long askPrice, long bidSize,
+                    long askSize, long nanos) {
+        record(QUOTE, symbol, null, time, bidPrice, askPrice, bidSize, askSize, nanos);
+    }
+
+    /**
+     * Records a trade.
+     *
+     * @param symbol the symbol
+     * @param time the trade time
+     * @param price the price, in ticks
+     * @param size the size
+     * @param nanos the System.nanoTime() of the event
+     */
+    public void recordTrade(String symbol, long time, long price, long size, long nanos) {
+        record(TRADE, symbol, null, time, price, 0, size, 0, nanos);
+    }
+
+    /**
+     * Records a level change.
+     *
+     * @param symbol the symbol
+     * @param time the quote time
+     * @param bidPrice the new bid price, in ticks
+     * @param askPrice the new ask price, in ticks
+     * @param levelCt the new level ct
+     */
+    public void recordLevelChange(String symbol, long time, long bidPrice, long askPrice,
+                    long levelCt) {
+        record(LEVEL_CHANGE, symbol, null, time, bidPrice, askPrice, levelCt, 0,
+                        System.nanoTime());
+    }
+
+    /**
+     * Records an order update.
+     *
+     * @param symbol the symbol
+     * @param type the type
+     * @param orderId the order id
+     * @param qty the order quantity
+     * @param filledQty the cumulative filled quantity
+     * @param limitPrice the limit price, in ticks
+     * @param filledAvgPrice the average fill price, in ticks
+     */
+    public void recordOrderUpdate(String symbol, OrderUpdateType type, String orderId, long qty,
+                    long filledQty, long limitPrice, long filledAvgPrice) {
+        record(ORDER_UPDATE, symbol, orderId, type.ordinal(), limitPrice, filledAvgPrice, qty,
+                        filledQty, System.nanoTime());
+    }
+
+    /**
+     * Claims a slot, fills it and publishes it.
+     *
+     * @param type the type
+     * @param symbol the symbol
+     * @param orderId the order id
+     * @param time the time
+     * @param price1 the first price
+     * @param price2 the second price
+     * @param size1 the first size
+     * @param size2 the second size
+     * @param nanos the nanos
+     */
+    private void record(byte type, String symbol, String orderId, long time, long price1,
+                    long price2, long size1, long size2, long nanos) {
+        long sequence;
+
+        do {
+            sequence = claimed.get();
+
+            if (sequence - drained.get() > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        int base = slot * RECORD_LONGS;
+
+        records[base + NANOS] = nanos;
+        records[base + TIME] = time;
+        records[base + PRICE1] = price1;
+        records[base + PRICE2] = price2;
+        records[base + SIZE1] = size1;
+        records[base + SIZE2] = size2;
+        types[slot] = type;
+        symbols[slot] = symbol;
+        orderIds[slot] = orderId;
+
+        published.lazySet(slot, sequence);
+    }
+
+    /**
+     * Starts the drain thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        drainThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (running) {
+                    if (drain() == 0) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                }
+                drain();
+            }
+        }, "event-journal");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Stops the drain thread after it has drained what was recorded.
+     */
+    public void stop() {
+        running = false;
+
+        try {
+            if (drainThread != null) {
+                drainThread.join();
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Drains every published record in order.
+     *
+     * @return the number of records drained
+     */
+    int drain() {
+        boolean enabled = LOGGER.isDebugEnabled();
+        StringBuilder line = new StringBuilder(128);
+        long sequence = drained.get();
+        int count = 0;
+
+        while (true) {
+            int slot = (int) sequence & mask;
+
+            if (published.get(slot) != sequence) {
+                break;
+            }
+
+            if (enabled) {
+                line.setLength(0);
+                format(slot, line);
+                LOGGER.debug(line.toString());
+            }
+
+            symbols[slot] = null;
+            orderIds[slot] = null;
+            sequence++;
+            count++;
+            drained.lazySet(sequence);
+        }
+
+        return count;
+    }
+
+    /**
+     * Formats a record.
+     *
+     * @param slot the slot
+     * @param line the line
+     */
+    private void format(int slot, StringBuilder line) {
+        int base = slot * RECORD_LONGS;
+
+        line.append(records[base + NANOS]).append(' ').append((char) types[slot]).append(' ')
+                        .append(symbols[slot]);
+
+        switch (types[slot]) {
+            case QUOTE:
+                line.append(" time=").append(records[base + TIME]).append(" bid=")
+                                .append(Ticks.toPrice(records[base + PRICE1])).append(" ask=")
+                                .append(Ticks.toPrice(records[base + PRICE2]))
+                                .append(" bidSize=").append(records[base + SIZE1])
+                                .append(" askSize=").append(records[base + SIZE2]);
+                break;
+            case TRADE:
+                line.append(" time=").append(records[base + TIME]).append(" price=")
+                                .append(Ticks.toPrice(records[base + PRICE1])).append(" size=")
+                                .append(records[base + SIZE1]);
+                break;
+            case LEVEL_CHANGE:
+                line.append(" time=").append(records[base + TIME]).append(" bid=")
+                                .append(Ticks.toPrice(records[base + PRICE1])).append(" ask=")
+                                .append(Ticks.toPrice(records[base + PRICE2]))
+                                .append(" levelCt=").append(records[base + SIZE1]);
+                break;
+            case ORDER_UPDATE:
+                line.append(' ').append(OrderUpdateType.values()[(int) records[base + TIME]])
+                                .append(' ').append(orderIds[slot]).append(" limit=")
+                                .append(Ticks.toPrice(records[base + PRICE1]))
+                                .append(" avgPrice=")
+                                .append(Ticks.toPrice(records[base + PRICE2])).append(" qty=")
+                                .append(records[base + SIZE1]).append(" filledQty=")
+                                .append(records[base + SIZE2]);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Gets the number of records dropped because the ring was full.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+}
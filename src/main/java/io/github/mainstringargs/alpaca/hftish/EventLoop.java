@@ -0,0 +1,468 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+
+/**
+ * The EventLoop is a preallocated ring of engine events with one dedicated consumer thread. Market
+ * data, order update and order gateway threads all publish into it, and the consumer hands each
+ * event to its {@link Algorithm} in the order it was published, so everything an algorithm owns is
+ * only ever touched by that one thread and needs no lock.
+ * <p>
+ * Publishing claims a slot with a compare-and-set and fills it in place, so it never allocates. If
+ * the consumer falls a full ring behind, publishers wait for room rather than drop an event. The
+ * consumer waits for events according to its {@link WaitStrategy}.
+ */
+public class EventLoop {
+
+    /** The Constant DEFAULT_CAPACITY. */
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /** The Constant QUOTE. */
+    private static final byte QUOTE = 1;
+
+    /** The Constant TRADE. */
+    private static final byte TRADE = 2;
+
+    /** The Constant ORDER_UPDATE. */
+    private static final byte ORDER_UPDATE = 3;
+
+    /** The Constant ORDER_ACCEPTED. */
+    private static final byte ORDER_ACCEPTED = 4;
+
+    /** The Constant ORDER_FAILED. */
+    private static final byte ORDER_FAILED = 5;
+
+    /** The number of longs in an event. */
+    private static final int EVENT_LONGS = 6;
+
+    /** The mask from a sequence to its slot. */
+    private final int mask;
+
+    /** The event fields, EVENT_LONGS per slot. */
+    private final long[] values;
+
+    /** The event types. */
+    private final byte[] types;
+
+    /** The algorithms the events are for. */
+    private final Algorithm[] algorithms;
+
+    /** The order ids of order updates and acks, or the reasons of failures. */
+    private final String[] strings;
+
+    /** The order update types. */
+    private final OrderUpdateType[] updateTypes;
+
+    /** The order sides. */
+    private final OrderSide[] sides;
+
+    /** The order intents of acks and failures. */
+    private final OrderIntent[] intents;
+
+    /** The sequence each slot was last published with. */
+    private final AtomicLongArray published;
+
+    /** The next sequence to claim. */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /** The next sequence to consume. */
+    private final AtomicLong consumed = new AtomicLong();
+
+    /** The number of publishes that had to wait for room. */
+    private final AtomicLong stalls = new AtomicLong();
+
+    /** The wait strategy. */
+    private final WaitStrategy waitStrategy;
+
+    /** The latency stats, or null. */
+    private final LatencyStats latencyStats;
+
+    /** The consumer thread. */
+    private final Thread thread;
+
+    /** Whether the consumer is parked, or about to park, and must be woken. */
+    private volatile boolean sleeping;
+
+    /** The running flag. */
+    private volatile boolean running = true;
+
+    /**
+     * Instantiates a new event loop and starts its consumer thread.
+     *
+     * @param name the consumer thread name
+     * @param capacity the number of events the ring holds, rounded up to a power of two
+     * @param waitStrategy the wait strategy
+     * @param latencyStats the latency stats trade dispatch is recorded to, or null
+     */
+    public EventLoop(String name, int capacity, WaitStrategy waitStrategy,
+                    LatencyStats latencyStats) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        this.waitStrategy = waitStrategy;
+        this.latencyStats = latencyStats;
+
+        mask = size - 1;
+        values = new long[size * EVENT_LONGS];
+        types = new byte[size];
+        algorithms = new Algorithm[size];
+        strings = new String[size];
+        updateTypes = new OrderUpdateType[size];
+        sides = new OrderSide[size];
+        intents = new OrderIntent[size];
+        published = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+
+        thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                consume();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Publishes a quote.
+     *
+     * @param algorithm the algorithm
+     * @param time the quote time
+     * @param bidPrice the bid price, in ticks
+     * @param askPrice the ask price, in ticks
+     * @param bidSize the bid size
+     * @param askSize the ask size
+     */
+    public void publishQuote(Algorithm algorithm, long time, long bidPrice, long askPrice,
+                    long bidSize, long askSize) {
+        long sequence = claim();
+
+        if (sequence < 0) {
+            algorithm.onQuote(time, bidPrice, askPrice, bidSize, askSize);
+            return;
+        }
+
+        int slot = (int) sequence & mask;
+        int base = slot * EVENT_LONGS;
+
+        types[slot] = QUOTE;
+        algorithms[slot] = algorithm;
+        values[base] = time;
+        values[base + 1] = bidPrice;
+        values[base + 2] = askPrice;
+        values[base + 3] = bidSize;
+        values[base + 4] = askSize;
+
+        publish(slot, sequence);
+    }
+
+    /**
+     * Publishes a trade.
+     *
+     * @param algorithm the algorithm
+     * @param time the trade time
+     * @param price the price, in ticks
+     * @param size the size
+     * @param signalNanos the System.nanoTime() at which the trade arrived
+     */
+    public void publishTrade(Algorithm algorithm, long time, long price, long size,
+                    long signalNanos) {
+        long sequence = claim();
+
+        if (sequence < 0) {
+            algorithm.onTrade(time, price, size, signalNanos);
+            return;
+        }
+
+        int slot = (int) sequence & mask;
+        int base = slot * EVENT_LONGS;
+
+        types[slot] = TRADE;
+        algorithms[slot] = algorithm;
+        values[base] = time;
+        values[base + 1] = price;
+        values[base + 2] = size;
+        values[base + 5] = signalNanos;
+
+        publish(slot, sequence);
+    }
+
+    /**
+     * Publishes an order update.
+     *
+     * @param algorithm the algorithm
+     * @param type the type
+     * @param orderId the order id
+     * @param side the side
+     * @param qty the order quantity
+     * @param filledQty the cumulative filled quantity
+     * @param limitPrice the limit price, in ticks
+     * @param filledAvgPrice the average fill price, in ticks
+     */
+    public void publishOrderUpdate(Algorithm algorithm, OrderUpdateType type, String orderId,
+                    OrderSide side, long qty, long filledQty, long limitPrice,
+                    long filledAvgPrice) {
+        long sequence = claim();
+
+        if (sequence < 0) {
+            algorithm.onOrderUpdate(type, orderId, side, qty, filledQty, limitPrice,
+                            filledAvgPrice);
+            return;
+        }
+
+        int slot = (int) sequence & mask;
+        int base = slot * EVENT_LONGS;
+
+        types[slot] = ORDER_UPDATE;
+        algorithms[slot] = algorithm;
+        updateTypes[slot] = type;
+        strings[slot] = orderId;
+        sides[slot] = side;
+        values[base] = qty;
+        values[base + 1] = filledQty;
+        values[base + 2] = limitPrice;
+        values[base + 3] = filledAvgPrice;
+
+        publish(slot, sequence);
+    }
+
+    /**
+     * Publishes an order gateway ack.
+     *
+     * @param algorithm the algorithm
+     * @param intent the intent
+     * @param orderId the order id
+     */
+    public void publishOrderAccepted(Algorithm algorithm, OrderIntent intent, String orderId) {
+        long sequence = claim();
+
+        if (sequence < 0) {
+            algorithm.onOrderAccepted(intent, orderId);
+            return;
+        }
+
+        int slot = (int) sequence & mask;
+
+        types[slot] = ORDER_ACCEPTED;
+        algorithms[slot] = algorithm;
+        intents[slot] = intent;
+        strings[slot] = orderId;
+
+        publish(slot, sequence);
+    }
+
+    /**
+     * Publishes an order gateway failure.
+     *
+     * @param algorithm the algorithm
+     * @param intent the intent
+     * @param reason the reason
+     */
+    public void publishOrderFailed(Algorithm algorithm, OrderIntent intent, String reason) {
+        long sequence = claim();
+
+        if (sequence < 0) {
+            algorithm.onOrderFailed(intent, reason);
+            return;
+        }
+
+        int slot = (int) sequence & mask;
+
+        types[slot] = ORDER_FAILED;
+        algorithms[slot] = algorithm;
+        intents[slot] = intent;
+        strings[slot] = reason;
+
+        publish(slot, sequence);
+    }
+
+    /**
+     * Claims the next sequence, waiting for the consumer to make room if the ring is full. The
+     * consumer can't wait on itself, so if it is the one publishing into a full ring this returns
+     * -1 and the event is handled in place instead.
+     *
+     * @return the sequence, or -1
+     */
+    private long claim() {
+        boolean stalled = false;
+
+        while (true) {
+            long sequence = claimed.get();
+
+            if (sequence - consumed.get() > mask) {
+                if (Thread.currentThread() == thread) {
+                    return -1;
+                }
+                if (!stalled) {
+                    stalls.incrementAndGet();
+                    stalled = true;
+                }
+                Thread.yield();
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * Publishes a filled slot, waking the consumer if it is parked.
+     *
+     * @param slot the slot
+     * @param sequence the sequence
+     */
+    private void publish(int slot, long sequence) {
+        if (waitStrategy == WaitStrategy.PARK) {
+            // A full fence, so either the consumer sees this event or we see it going to sleep
+            published.set(slot, sequence);
+
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        } else {
+            published.lazySet(slot, sequence);
+        }
+    }
+
+    /**
+     * Runs the consumer until stopped, then handles whatever is left.
+     */
+    private void consume() {
+        int idleCount = 0;
+
+        while (running) {
+            if (process() > 0) {
+                idleCount = 0;
+                continue;
+            }
+
+            if (waitStrategy.willPark(idleCount)) {
+                sleeping = true;
+
+                // Check once more, so an event published before the flag was seen isn't left
+                // waiting out the park
+                if (process() > 0) {
+                    sleeping = false;
+                    idleCount = 0;
+                    continue;
+                }
+            }
+
+            idleCount = waitStrategy.idle(idleCount);
+            sleeping = false;
+        }
+
+        process();
+    }
+
+    /**
+     * Handles every published event in order.
+     *
+     * @return the number of events handled
+     */
+    private int process() {
+        long sequence = consumed.get();
+        int count = 0;
+
+        while (true) {
+            int slot = (int) sequence & mask;
+
+            if (published.get(slot) != sequence) {
+                break;
+            }
+
+            try {
+                dispatch(slot);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+
+            algorithms[slot] = null;
+            strings[slot] = null;
+            intents[slot] = null;
+            sequence++;
+            count++;
+            consumed.lazySet(sequence);
+        }
+
+        return count;
+    }
+
+    /**
+     * Hands an event to its algorithm.
+     *
+     * @param slot the slot
+     */
+    private void dispatch(int slot) {
+        Algorithm algorithm = algorithms[slot];
+        int base = slot * EVENT_LONGS;
+
+        switch (types[slot]) {
+            case QUOTE:
+                algorithm.onQuote(values[base], values[base + 1], values[base + 2],
+                                values[base + 3], values[base + 4]);
+                break;
+            case TRADE:
+                if (latencyStats != null) {
+                    latencyStats.record(LatencyStage.DISPATCH, values[base + 5]);
+                }
+                algorithm.onTrade(values[base], values[base + 1], values[base + 2],
+                                values[base + 5]);
+                break;
+            case ORDER_UPDATE:
+                algorithm.onOrderUpdate(updateTypes[slot], strings[slot], sides[slot],
+                                values[base], values[base + 1], values[base + 2],
+                                values[base + 3]);
+                break;
+            case ORDER_ACCEPTED:
+                algorithm.onOrderAccepted(intents[slot], strings[slot]);
+                break;
+            case ORDER_FAILED:
+                algorithm.onOrderFailed(intents[slot], strings[slot]);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Gets the number of publishes that had to wait for the consumer to make room.
+     *
+     * @return the stall count
+     */
+    public long getStallCount() {
+        return stalls.get();
+    }
+
+    /**
+     * Gets the number of events published but not yet handled.
+     *
+     * @return the queue depth
+     */
+    public long getQueueDepth() {
+        return Math.max(0, claimed.get() - consumed.get());
+    }
+
+    /**
+     * Checks whether every event published so far has been handled.
+     *
+     * @return true, if drained
+     */
+    public boolean isDrained() {
+        return consumed.get() == claimed.get();
+    }
+
+    /**
+     * Stops the consumer after it has handled what was published.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+}
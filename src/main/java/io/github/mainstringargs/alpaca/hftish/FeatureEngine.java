@@ -0,0 +1,107 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The FeatureEngine keeps one symbol's trade flow imbalance up to date as quotes and trades
+ * arrive, beside the {@link Quote} the strategy trades on: buy volume less sell volume over all
+ * volume in a rolling window, with trades signed by the quote rule against the last top of book.
+ * <p>
+ * Every trade updates the windows in constant time, amortized over the evictions of the
+ * {@link RollingWindow}s, and nothing is allocated after construction. Reading the imbalance takes
+ * the current time so trades that have aged out are evicted first.
+ * <p>
+ * Unlike the {@link Quote}, the engine tracks every top of book update, not only penny level
+ * changes. Like the {@link Algorithm} that owns it, it is only called from the symbol's worker.
+ */
+public class FeatureEngine {
+
+    /** The most values each window holds. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /** The signed trade sizes in the window. */
+    private final RollingWindow tradeFlow;
+
+    /** The trade sizes in the window. */
+    private final RollingWindow tradeVolume;
+
+    /** The bid, in ticks. */
+    private long bid;
+
+    /** The ask, in ticks. */
+    private long ask;
+
+    /**
+     * Instantiates a new feature engine with the configured window.
+     *
+     * @param algoConfig the algo config
+     */
+    public FeatureEngine(AlgoConfig algoConfig) {
+        this(algoConfig.getFeatureWindowMillis(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Instantiates a new feature engine.
+     *
+     * @param windowMillis the rolling window, in milliseconds
+     * @param capacity the most values each window holds
+     */
+    public FeatureEngine(long windowMillis, int capacity) {
+        tradeFlow = new RollingWindow(windowMillis, capacity);
+        tradeVolume = new RollingWindow(windowMillis, capacity);
+    }
+
+    /**
+     * Applies a quote.
+     *
+     * @param bidPrice the bid price, in ticks
+     * @param askPrice the ask price, in ticks
+     */
+    public void onQuote(long bidPrice, long askPrice) {
+        bid = bidPrice;
+        ask = askPrice;
+    }
+
+    /**
+     * Applies a trade.
+     *
+     * @param time the time
+     * @param price the price, in ticks
+     * @param size the size
+     */
+    public void onTrade(long time, long price, long size) {
+        long millis = Quote.toMillis(time);
+        long sign = 0;
+
+        if (bid > 0 && ask > 0) {
+            sign = price >= ask ? 1 : price <= bid ? -1 : Long.signum(2 * price - bid - ask);
+        }
+
+        tradeFlow.add(millis, sign * size);
+        tradeVolume.add(millis, size);
+    }
+
+    /**
+     * Gets the trade flow imbalance over the window, from -1 (all sells) to 1 (all buys).
+     *
+     * @param time the current time
+     * @return the trade flow imbalance, or 0 if nothing traded
+     */
+    public double getTradeFlowImbalance(long time) {
+        long millis = Quote.toMillis(time);
+        tradeFlow.evict(millis);
+        tradeVolume.evict(millis);
+
+        long volume = tradeVolume.getSum();
+        return volume == 0 ? 0 : tradeFlow.getSum() / (double) volume;
+    }
+
+    /**
+     * Clears the windows and the book, for the next session.
+     */
+    public void reset() {
+        tradeFlow.clear();
+        tradeVolume.clear();
+        bid = 0;
+        ask = 0;
+    }
+
+}
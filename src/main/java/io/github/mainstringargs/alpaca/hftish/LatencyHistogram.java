@@ -0,0 +1,143 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A LatencyHistogram counts nanosecond latencies in log-linear buckets, in the style of
+ * HdrHistogram: values below 64 are counted exactly, and above that every power of two is split
+ * into 32 buckets, so a reported percentile is within about 3% of the true value. Recording is a
+ * few bit operations and an atomic increment, never allocates, and is safe from any thread.
+ */
+public class LatencyHistogram {
+
+    /** The number of exactly counted values. */
+    private static final int LINEAR_BUCKETS = 64;
+
+    /** The number of buckets per power of two above that. */
+    private static final int SUB_BUCKETS = 32;
+
+    /** The Constant SUB_BUCKET_BITS. */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /** The Constant BUCKETS. */
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** The counts. */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** The total count. */
+    private final AtomicLong totalCount = new AtomicLong();
+
+    /** The max. */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param nanos the value, in nanoseconds; negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+
+        counts.incrementAndGet(bucketOf(value));
+        totalCount.incrementAndGet();
+
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Gets the bucket a value is counted in.
+     *
+     * @param value the value
+     * @return the bucket
+     */
+    static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS
+                        + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Gets the highest value counted in a bucket.
+     *
+     * @param bucket the bucket
+     * @return the value
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return (subBucket << shift) + (1L << shift) - 1;
+    }
+
+    /**
+     * Gets the value at a percentile. Concurrent recording may make the result slightly stale but
+     * never inconsistent.
+     *
+     * @param percentile the percentile, 0 to 100
+     * @return the value, in nanoseconds
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+
+            if (seen >= target) {
+                return Math.min(highestValueIn(bucket), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Gets the count.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Gets the max.
+     *
+     * @return the max, in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Clears every count.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        totalCount.set(0);
+        max.set(0);
+    }
+
+}
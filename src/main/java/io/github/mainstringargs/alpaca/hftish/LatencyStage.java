@@ -0,0 +1,51 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The stages of the tick-to-trade path. Each is measured from the moment the triggering trade was
+ * received off the wire.
+ */
+public enum LatencyStage {
+
+    /** The trade was decoded and handed to the engine. */
+    DECODE("decode"),
+
+    /** The trade reached its symbol's worker thread. */
+    DISPATCH("dispatch"),
+
+    /** The algorithm decided to trade and handed off an order. */
+    DECISION("decision"),
+
+    /** The order gateway began sending the order. */
+    SUBMIT("submit"),
+
+    /** The broker acknowledged the order. */
+    ACK("ack"),
+
+    /** The broker acknowledged the cancel of the order's remainder. */
+    CANCEL_ACK("cancel ack"),
+
+    /** The first fill of the order arrived. */
+    FILL("fill");
+
+    /** The label. */
+    private final String label;
+
+    /**
+     * Instantiates a new latency stage.
+     *
+     * @param label the label
+     */
+    LatencyStage(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets the label.
+     *
+     * @return the label
+     */
+    public String getLabel() {
+        return label;
+    }
+
+}
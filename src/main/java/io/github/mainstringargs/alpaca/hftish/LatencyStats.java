@@ -0,0 +1,244 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * LatencyStats keeps one {@link LatencyHistogram} per {@link LatencyStage} of the tick-to-trade
+ * path, each measured from the System.nanoTime() the triggering trade was received at, and reports
+ * their percentiles.
+ * <p>
+ * Fills arrive on the broker's update stream, which may beat the order's ack back, so the signal
+ * time of each acknowledged order and the arrival time of its first fill are kept until they can
+ * be paired up, and the order is forgotten once it has been both acknowledged and finished.
+ */
+public class LatencyStats {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(LatencyStats.class);
+
+    /** The Constant DEFAULT_REPORT_SECONDS. */
+    public static final long DEFAULT_REPORT_SECONDS = 60;
+
+    /** The histograms. */
+    private final Map<LatencyStage, LatencyHistogram> histograms =
+                    new EnumMap<LatencyStage, LatencyHistogram>(LatencyStage.class);
+
+    /** The orders not yet both acknowledged and finished, by order id. */
+    private final Map<String, PendingOrder> pendingOrders = new HashMap<String, PendingOrder>();
+
+    /** The periodic report. */
+    private ScheduledFuture<?> report;
+
+    /**
+     * What is known so far of an order's ack and fills.
+     */
+    private static class PendingOrder {
+
+        /** The accepted flag. */
+        boolean accepted;
+
+        /** The signal nanos, once accepted. */
+        long signalNanos;
+
+        /** The filled flag. */
+        boolean filled;
+
+        /** The arrival nanos of the first fill, once filled. */
+        long fillNanos;
+
+        /** The finished flag. */
+        boolean finished;
+    }
+
+    /**
+     * Instantiates a new latency stats.
+     */
+    public LatencyStats() {
+        for (LatencyStage stage : LatencyStage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Records how long after the signal a stage was reached.
+     *
+     * @param stage the stage
+     * @param signalNanos the System.nanoTime() the triggering trade was received at
+     */
+    public void record(LatencyStage stage, long signalNanos) {
+        histograms.get(stage).record(System.nanoTime() - signalNanos);
+    }
+
+    /**
+     * Remembers an acknowledged order's signal time so its first fill can be measured.
+     *
+     * @param orderId the order id
+     * @param signalNanos the signal nanos
+     */
+    public synchronized void onOrderAccepted(String orderId, long signalNanos) {
+        PendingOrder order = pendingOrderFor(orderId);
+        order.accepted = true;
+        order.signalNanos = signalNanos;
+
+        if (order.filled) {
+            histograms.get(LatencyStage.FILL).record(order.fillNanos - signalNanos);
+        }
+
+        if (order.finished) {
+            pendingOrders.remove(orderId);
+        }
+    }
+
+    /**
+     * Measures the first fill of an order, and forgets the order once it is done.
+     *
+     * @param orderId the order id
+     * @param type the type
+     */
+    public synchronized void onOrderUpdate(String orderId, OrderUpdateType type) {
+        PendingOrder order;
+
+        switch (type) {
+            case PARTIAL_FILL:
+            case FILL:
+                order = pendingOrderFor(orderId);
+
+                if (!order.filled) {
+                    order.filled = true;
+                    order.fillNanos = System.nanoTime();
+
+                    if (order.accepted) {
+                        histograms.get(LatencyStage.FILL)
+                                        .record(order.fillNanos - order.signalNanos);
+                    }
+                }
+
+                if (type == OrderUpdateType.FILL) {
+                    finish(orderId, order);
+                }
+                break;
+            case CANCELLED:
+            case REJECTED:
+                finish(orderId, pendingOrderFor(orderId));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Gets the pending order for an order id, adding it if it isn't there.
+     *
+     * @param orderId the order id
+     * @return the pending order
+     */
+    private PendingOrder pendingOrderFor(String orderId) {
+        PendingOrder order = pendingOrders.get(orderId);
+
+        if (order == null) {
+            order = new PendingOrder();
+            pendingOrders.put(orderId, order);
+        }
+
+        return order;
+    }
+
+    /**
+     * Marks an order finished, forgetting it if it has been acknowledged; otherwise its ack,
+     * which the update beat back, forgets it.
+     *
+     * @param orderId the order id
+     * @param order the order
+     */
+    private void finish(String orderId, PendingOrder order) {
+        order.finished = true;
+
+        if (order.accepted) {
+            pendingOrders.remove(orderId);
+        }
+    }
+
+    /**
+     * Starts logging the percentiles periodically.
+     *
+     * @param scheduledService the scheduled service
+     * @param periodSeconds the period seconds
+     */
+    public synchronized void startReporting(ScheduledExecutorService scheduledService,
+                    long periodSeconds) {
+        stopReporting();
+
+        report = scheduledService.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                logStatistics();
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic report.
+     */
+    public synchronized void stopReporting() {
+        if (report != null) {
+            report.cancel(false);
+            report = null;
+        }
+    }
+
+    /**
+     * Logs p50/p99/p99.9/max for every stage that has been reached.
+     */
+    public void logStatistics() {
+        for (LatencyStage stage : LatencyStage.values()) {
+            LatencyHistogram histogram = histograms.get(stage);
+
+            if (histogram.getCount() > 0) {
+                LOGGER.info("Tick-to-" + stage.getLabel() + ": count=" + histogram.getCount()
+                                + " p50=" + micros(histogram.getValueAtPercentile(50))
+                                + " p99=" + micros(histogram.getValueAtPercentile(99))
+                                + " p99.9=" + micros(histogram.getValueAtPercentile(99.9))
+                                + " max=" + micros(histogram.getMax()));
+            }
+        }
+    }
+
+    /**
+     * Clears every histogram and pending order, for the next session.
+     */
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        pendingOrders.clear();
+    }
+
+    /**
+     * Gets the histogram for a stage.
+     *
+     * @param stage the stage
+     * @return the histogram
+     */
+    public LatencyHistogram getHistogram(LatencyStage stage) {
+        return histograms.get(stage);
+    }
+
+    /**
+     * Formats nanoseconds as microseconds.
+     *
+     * @param nanos the nanos
+     * @return the formatted value
+     */
+    private static String micros(long nanos) {
+        return String.format("%.1fus", nanos / 1000.0);
+    }
+
+}
@@ -0,0 +1,125 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * A LevelView is a reader-owned copy of one penny-spread level's statistics, filled in by
+ * {@link Quote#readLevel(long, LevelView)}. Like a {@link QuoteView}, readers keep one instance
+ * around and reuse it, so looking back over the levels doesn't allocate.
+ */
+public class LevelView {
+
+    /** The level ct. */
+    long level;
+
+    /** The time the level started, in milliseconds. */
+    long startTime;
+
+    /** The time the level ended, in milliseconds, or 0 while it is the current level. */
+    long endTime;
+
+    /** The volume traded at the bid. */
+    long bidVolume;
+
+    /** The volume traded at the ask. */
+    long askVolume;
+
+    /** The prints. */
+    long prints;
+
+    /** The quote updates. */
+    long quoteUpdates;
+
+    /**
+     * Gets the level ct.
+     *
+     * @return the level ct
+     */
+    public long getLevel() {
+        return level;
+    }
+
+    /**
+     * Gets the time the level started.
+     *
+     * @return the start time, in milliseconds
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Gets the time the level ended.
+     *
+     * @return the end time, in milliseconds, or 0 while it is the current level
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Checks if the level is the current one.
+     *
+     * @return true, if current
+     */
+    public boolean isCurrent() {
+        return endTime == 0;
+    }
+
+    /**
+     * Gets how long the quote was at the level.
+     *
+     * @param time the current time, used while the level is still current
+     * @return the time at level, in milliseconds
+     */
+    public long getTimeAtLevel(long time) {
+        return (endTime == 0 ? Quote.toMillis(time) : endTime) - startTime;
+    }
+
+    /**
+     * Gets the volume traded at the bid.
+     *
+     * @return the bid volume
+     */
+    public long getBidVolume() {
+        return bidVolume;
+    }
+
+    /**
+     * Gets the volume traded at the ask.
+     *
+     * @return the ask volume
+     */
+    public long getAskVolume() {
+        return askVolume;
+    }
+
+    /**
+     * Gets the number of trades printed while at the level.
+     *
+     * @return the prints
+     */
+    public long getPrints() {
+        return prints;
+    }
+
+    /**
+     * Gets the number of quote updates seen while at the level, including the level change.
+     *
+     * @return the quote updates
+     */
+    public long getQuoteUpdates() {
+        return quoteUpdates;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "LevelView [level=" + level + ", startTime=" + startTime + ", endTime=" + endTime
+                        + ", bidVolume=" + bidVolume + ", askVolume=" + askVolume + ", prints="
+                        + prints + ", quoteUpdates=" + quoteUpdates + "]";
+    }
+
+}
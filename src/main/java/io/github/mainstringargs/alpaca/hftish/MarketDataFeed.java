@@ -0,0 +1,25 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.Collection;
+
+/**
+ * A source of quotes and trades.
+ */
+public interface MarketDataFeed {
+
+    /**
+     * Subscribes the listener to quotes and trades for the symbols.
+     *
+     * @param symbols the symbols
+     * @param listener the listener
+     */
+    void subscribe(Collection<String> symbols, MarketDataListener listener);
+
+    /**
+     * Unsubscribes the listener.
+     *
+     * @param listener the listener
+     */
+    void unsubscribe(MarketDataListener listener);
+
+}
@@ -0,0 +1,34 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The listener interface for receiving quotes and trades from a {@link MarketDataFeed}. Prices are
+ * in {@link Ticks}.
+ */
+public interface MarketDataListener {
+
+    /**
+     * On quote.
+     *
+     * @param symbol the symbol
+     * @param time the quote time
+     * @param bidPrice the bid price, in ticks
+     * @param askPrice the ask price, in ticks
+     * @param bidSize the bid size
+     * @param askSize the ask size
+     * @param receivedNanos the System.nanoTime() at which the quote was received
+     */
+    void onQuote(String symbol, long time, long bidPrice, long askPrice, long bidSize,
+                    long askSize, long receivedNanos);
+
+    /**
+     * On trade.
+     *
+     * @param symbol the symbol
+     * @param time the trade time
+     * @param price the price, in ticks
+     * @param size the size
+     * @param receivedNanos the System.nanoTime() at which the trade was received
+     */
+    void onTrade(String symbol, long time, long price, long size, long receivedNanos);
+
+}
@@ -0,0 +1,70 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.time.ZonedDateTime;
+
+/**
+ * The market clock as reported by a {@link Broker}.
+ */
+public class MarketHours {
+
+    /** The open. */
+    private final boolean open;
+
+    /** The next open. */
+    private final ZonedDateTime nextOpen;
+
+    /** The next close. */
+    private final ZonedDateTime nextClose;
+
+    /**
+     * Instantiates a new market hours.
+     *
+     * @param open whether the market is open now
+     * @param nextOpen the next open
+     * @param nextClose the next close
+     */
+    public MarketHours(boolean open, ZonedDateTime nextOpen, ZonedDateTime nextClose) {
+        this.open = open;
+        this.nextOpen = nextOpen;
+        this.nextClose = nextClose;
+    }
+
+    /**
+     * Checks if is open.
+     *
+     * @return true, if is open
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Gets the next open.
+     *
+     * @return the next open
+     */
+    public ZonedDateTime getNextOpen() {
+        return nextOpen;
+    }
+
+    /**
+     * Gets the next close.
+     *
+     * @return the next close
+     */
+    public ZonedDateTime getNextClose() {
+        return nextClose;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "MarketHours [open=" + open + ", nextOpen=" + nextOpen + ", nextClose=" + nextClose
+                        + "]";
+    }
+
+}
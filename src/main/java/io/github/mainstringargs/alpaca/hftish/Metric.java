@@ -0,0 +1,53 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The events counted by {@link EngineMetrics}.
+ */
+public enum Metric {
+
+    /** Quotes received while trading. */
+    QUOTES("quotes"),
+
+    /** Trades received while trading. */
+    TRADES("trades"),
+
+    /** Penny-spread level changes. */
+    LEVEL_CHANGES("level_changes"),
+
+    /** Trades followed with an order. */
+    SIGNALS("signals"),
+
+    /** Orders accepted by the broker. */
+    ORDERS("orders"),
+
+    /** Orders filled. */
+    FILLS("fills"),
+
+    /** Orders cancelled. */
+    CANCELS("cancels"),
+
+    /** Orders rejected by the broker, or that couldn't be sent. */
+    REJECTS("rejects");
+
+    /** The name. */
+    private final String name;
+
+    /**
+     * Instantiates a new metric.
+     *
+     * @param name the name
+     */
+    Metric(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name it is exposed under.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+}
@@ -0,0 +1,223 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The OrderGateway is the submission stage between the signal path and the {@link Broker}. The
+ * market data thread hands an {@link OrderIntent} to {@link #submit(OrderIntent)}, which only
+ * enqueues it on a bounded queue. A dedicated thread then makes the order request, the one network
+ * round trip per signal, and reports the outcome to the {@link OrderGatewayListener}.
+ * <p>
+ * Orders are immediate-or-cancel at brokers that support it. Otherwise each acknowledged order is
+ * cancelled from a separate thread, fire-and-forget, so the cancel round trip never delays the next
+ * order. The decision, submit, ack and cancel ack stages are recorded to the {@link LatencyStats}.
+ */
+public class OrderGateway implements OrderRouter {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(OrderGateway.class);
+
+    /** The Constant DEFAULT_CAPACITY. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /** The broker. */
+    private final Broker broker;
+
+    /** The listener. */
+    private final OrderGatewayListener listener;
+
+    /** The pending intents. */
+    private final BlockingQueue<OrderIntent> intents;
+
+    /** The submission thread. */
+    private final Thread submissionThread;
+
+    /** The thread cancels are sent from, or null if orders are immediate-or-cancel. */
+    private final ExecutorService cancelSender;
+
+    /** The latency stats. */
+    private final LatencyStats latencyStats;
+
+    /** The decision count. */
+    private final AtomicLong decisionCount = new AtomicLong();
+
+    /** The rejected count. */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /** The accepted count. */
+    private final AtomicLong acceptedCount = new AtomicLong();
+
+    /**
+     * Instantiates a new order gateway.
+     *
+     * @param broker the broker
+     * @param listener the listener
+     * @param capacity the capacity of the intent queue
+     * @param latencyStats the latency stats
+     */
+    public OrderGateway(Broker broker, OrderGatewayListener listener, int capacity,
+                    LatencyStats latencyStats) {
+        this.broker = broker;
+        this.listener = listener;
+        this.latencyStats = latencyStats;
+        this.intents = new ArrayBlockingQueue<OrderIntent>(capacity);
+
+        submissionThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                processIntents();
+            }
+        }, "order-gateway");
+        submissionThread.setDaemon(true);
+        submissionThread.start();
+
+        if (broker.isImmediateOrCancel()) {
+            cancelSender = null;
+        } else {
+            cancelSender = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "order-gateway-cancels");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Hands an intent to the submission thread. Never blocks; if the queue is full the intent is
+     * failed immediately so the caller's reservations are released.
+     *
+     * @param intent the intent
+     * @return true, if the intent was queued
+     */
+    @Override
+    public boolean submit(OrderIntent intent) {
+        latencyStats.record(LatencyStage.DECISION, intent.getSignalNanos());
+        decisionCount.incrementAndGet();
+
+        boolean queued = intents.offer(intent);
+
+        if (!queued) {
+            listener.onOrderFailed(intent, "Order gateway queue full");
+        }
+
+        return queued;
+    }
+
+    /**
+     * Process intents until the thread is interrupted.
+     */
+    private void processIntents() {
+        while (!Thread.currentThread().isInterrupted()) {
+            OrderIntent intent;
+            try {
+                intent = intents.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                send(intent);
+            } catch (Exception e) {
+                LOGGER.error("Unexpected failure submitting " + intent, e);
+                listener.onOrderFailed(intent, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends the intent to the broker.
+     *
+     * @param intent the intent
+     */
+    private void send(OrderIntent intent) {
+        String orderId;
+
+        try {
+            latencyStats.record(LatencyStage.SUBMIT, intent.getSignalNanos());
+
+            orderId = broker.submitOrder(intent);
+
+            latencyStats.record(LatencyStage.ACK, intent.getSignalNanos());
+        } catch (BrokerException e) {
+            e.printStackTrace();
+            rejectedCount.incrementAndGet();
+            listener.onOrderFailed(intent, e.getMessage());
+            return;
+        }
+
+        latencyStats.onOrderAccepted(orderId, intent.getSignalNanos());
+        acceptedCount.incrementAndGet();
+
+        listener.onOrderAccepted(intent, orderId);
+
+        if (cancelSender != null) {
+            cancelOnAck(orderId, intent.getSignalNanos());
+        }
+    }
+
+    /**
+     * Cancels the unfilled remainder of an acknowledged order from the cancel thread, without
+     * waiting for the result. The cancel, or the fill that beat it, arrives as an order update.
+     *
+     * @param orderId the order id
+     * @param signalNanos the signal nanos
+     */
+    private void cancelOnAck(final String orderId, final long signalNanos) {
+        cancelSender.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    broker.cancelOrder(orderId);
+
+                    latencyStats.record(LatencyStage.CANCEL_ACK, signalNanos);
+                } catch (BrokerException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Logs the order counts seen so far. Latencies are reported by the {@link LatencyStats}.
+     */
+    public void logStatistics() {
+        LOGGER.info("Order gateway: " + decisionCount.get() + " decisions, "
+                        + acceptedCount.get() + " accepted, " + rejectedCount.get()
+                        + " refused; queue depth " + intents.size());
+    }
+
+    /**
+     * Stops the submission thread and the cancel thread. Intents still queued are dropped.
+     */
+    public void shutdown() {
+        submissionThread.interrupt();
+
+        if (cancelSender != null) {
+            cancelSender.shutdown();
+        }
+    }
+
+    /**
+     * Gets the queue depth.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return intents.size();
+    }
+
+}
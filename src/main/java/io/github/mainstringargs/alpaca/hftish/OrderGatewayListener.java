@@ -0,0 +1,25 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The listener interface for receiving the outcome of an {@link OrderIntent} handed to the
+ * {@link OrderGateway}. Callbacks are invoked on the gateway's submission thread.
+ */
+public interface OrderGatewayListener {
+
+    /**
+     * Called once the broker has accepted the order.
+     *
+     * @param intent the intent
+     * @param orderId the broker order id
+     */
+    void onOrderAccepted(OrderIntent intent, String orderId);
+
+    /**
+     * Called when the intent never made it to the broker, or the broker refused it.
+     *
+     * @param intent the intent
+     * @param reason the reason
+     */
+    void onOrderFailed(OrderIntent intent, String reason);
+
+}
@@ -0,0 +1,101 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+
+/**
+ * An OrderIntent is the decision made on the market data thread. It carries everything the
+ * {@link OrderGateway} needs to submit the order, so the signal path can hand it off and return
+ * without waiting on the network.
+ */
+public class OrderIntent {
+
+    /** The symbol. */
+    private final String symbol;
+
+    /** The quantity. */
+    private final long quantity;
+
+    /** The side. */
+    private final OrderSide side;
+
+    /** The limit price, in ticks. */
+    private final long limitPrice;
+
+    /** The System.nanoTime() at which the triggering signal arrived. */
+    private final long signalNanos;
+
+    /**
+     * Instantiates a new order intent.
+     *
+     * @param symbol the symbol
+     * @param quantity the quantity
+     * @param side the side
+     * @param limitPrice the limit price, in ticks
+     * @param signalNanos the signal nanos
+     */
+    public OrderIntent(String symbol, long quantity, OrderSide side, long limitPrice,
+                    long signalNanos) {
+        this.symbol = symbol;
+        this.quantity = quantity;
+        this.side = side;
+        this.limitPrice = limitPrice;
+        this.signalNanos = signalNanos;
+    }
+
+    /**
+     * Gets the symbol.
+     *
+     * @return the symbol
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Gets the quantity.
+     *
+     * @return the quantity
+     */
+    public long getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Gets the side.
+     *
+     * @return the side
+     */
+    public OrderSide getSide() {
+        return side;
+    }
+
+    /**
+     * Gets the limit price.
+     *
+     * @return the limit price, in ticks
+     */
+    public long getLimitPrice() {
+        return limitPrice;
+    }
+
+    /**
+     * Gets the signal nanos.
+     *
+     * @return the signal nanos
+     */
+    public long getSignalNanos() {
+        return signalNanos;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "OrderIntent [symbol=" + symbol + ", quantity=" + quantity + ", side=" + side
+                        + ", limitPrice=" + limitPrice + ", signalNanos=" + signalNanos + "]";
+    }
+
+}
@@ -0,0 +1,18 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * An OrderRouter takes the orders an {@link Algorithm} decides to place. The live implementation
+ * is the {@link OrderGateway}; replays use a {@link SimulatedBroker}.
+ */
+public interface OrderRouter {
+
+    /**
+     * Submits the intent. Implementations must not block the caller, and report the outcome
+     * through their {@link OrderGatewayListener}.
+     *
+     * @param intent the intent
+     * @return true, if the intent was accepted for submission
+     */
+    boolean submit(OrderIntent intent);
+
+}
@@ -0,0 +1,227 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The OrderTable tracks a {@link Position}'s live orders in preallocated primitive arrays. An
+ * order id is interned once, when the order is first filled, into a small int handle; after that,
+ * looking it up to apply a fill or cancel is an open-addressing probe comparing the id against
+ * the interned one, and never allocates. Handles are recycled when orders are removed. The table
+ * only grows, by doubling, if more orders are live at once than it was sized for. Not thread safe.
+ */
+public class OrderTable {
+
+    /** The Constant NO_ORDER. */
+    public static final int NO_ORDER = -1;
+
+    /** The order ids by handle. */
+    private String[] orderIds;
+
+    /** The filled quantities by handle. */
+    private long[] filledQuantities;
+
+    /** The free handles. */
+    private int[] freeHandles;
+
+    /** The number of free handles. */
+    private int freeCount;
+
+    /** The hash index, holding handle + 1 per slot, or 0 if the slot is empty. */
+    private int[] index;
+
+    /** The index mask. */
+    private int mask;
+
+    /**
+     * Instantiates a new order table.
+     *
+     * @param capacity the number of live orders to preallocate for
+     */
+    public OrderTable(int capacity) {
+        allocate(Math.max(capacity, 2));
+    }
+
+    /**
+     * Allocates empty arrays for the capacity.
+     *
+     * @param capacity the capacity
+     */
+    private void allocate(int capacity) {
+        orderIds = new String[capacity];
+        filledQuantities = new long[capacity];
+        freeHandles = new int[capacity];
+
+        // Keep the index at most half full so probes stay short
+        int slots = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        index = new int[slots];
+        mask = slots - 1;
+
+        freeCount = capacity;
+        for (int i = 0; i < capacity; i++) {
+            freeHandles[i] = capacity - 1 - i;
+        }
+    }
+
+    /**
+     * Gets the home slot of an order id.
+     *
+     * @param orderId the order id
+     * @return the slot
+     */
+    private int slotOf(String orderId) {
+        int hash = orderId.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Finds an order's handle.
+     *
+     * @param orderId the order id
+     * @return the handle, or {@link #NO_ORDER}
+     */
+    public int find(String orderId) {
+        for (int slot = slotOf(orderId); index[slot] != 0; slot = (slot + 1) & mask) {
+            int handle = index[slot] - 1;
+
+            if (orderIds[handle].equals(orderId)) {
+                return handle;
+            }
+        }
+
+        return NO_ORDER;
+    }
+
+    /**
+     * Interns an order that isn't in the table, with nothing filled.
+     *
+     * @param orderId the order id
+     * @return the handle
+     */
+    public int add(String orderId) {
+        if (freeCount == 0) {
+            grow();
+        }
+
+        int handle = freeHandles[--freeCount];
+        orderIds[handle] = orderId;
+        filledQuantities[handle] = 0;
+
+        int slot = slotOf(orderId);
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = handle + 1;
+
+        return handle;
+    }
+
+    /**
+     * Removes an order and recycles its handle.
+     *
+     * @param handle the handle
+     */
+    public void remove(int handle) {
+        int hole = slotOf(orderIds[handle]);
+        while (index[hole] != handle + 1) {
+            hole = (hole + 1) & mask;
+        }
+
+        // Shift later entries of the probe run back so no lookup ever stops short at the hole
+        for (int slot = (hole + 1) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            int home = slotOf(orderIds[index[slot] - 1]);
+            boolean reachable = hole <= slot ? (home <= hole || home > slot)
+                            : (home <= hole && home > slot);
+
+            if (reachable) {
+                index[hole] = index[slot];
+                hole = slot;
+            }
+        }
+        index[hole] = 0;
+
+        orderIds[handle] = null;
+        freeHandles[freeCount++] = handle;
+    }
+
+    /**
+     * Gets the filled quantity.
+     *
+     * @param handle the handle
+     * @return the filled quantity
+     */
+    public long getFilledQuantity(int handle) {
+        return filledQuantities[handle];
+    }
+
+    /**
+     * Sets the filled quantity.
+     *
+     * @param handle the handle
+     * @param filledQuantity the filled quantity
+     */
+    public void setFilledQuantity(int handle, long filledQuantity) {
+        filledQuantities[handle] = filledQuantity;
+    }
+
+    /**
+     * Gets the number of orders in the table.
+     *
+     * @return the size
+     */
+    public int size() {
+        return orderIds.length - freeCount;
+    }
+
+    /**
+     * Removes every order.
+     */
+    public void clear() {
+        allocate(orderIds.length);
+    }
+
+    /**
+     * Doubles the capacity, keeping every order's handle.
+     */
+    private void grow() {
+        String[] oldOrderIds = orderIds;
+        long[] oldFilledQuantities = filledQuantities;
+
+        allocate(oldOrderIds.length * 2);
+        freeCount = 0;
+
+        for (int handle = orderIds.length - 1; handle >= oldOrderIds.length; handle--) {
+            freeHandles[freeCount++] = handle;
+        }
+
+        for (int handle = 0; handle < oldOrderIds.length; handle++) {
+            orderIds[handle] = oldOrderIds[handle];
+            filledQuantities[handle] = oldFilledQuantities[handle];
+
+            int slot = slotOf(orderIds[handle]);
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = handle + 1;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+
+        for (int handle = 0; handle < orderIds.length; handle++) {
+            if (orderIds[handle] != null) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(orderIds[handle]).append('=').append(filledQuantities[handle]);
+            }
+        }
+
+        return builder.append('}').toString();
+    }
+
+}
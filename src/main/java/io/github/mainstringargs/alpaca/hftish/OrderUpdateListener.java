@@ -0,0 +1,25 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+
+/**
+ * The listener interface for receiving updates to orders from a {@link Broker}.
+ */
+public interface OrderUpdateListener {
+
+    /**
+     * On order update.
+     *
+     * @param symbol the symbol
+     * @param type the type
+     * @param orderId the order id
+     * @param side the side
+     * @param qty the order quantity
+     * @param filledQty the cumulative filled quantity
+     * @param limitPrice the limit price, in ticks
+     * @param filledAvgPrice the average fill price, in ticks
+     */
+    void onOrderUpdate(String symbol, OrderUpdateType type, String orderId, OrderSide side,
+                    long qty, long filledQty, long limitPrice, long filledAvgPrice);
+
+}
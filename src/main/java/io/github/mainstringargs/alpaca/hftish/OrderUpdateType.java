@@ -0,0 +1,73 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The order update events from the Alpaca trade updates stream that the algorithm acts on.
+ */
+public enum OrderUpdateType {
+
+    /** The order was accepted. */
+    NEW,
+
+    /** Part of the order was filled. */
+    PARTIAL_FILL,
+
+    /** The order was completely filled. */
+    FILL,
+
+    /** The order was cancelled. */
+    CANCELLED,
+
+    /** The order was rejected. */
+    REJECTED,
+
+    /** Any other event. */
+    OTHER;
+
+    /**
+     * Maps a trade updates event name to its type, without allocating.
+     *
+     * @param event the event
+     * @return the order update type
+     */
+    public static OrderUpdateType fromEvent(String event) {
+        if (event == null) {
+            return OTHER;
+        } else if (matches(event, "fill")) {
+            return FILL;
+        } else if (matches(event, "partial_fill")) {
+            return PARTIAL_FILL;
+        } else if (matches(event, "new")) {
+            return NEW;
+        } else if (matches(event, "canceled") || matches(event, "cancelled")) {
+            return CANCELLED;
+        } else if (matches(event, "rejected")) {
+            return REJECTED;
+        } else {
+            return OTHER;
+        }
+    }
+
+    /**
+     * Checks if a field from the stream is a name, ignoring case and surrounding whitespace,
+     * without allocating.
+     *
+     * @param value the value
+     * @param name the name
+     * @return true, if it matches
+     */
+    static boolean matches(String value, String name) {
+        int start = 0;
+        int end = value.length();
+
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        return end - start == name.length() && value.regionMatches(true, start, name, 0,
+                        name.length());
+    }
+
+}
@@ -0,0 +1,58 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import io.github.mainstringargs.polygon.PolygonAPI;
+
+/**
+ * The {@link MarketDataFeed} backed by the Polygon websocket stream. Each subscriber gets a single
+ * Polygon subscription covering all of its symbols.
+ */
+public class PolygonMarketDataFeed implements MarketDataFeed {
+
+    /** The polygon api. */
+    private final PolygonAPI polygonApi;
+
+    /** The stream listeners registered for each market data listener. */
+    private final Map<MarketDataListener, AlgoPolygonStreamListener> streamListeners =
+                    new ConcurrentHashMap<MarketDataListener, AlgoPolygonStreamListener>();
+
+    /**
+     * Instantiates a new polygon market data feed.
+     *
+     * @param keyId the key id
+     */
+    public PolygonMarketDataFeed(String keyId) {
+        polygonApi = new PolygonAPI(keyId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.MarketDataFeed#subscribe(java.util.Collection,
+     * io.github.mainstringargs.alpaca.hftish.MarketDataListener)
+     */
+    @Override
+    public void subscribe(Collection<String> symbols, MarketDataListener listener) {
+        AlgoPolygonStreamListener streamListener = new AlgoPolygonStreamListener(symbols, listener);
+        streamListeners.put(listener, streamListener);
+        polygonApi.addPolygonStreamListener(streamListener);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.MarketDataFeed#unsubscribe(io.github.
+     * mainstringargs.alpaca.hftish.MarketDataListener)
+     */
+    @Override
+    public void unsubscribe(MarketDataListener listener) {
+        AlgoPolygonStreamListener streamListener = streamListeners.remove(listener);
+
+        if (streamListener != null) {
+            polygonApi.removePolygonStreamListener(streamListener);
+        }
+    }
+
+}
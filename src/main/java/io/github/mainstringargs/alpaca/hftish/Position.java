@@ -1,47 +1,199 @@
 package io.github.mainstringargs.alpaca.hftish;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import io.github.mainstringargs.alpaca.enums.OrderSide;
 
 /**
  * The position object is used to track how many shares we have. We need to keep track of this so
  * our position size doesn't inflate beyond the level we're willing to trade with. Because orders
  * may sometimes be partially filled, we need to keep track of how many shares are "pending" a buy
  * or sell as well as how many have been filled into our account.
+ * <p>
+ * The total, pending buy and pending sell shares are packed into one word and only ever changed
+ * together with a compare-and-set, so {@link #tryReserveBuy(long, long)} and
+ * {@link #tryReserveSell(long)} check the limit and claim the shares in one atomic step, and no
+ * method takes a lock. The total is a signed 32 bit field and each pending count a 16 bit field.
+ * <p>
+ * Each order is interned into the {@link OrderTable} at its first fill and removed at its final
+ * update, so applying a fill or cancel is a primitive table lookup and never allocates. The table
+ * is not thread safe: order updates must come from one thread at a time, the symbol's worker.
  */
-public class Position {
+public class Position implements OrderGatewayListener {
 
-    /** The orders filled amount. */
-    private Map<String, Long> ordersFilledAmount = new HashMap<String, Long>();
+    /** The Constant DEFAULT_ORDER_CAPACITY. */
+    public static final int DEFAULT_ORDER_CAPACITY = 64;
 
-    /** The pending buy shares. */
-    private long pendingBuyShares = 0;
+    /** The largest pending buy or sell count the state word holds. */
+    public static final long MAX_PENDING_SHARES = 0xFFFF;
 
-    /** The pending sell shares. */
-    private long pendingSellShares = 0;
+    /** The filled amount of each live order. */
+    private final OrderTable orders = new OrderTable(DEFAULT_ORDER_CAPACITY);
 
-    /** The total shares. */
-    private long totalShares = 0;
+    /** The total shares, pending buy shares and pending sell shares, packed. */
+    private final AtomicLong state = new AtomicLong();
 
+    /** The shares our own fills bought and haven't sold yet, whose cost is known. */
+    private long costShares;
+
+    /** The cost of those shares, in ticks. */
+    private long costTicks;
+
+    /**
+     * Packs the share counts into a state word, clamping each to its field.
+     *
+     * @param totalShares the total shares
+     * @param pendingBuyShares the pending buy shares
+     * @param pendingSellShares the pending sell shares
+     * @return the state
+     */
+    private static long pack(long totalShares, long pendingBuyShares, long pendingSellShares) {
+        long total = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, totalShares));
+        long pendingBuy = Math.max(0, Math.min(MAX_PENDING_SHARES, pendingBuyShares));
+        long pendingSell = Math.max(0, Math.min(MAX_PENDING_SHARES, pendingSellShares));
+
+        return (total << 32) | (pendingBuy << 16) | pendingSell;
+    }
+
+    /**
+     * Gets the total shares in a state word.
+     *
+     * @param state the state
+     * @return the total shares
+     */
+    private static long totalShares(long state) {
+        return state >> 32;
+    }
+
+    /**
+     * Gets the pending buy shares in a state word.
+     *
+     * @param state the state
+     * @return the pending buy shares
+     */
+    private static long pendingBuyShares(long state) {
+        return (state >>> 16) & MAX_PENDING_SHARES;
+    }
+
+    /**
+     * Gets the pending sell shares in a state word.
+     *
+     * @param state the state
+     * @return the pending sell shares
+     */
+    private static long pendingSellShares(long state) {
+        return state & MAX_PENDING_SHARES;
+    }
+
+    /**
+     * Atomically adjusts the share counts.
+     *
+     * @param totalDelta the total shares delta
+     * @param pendingBuyDelta the pending buy shares delta
+     * @param pendingSellDelta the pending sell shares delta
+     */
+    private void add(long totalDelta, long pendingBuyDelta, long pendingSellDelta) {
+        long current;
+        long next;
+
+        do {
+            current = state.get();
+            next = pack(totalShares(current) + totalDelta,
+                            pendingBuyShares(current) + pendingBuyDelta,
+                            pendingSellShares(current) + pendingSellDelta);
+        } while (!state.compareAndSet(current, next));
+    }
 
     /**
      * Reset.
      */
-    public synchronized void reset() {
-        ordersFilledAmount.clear();
-        pendingBuyShares = 0;
-        pendingSellShares = 0;
-        totalShares = 0;
+    public void reset() {
+        orders.clear();
+        state.set(0);
+        costShares = 0;
+        costTicks = 0;
+    }
+
+    /**
+     * Applies a finished order's fill to the average cost of the shares our fills bought, and
+     * returns the profit it realized. Shares held before the session have no known cost, so selling
+     * them realizes nothing. Like the order table, only the symbol's worker may call this.
+     *
+     * @param side the side
+     * @param quantity the filled quantity
+     * @param priceTicks the average fill price, in ticks
+     * @return the realized profit, in ticks
+     */
+    public long realize(OrderSide side, long quantity, long priceTicks) {
+        if (side == OrderSide.BUY) {
+            costShares += quantity;
+            costTicks += quantity * priceTicks;
+            return 0;
+        }
+
+        long matched = Math.min(quantity, costShares);
+
+        if (matched <= 0) {
+            return 0;
+        }
+
+        long cost = costTicks * matched / costShares;
+        costShares -= matched;
+        costTicks -= cost;
+        return matched * priceTicks - cost;
+    }
+
+    /**
+     * Reserves shares to buy if the total and pending buy shares would stay below the limit.
+     *
+     * @param quantity the quantity
+     * @param limit the limit
+     * @return true, if the shares were reserved
+     */
+    public boolean tryReserveBuy(long quantity, long limit) {
+        long current;
+
+        do {
+            current = state.get();
+            long pendingBuy = pendingBuyShares(current);
+
+            if (totalShares(current) + pendingBuy + quantity >= limit
+                            || pendingBuy + quantity > MAX_PENDING_SHARES) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, current + (quantity << 16)));
+
+        return true;
     }
 
+    /**
+     * Reserves shares to sell if that many are held and not already pending a sell.
+     *
+     * @param quantity the quantity
+     * @return true, if the shares were reserved
+     */
+    public boolean tryReserveSell(long quantity) {
+        long current;
+
+        do {
+            current = state.get();
+            long pendingSell = pendingSellShares(current);
+
+            if (totalShares(current) - pendingSell < quantity
+                            || pendingSell + quantity > MAX_PENDING_SHARES) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, current + quantity));
+
+        return true;
+    }
 
     /**
      * Update pending buy shares.
      *
      * @param quantity the quantity
      */
-    public synchronized void updatePendingBuyShares(long quantity) {
-        pendingBuyShares += quantity;
+    public void updatePendingBuyShares(long quantity) {
+        add(0, quantity, 0);
     }
 
     /**
@@ -49,8 +201,8 @@ public class Position {
      *
      * @param quantity the quantity
      */
-    public synchronized void updatePendingSellShares(long quantity) {
-        pendingSellShares += quantity;
+    public void updatePendingSellShares(long quantity) {
+        add(0, 0, quantity);
     }
 
     /**
@@ -60,22 +212,22 @@ public class Position {
      * @param newAmount the new amount
      * @param side the side
      */
-    public synchronized void updateFilledAmount(String orderId, long newAmount, String side) {
-        Long oldAmount = this.ordersFilledAmount.get(orderId.trim());
+    public void updateFilledAmount(String orderId, long newAmount, OrderSide side) {
+        int order = orders.find(orderId);
 
-        if (oldAmount == null) {
-            oldAmount = 0L;
+        if (order == OrderTable.NO_ORDER) {
+            order = orders.add(orderId);
         }
 
+        long oldAmount = orders.getFilledQuantity(order);
+
         if (newAmount > oldAmount) {
-            if (side.trim().equalsIgnoreCase("Buy")) {
-                updatePendingBuyShares(oldAmount - newAmount);
-                updateTotalShares(newAmount - oldAmount);
+            if (side == OrderSide.BUY) {
+                add(newAmount - oldAmount, oldAmount - newAmount, 0);
             } else {
-                updatePendingSellShares(oldAmount - newAmount);
-                updateTotalShares(oldAmount - newAmount);
+                add(oldAmount - newAmount, 0, oldAmount - newAmount);
             }
-            this.ordersFilledAmount.put(orderId.trim(), newAmount);
+            orders.setFilledQuantity(order, newAmount);
         }
     }
 
@@ -86,22 +238,19 @@ public class Position {
      * @param qty the qty
      * @param side the side
      */
-    public synchronized void removePendingOrder(String orderId, int qty, String side) {
-        Long oldAmount = this.ordersFilledAmount.get(orderId.trim());
+    public void removePendingOrder(String orderId, long qty, OrderSide side) {
+        int order = orders.find(orderId);
+        long oldAmount = order == OrderTable.NO_ORDER ? 0 : orders.getFilledQuantity(order);
 
-        if (oldAmount == null) {
-            oldAmount = 0L;
-        }
-
-        if (side.trim().equalsIgnoreCase("Buy")) {
+        if (side == OrderSide.BUY) {
             updatePendingBuyShares(oldAmount - qty);
         } else {
             updatePendingSellShares(oldAmount - qty);
         }
 
-
-        this.ordersFilledAmount.remove(orderId.trim());
-
+        if (order != OrderTable.NO_ORDER) {
+            orders.remove(order);
+        }
     }
 
     /**
@@ -109,9 +258,8 @@ public class Position {
      *
      * @param quantity the quantity
      */
-    public synchronized void updateTotalShares(long quantity) {
-        this.totalShares += quantity;
-
+    public void updateTotalShares(long quantity) {
+        add(quantity, 0, 0);
     }
 
     /**
@@ -119,8 +267,8 @@ public class Position {
      *
      * @return the pending buy shares
      */
-    public synchronized long getPendingBuyShares() {
-        return pendingBuyShares;
+    public long getPendingBuyShares() {
+        return pendingBuyShares(state.get());
     }
 
     /**
@@ -128,8 +276,13 @@ public class Position {
      *
      * @param pendingBuyShares the new pending buy shares
      */
-    public synchronized void setPendingBuyShares(long pendingBuyShares) {
-        this.pendingBuyShares = pendingBuyShares;
+    public void setPendingBuyShares(long pendingBuyShares) {
+        long current;
+
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, pack(totalShares(current), pendingBuyShares,
+                        pendingSellShares(current))));
     }
 
     /**
@@ -137,8 +290,8 @@ public class Position {
      *
      * @return the pending sell shares
      */
-    public synchronized long getPendingSellShares() {
-        return pendingSellShares;
+    public long getPendingSellShares() {
+        return pendingSellShares(state.get());
     }
 
     /**
@@ -146,8 +299,13 @@ public class Position {
      *
      * @param pendingSellShares the new pending sell shares
      */
-    public synchronized void setPendingSellShares(long pendingSellShares) {
-        this.pendingSellShares = pendingSellShares;
+    public void setPendingSellShares(long pendingSellShares) {
+        long current;
+
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, pack(totalShares(current),
+                        pendingBuyShares(current), pendingSellShares)));
     }
 
     /**
@@ -155,8 +313,8 @@ public class Position {
      *
      * @return the total shares
      */
-    public synchronized long getTotalShares() {
-        return totalShares;
+    public long getTotalShares() {
+        return totalShares(state.get());
     }
 
     /**
@@ -164,18 +322,49 @@ public class Position {
      *
      * @param totalShares the new total shares
      */
-    public synchronized void setTotalShares(long totalShares) {
-        this.totalShares = totalShares;
+    public void setTotalShares(long totalShares) {
+        long current;
+
+        do {
+            current = state.get();
+        } while (!state.compareAndSet(current, pack(totalShares, pendingBuyShares(current),
+                        pendingSellShares(current))));
     }
 
     /**
-     * Sets the orders filled amount.
+     * Gets the number of orders being tracked.
      *
-     * @param orderId the order id
-     * @param filledAmount the filled amount
+     * @return the open order count
+     */
+    public int getOpenOrderCount() {
+        return orders.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see io.github.mainstringargs.alpaca.hftish.OrderGatewayListener#onOrderAccepted(io.github.
+     * mainstringargs.alpaca.hftish.OrderIntent, java.lang.String)
      */
-    public synchronized void setOrdersFilledAmount(String orderId, long filledAmount) {
-        ordersFilledAmount.put(orderId, filledAmount);
+    @Override
+    public void onOrderAccepted(OrderIntent intent, String orderId) {
+        // Nothing to track until the order fills; its final update may even have come already
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see io.github.mainstringargs.alpaca.hftish.OrderGatewayListener#onOrderFailed(io.github.
+     * mainstringargs.alpaca.hftish.OrderIntent, java.lang.String)
+     */
+    @Override
+    public void onOrderFailed(OrderIntent intent, String reason) {
+        // Release the shares that were reserved when the intent was created
+        if (intent.getSide() == OrderSide.BUY) {
+            updatePendingBuyShares(-intent.getQuantity());
+        } else {
+            updatePendingSellShares(-intent.getQuantity());
+        }
     }
 
     /**
@@ -190,9 +379,12 @@ public class Position {
      */
     @Override
     public String toString() {
-        return "Position [ordersFilledAmount=" + ordersFilledAmount + ", pendingBuyShares="
-                        + pendingBuyShares + ", pendingSellShares=" + pendingSellShares
-                        + ", totalShares=" + totalShares + "]";
+        long current = state.get();
+
+        return "Position [orders=" + orders + ", pendingBuyShares="
+                        + pendingBuyShares(current) + ", pendingSellShares="
+                        + pendingSellShares(current) + ", totalShares=" + totalShares(current)
+                        + "]";
     }
 
 
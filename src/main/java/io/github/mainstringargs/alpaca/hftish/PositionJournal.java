@@ -0,0 +1,559 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+
+/**
+ * The PositionJournal is a write-ahead log of everything that changes a {@link Position}: each
+ * session's starting positions, and every order intent, ack, failure and update, written before
+ * the change is applied. After a crash the day's positions, pending shares and live orders are
+ * rebuilt by replaying it, see {@link PositionRecovery}.
+ * <p>
+ * Records are a fixed {@link #RECORD_SIZE} bytes, appended to a file memory-mapped once up front,
+ * so writing one is a claim with a single atomic add and a few stores into the page cache; any
+ * thread may write. The first long of a record is a checksum of the rest, so a record torn by a
+ * crash mid-write is found on replay, and each record carries its session and sequence, so the
+ * records left over from an earlier session past the end of this one are never replayed. The
+ * records of this session written past a torn one are cleared when the file is opened, before
+ * anything is appended, so a later replay can't pick them up behind the new records.
+ * <p>
+ * A write survives the process dying as soon as it is made. To survive the machine going down it
+ * also has to reach the disk: a committer thread forces every record written since the last
+ * commit out together, every commit interval, so the cost of a sync is shared by all the writes
+ * of that interval instead of paid by each.
+ */
+public class PositionJournal {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(PositionJournal.class);
+
+    /** The file name in the journal directory. */
+    public static final String FILE_NAME = "positions.journal";
+
+    /** The records the file holds by default, 64MB. */
+    public static final int DEFAULT_CAPACITY = 1 << 19;
+
+    /** The Constant RECORD_SIZE. */
+    public static final int RECORD_SIZE = 128;
+
+    /** The longest symbol recorded. */
+    public static final int MAX_SYMBOL_LENGTH = 16;
+
+    /** The longest order id recorded. */
+    public static final int MAX_ORDER_ID_LENGTH = 40;
+
+    /** The Constant CHECKPOINT. */
+    private static final byte CHECKPOINT = 1;
+
+    /** The Constant INTENT. */
+    private static final byte INTENT = 2;
+
+    /** The Constant ACCEPTED. */
+    private static final byte ACCEPTED = 3;
+
+    /** The Constant FAILED. */
+    private static final byte FAILED = 4;
+
+    /** The Constant UPDATE. */
+    private static final byte UPDATE = 5;
+
+    /** The Constant CHECKSUM. */
+    private static final int CHECKSUM = 0;
+
+    /** The Constant SESSION. */
+    private static final int SESSION = 8;
+
+    /** The Constant SEQUENCE. */
+    private static final int SEQUENCE = 16;
+
+    /** The Constant TYPE. */
+    private static final int TYPE = 24;
+
+    /** The Constant SIDE. */
+    private static final int SIDE = 25;
+
+    /** The Constant UPDATE_TYPE. */
+    private static final int UPDATE_TYPE = 26;
+
+    /** The Constant SYMBOL_LENGTH. */
+    private static final int SYMBOL_LENGTH = 27;
+
+    /** The Constant ORDER_ID_LENGTH. */
+    private static final int ORDER_ID_LENGTH = 28;
+
+    /** The Constant QUANTITY. */
+    private static final int QUANTITY = 32;
+
+    /** The Constant FILLED_QUANTITY. */
+    private static final int FILLED_QUANTITY = 40;
+
+    /** The Constant PRICE. */
+    private static final int PRICE = 48;
+
+    /** The Constant AVERAGE_PRICE. */
+    private static final int AVERAGE_PRICE = 56;
+
+    /** The Constant SIGNAL_NANOS. */
+    private static final int SIGNAL_NANOS = 64;
+
+    /** The Constant SYMBOL. */
+    private static final int SYMBOL = 72;
+
+    /** The Constant ORDER_ID. */
+    private static final int ORDER_ID = SYMBOL + MAX_SYMBOL_LENGTH;
+
+    /** The Constant SIDES. */
+    private static final OrderSide[] SIDES = OrderSide.values();
+
+    /** The Constant UPDATE_TYPES. */
+    private static final OrderUpdateType[] UPDATE_TYPES = OrderUpdateType.values();
+
+    /** The mapped file. */
+    private final MappedByteBuffer buffer;
+
+    /** The records the file holds. */
+    private final int capacity;
+
+    /** The commit interval, in nanos. */
+    private final long commitNanos;
+
+    /** The session being written. */
+    private volatile long session;
+
+    /** The number of records claimed this session. */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /** The number of records found when the file was opened, or 0 after a new session. */
+    private volatile long recovered;
+
+    /** The dropped record count. */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** The number of records committed. */
+    private long committed;
+
+    /** The commit thread. */
+    private Thread commitThread;
+
+    /** The running flag. */
+    private volatile boolean running;
+
+    /**
+     * Opens a journal, creating the file if needed, and finds the end of the last session written
+     * to it.
+     *
+     * @param file the file
+     * @param capacity the records the file holds
+     * @param commitMillis how often written records are forced to disk
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public PositionJournal(File file, int capacity, long commitMillis) throws IOException {
+        this.capacity = capacity;
+        this.commitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, commitMillis));
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                        FileChannel channel = randomAccessFile.getChannel()) {
+            long size = (long) capacity * RECORD_SIZE;
+
+            if (randomAccessFile.length() < size) {
+                randomAccessFile.setLength(size);
+            }
+
+            // The mapping stays valid once the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        session = isValid(0) ? buffer.getLong(SESSION) : 0;
+
+        long count = 0;
+        while (count < capacity && isValid(count)
+                        && buffer.getLong(offset(count) + SESSION) == session
+                        && buffer.getLong(offset(count) + SEQUENCE) == count) {
+            count++;
+        }
+
+        long cleared = clearTail(session, count);
+
+        if (cleared > 0) {
+            LOGGER.warn("Cleared " + cleared + " records of session " + session
+                            + " left past a torn record at " + count);
+        }
+
+        claimed.set(count);
+        committed = count;
+        recovered = count;
+    }
+
+    /**
+     * Clears a session's records past the end of what can be replayed, so they aren't taken for
+     * records appended later, and forces the cleared records to disk.
+     *
+     * @param session the session
+     * @param from the first record past the end
+     * @return the number of records cleared
+     */
+    private long clearTail(long session, long from) {
+        if (session == 0) {
+            return 0;
+        }
+
+        long cleared = 0;
+
+        for (long index = from; index < capacity; index++) {
+            int base = offset(index);
+
+            if (buffer.getLong(base + SESSION) == session) {
+                buffer.putLong(base + CHECKSUM, 0);
+                buffer.putLong(base + SESSION, 0);
+                cleared++;
+            }
+        }
+
+        if (cleared > 0) {
+            buffer.force();
+        }
+
+        return cleared;
+    }
+
+    /**
+     * Gets where a record starts in the file.
+     *
+     * @param index the index
+     * @return the offset
+     */
+    private static int offset(long index) {
+        return (int) index * RECORD_SIZE;
+    }
+
+    /**
+     * Checks a record's checksum.
+     *
+     * @param index the index
+     * @return true, if valid
+     */
+    private boolean isValid(long index) {
+        long checksum = buffer.getLong(offset(index) + CHECKSUM);
+        return checksum != 0 && checksum == checksum(offset(index));
+    }
+
+    /**
+     * Computes the checksum of everything in a record after the checksum itself.
+     *
+     * @param base the record's offset
+     * @return the checksum, never 0
+     */
+    private long checksum(int base) {
+        long hash = 0x9E3779B97F4A7C15L;
+
+        for (int i = SESSION; i < RECORD_SIZE; i += 8) {
+            hash = (hash ^ buffer.getLong(base + i)) * 0xC2B2AE3D27D4EB4FL;
+            hash ^= hash >>> 29;
+        }
+
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Starts the committer.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        commitThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (running) {
+                    LockSupport.parkNanos(commitNanos);
+                    commit();
+                }
+                commit();
+            }
+        }, "position-journal");
+        commitThread.setDaemon(true);
+        commitThread.start();
+    }
+
+    /**
+     * Stops the committer after a last commit.
+     */
+    public void stop() {
+        running = false;
+
+        try {
+            if (commitThread != null) {
+                commitThread.join();
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Forces the records written since the last commit to disk. Only the committer calls this.
+     */
+    private void commit() {
+        long written = Math.min(claimed.get(), capacity);
+
+        if (written != committed) {
+            buffer.force();
+            committed = written;
+        }
+    }
+
+    /**
+     * Starts a new session. The records of the last one are overwritten from the start of the
+     * file, and any records of this one already in it, from a start whose first record was torn,
+     * are cleared. Only called while nothing else is writing.
+     *
+     * @param session the session
+     */
+    public void startSession(long session) {
+        clearTail(session, 0);
+        this.session = session;
+        this.recovered = 0;
+        claimed.set(0);
+        dropped.set(0);
+    }
+
+    /**
+     * Gets the session written, or being written.
+     *
+     * @return the session
+     */
+    public long getSession() {
+        return session;
+    }
+
+    /**
+     * Gets the number of records of the session found when the journal was opened, still there to
+     * be replayed.
+     *
+     * @return the recovered record count
+     */
+    public long getRecoveredCount() {
+        return recovered;
+    }
+
+    /**
+     * Gets the number of records that didn't fit in the file.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Records a symbol's position at the start of the session.
+     *
+     * @param symbol the symbol
+     * @param totalShares the total shares
+     */
+    public void recordCheckpoint(String symbol, long totalShares) {
+        record(CHECKPOINT, symbol, null, null, null, totalShares, 0, 0, 0, 0);
+    }
+
+    /**
+     * Records an order about to be submitted.
+     *
+     * @param intent the intent
+     */
+    public void recordIntent(OrderIntent intent) {
+        record(INTENT, intent.getSymbol(), null, intent.getSide(), null, intent.getQuantity(), 0,
+                        intent.getLimitPrice(), 0, intent.getSignalNanos());
+    }
+
+    /**
+     * Records an order the broker accepted.
+     *
+     * @param intent the intent
+     * @param orderId the order id
+     */
+    public void recordAccepted(OrderIntent intent, String orderId) {
+        record(ACCEPTED, intent.getSymbol(), orderId, intent.getSide(), null,
+                        intent.getQuantity(), 0, intent.getLimitPrice(), 0,
+                        intent.getSignalNanos());
+    }
+
+    /**
+     * Records an order that couldn't be submitted.
+     *
+     * @param intent the intent
+     */
+    public void recordFailed(OrderIntent intent) {
+        record(FAILED, intent.getSymbol(), null, intent.getSide(), null, intent.getQuantity(), 0,
+                        intent.getLimitPrice(), 0, intent.getSignalNanos());
+    }
+
+    /**
+     * Records an update to one of our orders.
+     *
+     * @param symbol the symbol
+     * @param type the type
+     * @param orderId the order id
+     * @param side the side
+     * @param qty the order quantity
+     * @param filledQty the cumulative filled quantity
+     * @param limitPrice the limit price, in ticks
+     * @param filledAvgPrice the average fill price, in ticks
+     */
+    public void recordUpdate(String symbol, OrderUpdateType type, String orderId, OrderSide side,
+                    long qty, long filledQty, long limitPrice, long filledAvgPrice) {
+        record(UPDATE, symbol, orderId, side, type, qty, filledQty, limitPrice, filledAvgPrice,
+                        0);
+    }
+
+    /**
+     * Claims the next record and writes it, checksum last.
+     *
+     * @param type the type
+     * @param symbol the symbol
+     * @param orderId the order id, or null
+     * @param side the side, or null
+     * @param updateType the update type, or null
+     * @param quantity the quantity
+     * @param filledQuantity the filled quantity
+     * @param price the price, in ticks
+     * @param averagePrice the average price, in ticks
+     * @param signalNanos the signal nanos
+     */
+    private void record(byte type, String symbol, String orderId, OrderSide side,
+                    OrderUpdateType updateType, long quantity, long filledQuantity, long price,
+                    long averagePrice, long signalNanos) {
+        long index = claimed.getAndIncrement();
+
+        if (index >= capacity) {
+            if (dropped.incrementAndGet() == 1) {
+                LOGGER.error("Position journal is full; positions can't be recovered past "
+                                + capacity + " records");
+            }
+            return;
+        }
+
+        int base = offset(index);
+
+        buffer.putLong(base + SESSION, session);
+        buffer.putLong(base + SEQUENCE, index);
+        buffer.put(base + TYPE, type);
+        buffer.put(base + SIDE, (byte) (side == null ? 0 : side.ordinal() + 1));
+        buffer.put(base + UPDATE_TYPE, (byte) (updateType == null ? 0 : updateType.ordinal() + 1));
+        buffer.put(base + SYMBOL_LENGTH, putString(base + SYMBOL, symbol, MAX_SYMBOL_LENGTH));
+        buffer.put(base + ORDER_ID_LENGTH,
+                        putString(base + ORDER_ID, orderId, MAX_ORDER_ID_LENGTH));
+        buffer.putLong(base + QUANTITY, quantity);
+        buffer.putLong(base + FILLED_QUANTITY, filledQuantity);
+        buffer.putLong(base + PRICE, price);
+        buffer.putLong(base + AVERAGE_PRICE, averagePrice);
+        buffer.putLong(base + SIGNAL_NANOS, signalNanos);
+        buffer.putLong(base + CHECKSUM, checksum(base));
+    }
+
+    /**
+     * Writes an ASCII string without allocating.
+     *
+     * @param offset the offset
+     * @param value the value, or null
+     * @param maxLength the longest value kept
+     * @return the length written
+     */
+    private byte putString(int offset, String value, int maxLength) {
+        if (value == null) {
+            return 0;
+        }
+
+        int length = Math.min(value.length(), maxLength);
+
+        for (int i = 0; i < length; i++) {
+            buffer.put(offset + i, (byte) value.charAt(i));
+        }
+
+        return (byte) length;
+    }
+
+    /**
+     * Reads an ASCII string.
+     *
+     * @param offset the offset
+     * @param length the length
+     * @return the string, or null if empty
+     */
+    private String getString(int offset, int length) {
+        if (length == 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Replays the records of the session found when the journal was opened, in order.
+     *
+     * @param listener the listener
+     * @return the number of records replayed
+     */
+    public long replay(PositionJournalListener listener) {
+        long count = recovered;
+
+        for (long index = 0; index < count; index++) {
+            int base = offset(index);
+            String symbol = getString(base + SYMBOL, buffer.get(base + SYMBOL_LENGTH));
+            String orderId = getString(base + ORDER_ID, buffer.get(base + ORDER_ID_LENGTH));
+            int side = buffer.get(base + SIDE);
+            int updateType = buffer.get(base + UPDATE_TYPE);
+            long quantity = buffer.getLong(base + QUANTITY);
+            long price = buffer.getLong(base + PRICE);
+
+            switch (buffer.get(base + TYPE)) {
+                case CHECKPOINT:
+                    listener.onCheckpoint(symbol, quantity);
+                    break;
+                case INTENT:
+                    listener.onIntent(new OrderIntent(symbol, quantity, SIDES[side - 1], price,
+                                    buffer.getLong(base + SIGNAL_NANOS)));
+                    break;
+                case ACCEPTED:
+                    listener.onOrderAccepted(new OrderIntent(symbol, quantity, SIDES[side - 1],
+                                    price, buffer.getLong(base + SIGNAL_NANOS)), orderId);
+                    break;
+                case FAILED:
+                    listener.onOrderFailed(new OrderIntent(symbol, quantity, SIDES[side - 1],
+                                    price, buffer.getLong(base + SIGNAL_NANOS)));
+                    break;
+                case UPDATE:
+                    listener.onOrderUpdate(symbol, UPDATE_TYPES[updateType - 1], orderId,
+                                    SIDES[side - 1], quantity,
+                                    buffer.getLong(base + FILLED_QUANTITY), price,
+                                    buffer.getLong(base + AVERAGE_PRICE));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return count;
+    }
+
+}
@@ -0,0 +1,56 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+
+/**
+ * Receives the records of a {@link PositionJournal} as it is replayed, in the order they were
+ * written.
+ */
+public interface PositionJournalListener {
+
+    /**
+     * Called for a symbol's position as it was seeded at the start of the session.
+     *
+     * @param symbol the symbol
+     * @param totalShares the total shares
+     */
+    void onCheckpoint(String symbol, long totalShares);
+
+    /**
+     * Called for an order about to be submitted.
+     *
+     * @param intent the intent
+     */
+    void onIntent(OrderIntent intent);
+
+    /**
+     * Called for an order the broker accepted.
+     *
+     * @param intent the intent
+     * @param orderId the order id
+     */
+    void onOrderAccepted(OrderIntent intent, String orderId);
+
+    /**
+     * Called for an order that couldn't be submitted.
+     *
+     * @param intent the intent
+     */
+    void onOrderFailed(OrderIntent intent);
+
+    /**
+     * Called for an update to one of our orders.
+     *
+     * @param symbol the symbol
+     * @param type the type
+     * @param orderId the order id
+     * @param side the side
+     * @param qty the order quantity
+     * @param filledQty the cumulative filled quantity
+     * @param limitPrice the limit price, in ticks
+     * @param filledAvgPrice the average fill price, in ticks
+     */
+    void onOrderUpdate(String symbol, OrderUpdateType type, String orderId, OrderSide side,
+                    long qty, long filledQty, long limitPrice, long filledAvgPrice);
+
+}
@@ -0,0 +1,385 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+
+/**
+ * The PositionRecovery rebuilds the algorithms' positions from a {@link PositionJournal} after a
+ * restart mid-session, and then checks them against the broker.
+ * <p>
+ * Replaying is all local, so trading resumes as soon as it is done; nothing is cancelled and the
+ * orders placed before the restart are kept. The broker is asked afterwards, in the background:
+ * orders the journal has live that are no longer open finished while the engine was down, and
+ * are closed out with the fill the journal last saw, and any position the broker reports
+ * differently is corrected. Until then, an update to a recovered order is applied as usual, and
+ * once an order has been closed out its late updates from the stream are dropped.
+ */
+public class PositionRecovery implements PositionJournalListener {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(PositionRecovery.class);
+
+    /** The longest reconciliation waits for the workers to apply the closed out orders. */
+    private static final long DRAIN_TIMEOUT_MILLIS = 1000;
+
+    /** The algorithms by symbol. */
+    private final Map<String, Algorithm> algorithms;
+
+    /** The symbol workers. */
+    private final SymbolWorkers workers;
+
+    /** The broker. */
+    private final Broker broker;
+
+    /** The recovered orders live at the broker when the journal was last written, by order id. */
+    private final Map<String, RecoveredOrder> liveOrders =
+                    new ConcurrentHashMap<String, RecoveredOrder>();
+
+    /** The orders whose updates from the stream are dropped. */
+    private final Set<String> ignoredOrderIds =
+                    ConcurrentHashMap.<String>newKeySet();
+
+    /** The ids of orders that finished before their ack was replayed. Replay only. */
+    private final Set<String> finishedOrderIds = new HashSet<String>();
+
+    /** The intents replayed with no ack or failure, by symbol and signal time. */
+    private final Map<String, OrderIntent> unplacedIntents =
+                    new LinkedHashMap<String, OrderIntent>();
+
+    /**
+     * An order recovered live, with the fill last journaled for it.
+     */
+    private static class RecoveredOrder {
+
+        /** The intent. */
+        final OrderIntent intent;
+
+        /** The cumulative filled quantity. */
+        long filledQty;
+
+        /** The average fill price, in ticks. */
+        long filledAvgPrice;
+
+        /**
+         * Instantiates a new recovered order.
+         *
+         * @param intent the intent
+         */
+        RecoveredOrder(OrderIntent intent) {
+            this.intent = intent;
+        }
+    }
+
+    /**
+     * Instantiates a new position recovery.
+     *
+     * @param algorithms the algorithms by symbol
+     * @param workers the symbol workers
+     * @param broker the broker
+     */
+    public PositionRecovery(Map<String, Algorithm> algorithms, SymbolWorkers workers,
+                    Broker broker) {
+        this.algorithms = algorithms;
+        this.workers = workers;
+        this.broker = broker;
+    }
+
+    /**
+     * Forgets everything recovered, at the start of a new session.
+     */
+    public void reset() {
+        liveOrders.clear();
+        ignoredOrderIds.clear();
+        finishedOrderIds.clear();
+        unplacedIntents.clear();
+    }
+
+    /**
+     * Rebuilds the positions from the records of the journal's session. Only called while the
+     * workers are idle.
+     *
+     * @param journal the journal
+     * @return the number of records replayed
+     */
+    public long replay(PositionJournal journal) {
+        reset();
+
+        long count = journal.replay(this);
+
+        finishedOrderIds.clear();
+
+        return count;
+    }
+
+    /**
+     * Gets whether an order update from the stream should be applied. An update is dropped only
+     * for an order that has already been closed out by {@link #reconcile()}.
+     *
+     * @param orderId the order id
+     * @param type the type
+     * @return true, if it should be applied
+     */
+    public boolean accept(String orderId, OrderUpdateType type) {
+        if (liveOrders.isEmpty() && ignoredOrderIds.isEmpty()) {
+            return true;
+        }
+
+        // Whichever of the stream and reconciliation removes a live order finishes it
+        if (isFinal(type) && liveOrders.remove(orderId) != null) {
+            return true;
+        }
+
+        return !ignoredOrderIds.contains(orderId);
+    }
+
+    /**
+     * Checks the recovered positions against the broker: closes out the recovered orders that
+     * are no longer open, releases the intents that never reached it, and corrects any position
+     * it reports differently. A fill applied by a worker while the positions are being compared
+     * may be corrected away, so the positions are only as exact as the broker's answer.
+     */
+    public void reconcile() {
+        List<String> openOrderIds;
+        try {
+            openOrderIds = broker.getOpenOrderIds(algorithms.keySet());
+        } catch (BrokerException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        Set<String> open = new HashSet<String>(openOrderIds);
+        int closedOut = 0;
+
+        for (Map.Entry<String, RecoveredOrder> entry : liveOrders.entrySet()) {
+            String orderId = entry.getKey();
+
+            if (open.contains(orderId)) {
+                continue;
+            }
+
+            ignoredOrderIds.add(orderId);
+
+            RecoveredOrder order = liveOrders.remove(orderId);
+
+            if (order == null) {
+                // The stream's final update got there first
+                ignoredOrderIds.remove(orderId);
+                continue;
+            }
+
+            OrderIntent intent = order.intent;
+            Algorithm algorithm = algorithms.get(intent.getSymbol());
+
+            workers.loopFor(intent.getSymbol()).publishOrderUpdate(algorithm,
+                            OrderUpdateType.CANCELLED, orderId, intent.getSide(),
+                            intent.getQuantity(), order.filledQty, intent.getLimitPrice(),
+                            order.filledAvgPrice);
+            closedOut++;
+        }
+
+        int unknown = 0;
+        for (String orderId : open) {
+            if (!liveOrders.containsKey(orderId)) {
+                unknown++;
+            }
+        }
+
+        int released = 0;
+
+        // An intent with no ack may still have reached the broker, which is only ruled out if
+        // every open order is accounted for
+        if (unknown == 0) {
+            for (OrderIntent intent : unplacedIntents.values()) {
+                workers.loopFor(intent.getSymbol()).publishOrderFailed(
+                                algorithms.get(intent.getSymbol()), intent,
+                                "not placed before the restart");
+                released++;
+            }
+            unplacedIntents.clear();
+        } else if (!unplacedIntents.isEmpty()) {
+            LOGGER.warn(unknown + " open orders aren't in the journal, keeping "
+                            + unplacedIntents.size() + " unacknowledged orders reserved");
+        }
+
+        int corrected = correctPositions();
+
+        LOGGER.info("Reconciled recovered orders: " + closedOut + " finished while down, "
+                        + liveOrders.size() + " still open, " + released
+                        + " never placed released, " + corrected + " positions corrected");
+    }
+
+    /**
+     * Sets each position the broker reports differently to the broker's, once the workers have
+     * applied the orders closed out.
+     *
+     * @return the number of positions corrected
+     */
+    private int correctPositions() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MILLIS);
+
+        for (String symbol : algorithms.keySet()) {
+            EventLoop loop = workers.loopFor(symbol);
+
+            while (!loop.isDrained() && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+
+        Map<String, Long> positions;
+        try {
+            positions = broker.getPositions();
+        } catch (BrokerException e) {
+            e.printStackTrace();
+            return 0;
+        }
+
+        int corrected = 0;
+
+        for (Algorithm algorithm : algorithms.values()) {
+            Long reported = positions.get(algorithm.getSymbol());
+            long shares = reported == null ? 0 : reported;
+            Position position = algorithm.getPosition();
+
+            if (position.getTotalShares() != shares) {
+                LOGGER.warn("Recovered " + position.getTotalShares() + " of "
+                                + algorithm.getSymbol() + " but the broker reports " + shares);
+                position.setTotalShares(shares);
+                corrected++;
+            }
+        }
+
+        return corrected;
+    }
+
+    /**
+     * Checks if an update type finishes an order.
+     *
+     * @param type the type
+     * @return true, if final
+     */
+    private static boolean isFinal(OrderUpdateType type) {
+        return type == OrderUpdateType.FILL || type == OrderUpdateType.CANCELLED
+                        || type == OrderUpdateType.REJECTED;
+    }
+
+    /**
+     * Gets the key an intent is found by until it is acknowledged.
+     *
+     * @param intent the intent
+     * @return the key
+     */
+    private static String keyOf(OrderIntent intent) {
+        return intent.getSymbol() + ":" + intent.getSignalNanos();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.PositionJournalListener#onCheckpoint(java.lang.
+     * String, long)
+     */
+    @Override
+    public void onCheckpoint(String symbol, long totalShares) {
+        Algorithm algorithm = algorithms.get(symbol);
+
+        if (algorithm != null) {
+            algorithm.recoverCheckpoint(totalShares);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.PositionJournalListener#onIntent(io.github.
+     * mainstringargs.alpaca.hftish.OrderIntent)
+     */
+    @Override
+    public void onIntent(OrderIntent intent) {
+        Algorithm algorithm = algorithms.get(intent.getSymbol());
+
+        if (algorithm != null) {
+            algorithm.recoverIntent(intent);
+            unplacedIntents.put(keyOf(intent), intent);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.PositionJournalListener#onOrderAccepted(io.
+     * github.mainstringargs.alpaca.hftish.OrderIntent, java.lang.String)
+     */
+    @Override
+    public void onOrderAccepted(OrderIntent intent, String orderId) {
+        Algorithm algorithm = algorithms.get(intent.getSymbol());
+
+        if (algorithm != null) {
+            algorithm.recoverOrderAccepted(intent, orderId);
+            unplacedIntents.remove(keyOf(intent));
+
+            if (!finishedOrderIds.remove(orderId)) {
+                liveOrders.put(orderId, new RecoveredOrder(intent));
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.PositionJournalListener#onOrderFailed(io.github.
+     * mainstringargs.alpaca.hftish.OrderIntent)
+     */
+    @Override
+    public void onOrderFailed(OrderIntent intent) {
+        Algorithm algorithm = algorithms.get(intent.getSymbol());
+
+        if (algorithm != null) {
+            algorithm.recoverOrderFailed(intent);
+            unplacedIntents.remove(keyOf(intent));
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.PositionJournalListener#onOrderUpdate(java.lang.
+     * String, io.github.mainstringargs.alpaca.hftish.OrderUpdateType, java.lang.String,
+     * io.github.mainstringargs.alpaca.enums.OrderSide, long, long, long, long)
+     */
+    @Override
+    public void onOrderUpdate(String symbol, OrderUpdateType type, String orderId, OrderSide side,
+                    long qty, long filledQty, long limitPrice, long filledAvgPrice) {
+        Algorithm algorithm = algorithms.get(symbol);
+
+        if (algorithm == null) {
+            return;
+        }
+
+        algorithm.recoverOrderUpdate(type, orderId, side, qty, filledQty, limitPrice,
+                        filledAvgPrice);
+
+        RecoveredOrder order = liveOrders.get(orderId);
+
+        if (isFinal(type)) {
+            // An update may be written before the ack of the same order
+            if (order == null) {
+                finishedOrderIds.add(orderId);
+            } else {
+                liveOrders.remove(orderId);
+            }
+        } else if (order != null) {
+            order.filledQty = filledQty;
+            order.filledAvgPrice = filledAvgPrice;
+        }
+    }
+
+}
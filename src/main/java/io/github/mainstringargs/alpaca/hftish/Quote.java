@@ -1,279 +1,408 @@
 package io.github.mainstringargs.alpaca.hftish;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-import io.github.mainstringargs.domain.polygon.websocket.quote.QuoteMessage;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- * 
+ *
  * We use Quote objects to represent the bid/ask spread. When we encounter a 'level change', a move
  * of exactly 1 penny, we may attempt to make one trade. Whether or not the trade is successfully
  * filled, we do not submit another trade until we see another level change. Note: Only moves of 1
  * penny are considered eligible because larger moves could potentially indicate some newsworthy
  * event for the stock, which this algorithm is not tuned to trade.
+ * <p>
+ * A Quote has a single writer, the thread calling
+ * {@link #update(long, long, long, long, long)}. It publishes with a sequence lock: the sequence is odd while an update is in progress, and readers
+ * use {@link #read(QuoteView)} to copy a consistent bid/ask/size/time view without taking a lock.
+ * <p>
+ * Prices are in {@link Ticks}, so a level change and a one penny spread are exact integer compares.
+ * <p>
+ * The Quote also keeps statistics for the current level and the levels before it: the volume
+ * traded at the bid and at the ask, the prints, the quote updates and when the level started and
+ * ended. They live in one preallocated ring of longs, a fixed stride per level, indexed by the
+ * level ct, so recording a trade or quote is a few array stores and
+ * {@link #readLevel(long, LevelView)} copies any level still in the ring without scanning. The
+ * ring is written by the same single writer, under the same sequence lock.
  */
 public class Quote {
 
-    /** The logger. */
-    private static Logger LOGGER = LogManager.getLogger(Quote.class);
+    /** The levels of history kept by default, including the current one. */
+    public static final int DEFAULT_LEVEL_HISTORY = 64;
 
-    /** The prev bid. */
-    private double prevBid = 0.0;
+    /** The longs per level. */
+    private static final int LEVEL_LONGS = 6;
 
-    /** The prev ask. */
-    private double prevAsk = 0.0;
+    /** The Constant START. */
+    private static final int START = 0;
 
-    /** The prev spread. */
-    private double prevSpread = 0.0;
+    /** The Constant END. */
+    private static final int END = 1;
 
-    /** The bid. */
-    private double bid = 0.0;
+    /** The Constant BID_VOLUME. */
+    private static final int BID_VOLUME = 2;
 
-    /** The ask. */
-    private double ask = 0.0;
+    /** The Constant ASK_VOLUME. */
+    private static final int ASK_VOLUME = 3;
+
+    /** The Constant PRINTS. */
+    private static final int PRINTS = 4;
+
+    /** The Constant UPDATES. */
+    private static final int UPDATES = 5;
+
+    /** The level mask. */
+    private final int levelMask;
+
+    /** The level statistics, {@link #LEVEL_LONGS} per level. */
+    private final AtomicLongArray levels;
+
+    /** The sequence, odd while the writer is mid-update. */
+    private volatile long sequence = 0;
+
+    /** The prev bid, in ticks. */
+    private volatile long prevBid = 0;
+
+    /** The prev ask, in ticks. */
+    private volatile long prevAsk = 0;
+
+    /** The prev spread, in ticks. */
+    private volatile long prevSpread = 0;
+
+    /** The bid, in ticks. */
+    private volatile long bid = 0;
+
+    /** The ask, in ticks. */
+    private volatile long ask = 0;
 
     /** The bid size. */
-    private long bidSize = 0;
+    private volatile long bidSize = 0;
 
     /** The ask size. */
-    private long askSize = 0;
+    private volatile long askSize = 0;
 
-    /** The spread. */
-    private double spread = 0.0;
-
-    /** The traded. */
-    private boolean traded = true;
+    /** The spread, in ticks. */
+    private volatile long spread = 0;
 
     /** The level ct. */
-    private long levelCt = 1;
+    private volatile long levelCt = 1;
+
+    /** The level we last traded at; the current level is traded when this equals levelCt. */
+    private volatile long tradedLevel = 1;
 
     /** The time. */
-    private long time = 0;
+    private volatile long time = 0;
+
+    /**
+     * Instantiates a new quote with the default level history.
+     */
+    public Quote() {
+        this(DEFAULT_LEVEL_HISTORY);
+    }
 
     /**
-     * Called when a level change happens.
+     * Instantiates a new quote.
+     *
+     * @param levelHistory the levels of history to keep, rounded up to a power of two
      */
-    public synchronized void reset() {
-        traded = false;
+    public Quote(int levelHistory) {
+        int size = Integer.highestOneBit(Math.max(2, levelHistory - 1)) << 1;
+
+        this.levelMask = size - 1;
+        this.levels = new AtomicLongArray(size * LEVEL_LONGS);
+    }
+
+    /**
+     * Converts a quote time to milliseconds. Some feeds send nanoseconds.
+     *
+     * @param quoteTime the quote time, in milliseconds or nanoseconds
+     * @return the time, in milliseconds
+     */
+    public static long toMillis(long quoteTime) {
+        return quoteTime > 1560447226296000000L ? quoteTime / 1000000L : quoteTime;
+    }
+
+    /**
+     * Called when a level change happens. Only called by the writer, inside an update.
+     */
+    private void reset() {
         levelCt += 1;
     }
 
     /**
-     * Round value to specified number of places.
+     * Gets where a level's statistics start in the ring.
+     *
+     * @param level the level ct
+     * @return the base index
+     */
+    private int levelBase(long level) {
+        return ((int) level & levelMask) * LEVEL_LONGS;
+    }
+
+    /**
+     * Ends the current level and starts the statistics of the next one. Only called by the
+     * writer, inside an update.
+     *
+     * @param millis the time of the level change, in milliseconds
+     * @param advance whether the level ct moves on; the first level change starts level 1 afresh
+     */
+    private void startLevel(long millis, boolean advance) {
+        if (advance) {
+            levels.lazySet(levelBase(levelCt) + END, millis);
+            this.reset();
+        }
+
+        int base = levelBase(levelCt);
+        levels.lazySet(base + START, millis);
+        levels.lazySet(base + END, 0);
+        levels.lazySet(base + BID_VOLUME, 0);
+        levels.lazySet(base + ASK_VOLUME, 0);
+        levels.lazySet(base + PRINTS, 0);
+        levels.lazySet(base + UPDATES, 0);
+    }
+
+    /**
+     * Adds to a level statistic. Only called by the writer, so a plain read and ordered write is
+     * enough.
      *
-     * @param value the value
-     * @param places the places
-     * @return the double
+     * @param index the index
+     * @param delta the delta
      */
-    public static double round(double value, int places) {
-        double scale = Math.pow(10, places);
-        return Math.round(value * scale) / scale;
+    private void add(int index, long delta) {
+        levels.lazySet(index, levels.get(index) + delta);
     }
 
     /**
      * Update the Quote.
      *
-     * @param quote the quote
+     * @param quoteTime the quote time
+     * @param bidPrice the bid price, in ticks
+     * @param askPrice the ask price, in ticks
+     * @param quoteBidSize the quote bid size
+     * @param quoteAskSize the quote ask size
+     * @return true, if the update was a level change
      */
-    public synchronized void update(QuoteMessage quote) {
+    public boolean update(long quoteTime, long bidPrice, long askPrice, long quoteBidSize,
+                    long quoteAskSize) {
+        long seq = sequence;
+        sequence = seq + 1;
+        boolean levelChange = false;
+
         // Update bid and ask sizes and timestamp
-        this.bidSize = quote.getBs();
-        this.askSize = quote.getAs();
+        this.bidSize = quoteBidSize;
+        this.askSize = quoteAskSize;
 
         // Check if there has been a level change
-        if ((Math.abs(round(bid - quote.getBp(), 3)) > Algorithm.DOUBLE_THRESHOLD)
-                        && (Math.abs(round(ask - quote.getAp(), 3)) > Algorithm.DOUBLE_THRESHOLD)
-                        && (round(quote.getAp() - quote.getBp(), 2) == 0.01)) {
+        if (bid != bidPrice && ask != askPrice && askPrice - bidPrice == Ticks.PER_CENT) {
             // Update bids and asks and time of level change
             this.prevBid = this.bid;
             this.prevAsk = this.ask;
-            this.bid = quote.getBp();
-            this.ask = quote.getAp();
-            this.time = quote.getT();
-
-            if (this.time > 1560447226296000000L) {
-                this.time = quote.getT() / 1000000L;
-            }
+            this.bid = bidPrice;
+            this.ask = askPrice;
+            this.time = toMillis(quoteTime);
 
             // Update spreads
-            this.prevSpread = round(this.prevAsk - this.prevBid, 3);
-            this.spread = round(this.ask - this.bid, 3);
-
-            LOGGER.debug("Level Change: " + this.prevBid + " " + this.prevAsk + " "
-                            + this.prevSpread + " " + this.bid + " " + this.ask + " "
-                            + this.spread);
+            this.prevSpread = this.prevAsk - this.prevBid;
+            this.spread = this.ask - this.bid;
+            levelChange = true;
 
             // If change is from one penny spread level to a different penny
             // spread level, then initialize for new level (reset stale vars)
 
-            if (prevSpread == 0.01) {
-                this.reset();
-            }
+            startLevel(this.time, prevSpread == Ticks.PER_CENT);
+        }
 
+        add(levelBase(levelCt) + UPDATES, 1);
 
-        }
+        sequence = seq + 2;
+        return levelChange;
     }
 
     /**
-     * Gets the prev bid.
+     * Records a trade against the current level. A trade at the bid or ask adds to that side's
+     * volume; every trade counts as a print.
      *
-     * @return the prev bid
+     * @param price the price, in ticks
+     * @param size the size
      */
-    public synchronized double getPrevBid() {
-        return prevBid;
+    public void recordTrade(long price, long size) {
+        long seq = sequence;
+        sequence = seq + 1;
+
+        int base = levelBase(levelCt);
+
+        if (price == bid) {
+            add(base + BID_VOLUME, size);
+        } else if (price == ask) {
+            add(base + ASK_VOLUME, size);
+        }
+        add(base + PRINTS, 1);
+
+        sequence = seq + 2;
     }
 
     /**
-     * Sets the prev bid.
+     * Copies a consistent snapshot of a level's statistics into the view. Retries only if the
+     * writer was mid-update.
      *
-     * @param prevBid the new prev bid
+     * @param level the level ct
+     * @param view the view
+     * @return true, if the level is the current one or still in the ring; false if it has been
+     *         overwritten or is still to come
      */
-    public synchronized void setPrevBid(double prevBid) {
-        this.prevBid = prevBid;
+    public boolean readLevel(long level, LevelView view) {
+        while (true) {
+            long seq = sequence;
+
+            if ((seq & 1) == 0) {
+                long current = levelCt;
+
+                if (level > current || current - level > levelMask || level < 1) {
+                    if (seq == sequence) {
+                        return false;
+                    }
+                    continue;
+                }
+
+                int base = levelBase(level);
+                view.level = level;
+                view.startTime = levels.get(base + START);
+                view.endTime = level == current ? 0 : levels.get(base + END);
+                view.bidVolume = levels.get(base + BID_VOLUME);
+                view.askVolume = levels.get(base + ASK_VOLUME);
+                view.prints = levels.get(base + PRINTS);
+                view.quoteUpdates = levels.get(base + UPDATES);
+
+                if (seq == sequence) {
+                    return true;
+                }
+            }
+        }
     }
 
     /**
-     * Gets the prev ask.
+     * Gets the number of levels of history kept, including the current one.
      *
-     * @return the prev ask
+     * @return the level history
      */
-    public synchronized double getPrevAsk() {
-        return prevAsk;
+    public int getLevelHistory() {
+        return levelMask + 1;
     }
 
     /**
-     * Sets the prev ask.
+     * Copies a consistent snapshot of the quote into the view. Retries only if the writer was
+     * mid-update.
      *
-     * @param prevAsk the new prev ask
+     * @param view the view
      */
-    public synchronized void setPrevAsk(double prevAsk) {
-        this.prevAsk = prevAsk;
+    public void read(QuoteView view) {
+        while (true) {
+            long seq = sequence;
+
+            if ((seq & 1) == 0) {
+                view.bid = bid;
+                view.ask = ask;
+                view.bidSize = bidSize;
+                view.askSize = askSize;
+                view.spread = spread;
+                view.time = time;
+                view.levelCt = levelCt;
+
+                if (seq == sequence) {
+                    view.traded = tradedLevel == view.levelCt;
+                    return;
+                }
+            }
+        }
     }
 
     /**
-     * Gets the prev spread.
+     * Gets the prev bid.
      *
-     * @return the prev spread
+     * @return the prev bid, in ticks
      */
-    public synchronized double getPrevSpread() {
-        return prevSpread;
+    public long getPrevBid() {
+        return prevBid;
     }
 
     /**
-     * Sets the prev spread.
+     * Gets the prev ask.
      *
-     * @param prevSpread the new prev spread
+     * @return the prev ask, in ticks
      */
-    public synchronized void setPrevSpread(double prevSpread) {
-        this.prevSpread = prevSpread;
+    public long getPrevAsk() {
+        return prevAsk;
     }
 
     /**
-     * Gets the bid.
+     * Gets the prev spread.
      *
-     * @return the bid
+     * @return the prev spread, in ticks
      */
-    public synchronized double getBid() {
-        return bid;
+    public long getPrevSpread() {
+        return prevSpread;
     }
 
     /**
-     * Sets the bid.
+     * Gets the bid.
      *
-     * @param bid the new bid
+     * @return the bid, in ticks
      */
-    public synchronized void setBid(double bid) {
-        this.bid = bid;
+    public long getBid() {
+        return bid;
     }
 
     /**
      * Gets the ask.
      *
-     * @return the ask
+     * @return the ask, in ticks
      */
-    public synchronized double getAsk() {
+    public long getAsk() {
         return ask;
     }
 
-    /**
-     * Sets the ask.
-     *
-     * @param ask the new ask
-     */
-    public synchronized void setAsk(double ask) {
-        this.ask = ask;
-    }
-
     /**
      * Gets the bid size.
      *
      * @return the bid size
      */
-    public synchronized long getBidSize() {
+    public long getBidSize() {
         return bidSize;
     }
 
-    /**
-     * Sets the bid size.
-     *
-     * @param bidSize the new bid size
-     */
-    public synchronized void setBidSize(long bidSize) {
-        this.bidSize = bidSize;
-    }
-
     /**
      * Gets the ask size.
      *
      * @return the ask size
      */
-    public synchronized long getAskSize() {
+    public long getAskSize() {
         return askSize;
     }
 
-    /**
-     * Sets the ask size.
-     *
-     * @param askSize the new ask size
-     */
-    public synchronized void setAskSize(long askSize) {
-        this.askSize = askSize;
-    }
-
     /**
      * Gets the spread.
      *
-     * @return the spread
+     * @return the spread, in ticks
      */
-    public synchronized double getSpread() {
+    public long getSpread() {
         return spread;
     }
 
-    /**
-     * Sets the spread.
-     *
-     * @param spread the new spread
-     */
-    public synchronized void setSpread(double spread) {
-        this.spread = spread;
-    }
-
     /**
      * Checks if is traded.
      *
      * @return true, if is traded
      */
-    public synchronized boolean isTraded() {
-        return traded;
+    public boolean isTraded() {
+        return tradedLevel == levelCt;
     }
 
     /**
-     * Sets the traded.
+     * Marks the given level as traded. A level change that happened since the caller read
+     * levelCt leaves the new level untraded.
      *
-     * @param traded the new traded
+     * @param level the level ct the trade decision was made at
      */
-    public synchronized void setTraded(boolean traded) {
-        this.traded = traded;
+    public void setTraded(long level) {
+        this.tradedLevel = level;
     }
 
     /**
@@ -281,47 +410,29 @@ public class Quote {
      *
      * @return the level ct
      */
-    public synchronized long getLevelCt() {
+    public long getLevelCt() {
         return levelCt;
     }
 
-    /**
-     * Sets the level ct.
-     *
-     * @param levelCt the new level ct
-     */
-    public synchronized void setLevelCt(long levelCt) {
-        this.levelCt = levelCt;
-    }
-
     /**
      * Gets the time.
      *
      * @return the time
      */
-    public synchronized long getTime() {
+    public long getTime() {
         return time;
     }
 
-    /**
-     * Sets the time.
-     *
-     * @param time the new time
-     */
-    public synchronized void setTime(long time) {
-        this.time = time;
-    }
-
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see java.lang.Object#toString()
      */
     @Override
     public String toString() {
         return "Quote [prevBid=" + prevBid + ", prevAsk=" + prevAsk + ", prevSpread=" + prevSpread
                         + ", bid=" + bid + ", ask=" + ask + ", bidSize=" + bidSize + ", askSize="
-                        + askSize + ", spread=" + spread + ", traded=" + traded + ", levelCt="
+                        + askSize + ", spread=" + spread + ", traded=" + isTraded() + ", levelCt="
                         + levelCt + ", time=" + time + "]";
     }
 
@@ -0,0 +1,119 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * A QuoteView is a reader-owned copy of a {@link Quote}, filled in by
+ * {@link Quote#read(QuoteView)}. Every field comes from the same quote update, so the bid/ask pair
+ * and the sizes can't be torn. Readers keep one instance around and reuse it, so taking a snapshot
+ * doesn't allocate.
+ */
+public class QuoteView {
+
+    /** The bid, in ticks. */
+    long bid;
+
+    /** The ask, in ticks. */
+    long ask;
+
+    /** The bid size. */
+    long bidSize;
+
+    /** The ask size. */
+    long askSize;
+
+    /** The spread, in ticks. */
+    long spread;
+
+    /** The time. */
+    long time;
+
+    /** The level ct. */
+    long levelCt;
+
+    /** The traded. */
+    boolean traded;
+
+    /**
+     * Gets the bid.
+     *
+     * @return the bid, in ticks
+     */
+    public long getBid() {
+        return bid;
+    }
+
+    /**
+     * Gets the ask.
+     *
+     * @return the ask, in ticks
+     */
+    public long getAsk() {
+        return ask;
+    }
+
+    /**
+     * Gets the bid size.
+     *
+     * @return the bid size
+     */
+    public long getBidSize() {
+        return bidSize;
+    }
+
+    /**
+     * Gets the ask size.
+     *
+     * @return the ask size
+     */
+    public long getAskSize() {
+        return askSize;
+    }
+
+    /**
+     * Gets the spread.
+     *
+     * @return the spread, in ticks
+     */
+    public long getSpread() {
+        return spread;
+    }
+
+    /**
+     * Gets the time.
+     *
+     * @return the time
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Gets the level ct.
+     *
+     * @return the level ct
+     */
+    public long getLevelCt() {
+        return levelCt;
+    }
+
+    /**
+     * Checks if is traded.
+     *
+     * @return true, if is traded
+     */
+    public boolean isTraded() {
+        return traded;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "QuoteView [bid=" + bid + ", ask=" + ask + ", bidSize=" + bidSize + ", askSize="
+                        + askSize + ", spread=" + spread + ", time=" + time + ", levelCt="
+                        + levelCt + ", traded=" + traded + "]";
+    }
+
+}
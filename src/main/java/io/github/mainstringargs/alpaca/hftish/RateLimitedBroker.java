@@ -0,0 +1,300 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The RateLimitedBroker wraps a {@link Broker} so every request it makes stays under the broker's
+ * request limit. Each request takes a permit from a {@link RateLimiter}, new orders ahead of
+ * cancels and cancels ahead of reads, so a burst is smoothed out here instead of being answered
+ * with 429s halfway through.
+ * <p>
+ * When permits run short, requests degrade by kind. An order that can't be sent within the order
+ * wait is failed, which releases its reservations, since a late order would trade on a stale
+ * signal. A read gives up after {@link #READ_WAIT_SECONDS} and the caller keeps its last state.
+ * A cancel waits as long as it takes.
+ * <p>
+ * Identical requests in flight at the same time are coalesced: a cancel for an order already being
+ * cancelled, or a read already under way, waits for that request's answer instead of sending its
+ * own.
+ */
+public class RateLimitedBroker implements Broker {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(RateLimitedBroker.class);
+
+    /** How long a read waits for a permit. */
+    public static final long READ_WAIT_SECONDS = 5;
+
+    /** The broker. */
+    private final Broker broker;
+
+    /** The rate limiter. */
+    private final RateLimiter rateLimiter;
+
+    /** How long an order waits for a permit, in nanos. */
+    private final long orderWaitNanos;
+
+    /** The requests in flight, by what they ask for. */
+    private final Map<String, FutureTask<?>> inFlight =
+                    new ConcurrentHashMap<String, FutureTask<?>>();
+
+    /** The number of requests answered by one already in flight. */
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Instantiates a new rate limited broker with the configured limits.
+     *
+     * @param broker the broker
+     * @param algoConfig the algo config
+     */
+    public RateLimitedBroker(Broker broker, AlgoConfig algoConfig) {
+        this.broker = broker;
+        this.rateLimiter = new RateLimiter(algoConfig.getRequestsPerMinute(),
+                        algoConfig.getRequestBurst());
+        this.orderWaitNanos = TimeUnit.MILLISECONDS.toNanos(algoConfig.getOrderWaitMillis());
+    }
+
+    /**
+     * Takes a permit for a request.
+     *
+     * @param priority the priority
+     * @param timeoutNanos the timeout, or negative to wait as long as it takes
+     * @param description what the request is for
+     * @throws BrokerException if no permit came in time
+     */
+    private void acquire(RequestPriority priority, long timeoutNanos, String description)
+                    throws BrokerException {
+        boolean acquired;
+
+        try {
+            acquired = rateLimiter.acquire(priority, timeoutNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BrokerException("Interrupted waiting to send " + description, e);
+        }
+
+        if (!acquired) {
+            LOGGER.warn("Request limit reached; not sending " + description);
+            throw new BrokerException("Request limit reached; not sending " + description);
+        }
+    }
+
+    /**
+     * Makes a request, or if an identical one is already in flight, waits for its answer.
+     *
+     * @param <T> the answer type
+     * @param key what the request asks for
+     * @param priority the priority
+     * @param timeoutNanos how long to wait for a permit, or negative to wait as long as it takes
+     * @param request the request
+     * @return the answer
+     * @throws BrokerException the broker exception
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(final String key, final RequestPriority priority,
+                    final long timeoutNanos, final Callable<T> request) throws BrokerException {
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+
+            @Override
+            public T call() throws Exception {
+                acquire(priority, timeoutNanos, key);
+                return request.call();
+            }
+        });
+
+        FutureTask<?> existing = inFlight.putIfAbsent(key, task);
+
+        if (existing != null) {
+            coalescedCount.incrementAndGet();
+            return (T) await(existing, key);
+        }
+
+        try {
+            task.run();
+            return await(task, key);
+        } finally {
+            inFlight.remove(key, task);
+        }
+    }
+
+    /**
+     * Waits for a request's answer.
+     *
+     * @param <T> the answer type
+     * @param task the task
+     * @param key what the request asks for
+     * @return the answer
+     * @throws BrokerException the broker exception
+     */
+    private static <T> T await(FutureTask<T> task, String key) throws BrokerException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BrokerException("Interrupted waiting for " + key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BrokerException) {
+                throw (BrokerException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new BrokerException("Unable to get " + key, e.getCause());
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getMarketHours()
+     */
+    @Override
+    public MarketHours getMarketHours() throws BrokerException {
+        return coalesce("clock", RequestPriority.READ, TimeUnit.SECONDS.toNanos(READ_WAIT_SECONDS),
+                        new Callable<MarketHours>() {
+
+                            @Override
+                            public MarketHours call() throws BrokerException {
+                                return broker.getMarketHours();
+                            }
+                        });
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getBuyingPowerCents()
+     */
+    @Override
+    public long getBuyingPowerCents() throws BrokerException {
+        return coalesce("account", RequestPriority.READ,
+                        TimeUnit.SECONDS.toNanos(READ_WAIT_SECONDS), new Callable<Long>() {
+
+                            @Override
+                            public Long call() throws BrokerException {
+                                return broker.getBuyingPowerCents();
+                            }
+                        });
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getPositions()
+     */
+    @Override
+    public Map<String, Long> getPositions() throws BrokerException {
+        return coalesce("positions", RequestPriority.READ,
+                        TimeUnit.SECONDS.toNanos(READ_WAIT_SECONDS),
+                        new Callable<Map<String, Long>>() {
+
+                            @Override
+                            public Map<String, Long> call() throws BrokerException {
+                                return broker.getPositions();
+                            }
+                        });
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getOpenOrderIds(java.util.Collection)
+     */
+    @Override
+    public List<String> getOpenOrderIds(final Collection<String> symbols)
+                    throws BrokerException {
+        List<String> sorted = new ArrayList<String>(symbols);
+        Collections.sort(sorted);
+
+        return coalesce("open orders " + sorted, RequestPriority.READ,
+                        TimeUnit.SECONDS.toNanos(READ_WAIT_SECONDS), new Callable<List<String>>() {
+
+                            @Override
+                            public List<String> call() throws BrokerException {
+                                return broker.getOpenOrderIds(symbols);
+                            }
+                        });
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#isImmediateOrCancel()
+     */
+    @Override
+    public boolean isImmediateOrCancel() {
+        return broker.isImmediateOrCancel();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#submitOrder(io.github.mainstringargs.
+     * alpaca.hftish.OrderIntent)
+     */
+    @Override
+    public String submitOrder(OrderIntent intent) throws BrokerException {
+        acquire(RequestPriority.ORDER, orderWaitNanos, "order " + intent);
+        return broker.submitOrder(intent);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#cancelOrder(java.lang.String)
+     */
+    @Override
+    public boolean cancelOrder(final String orderId) throws BrokerException {
+        return coalesce("cancel " + orderId, RequestPriority.CANCEL, -1, new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() throws BrokerException {
+                return broker.cancelOrder(orderId);
+            }
+        });
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#addOrderUpdateListener(io.github.
+     * mainstringargs.alpaca.hftish.OrderUpdateListener)
+     */
+    @Override
+    public void addOrderUpdateListener(OrderUpdateListener listener) {
+        broker.addOrderUpdateListener(listener);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#removeOrderUpdateListener(io.github.
+     * mainstringargs.alpaca.hftish.OrderUpdateListener)
+     */
+    @Override
+    public void removeOrderUpdateListener(OrderUpdateListener listener) {
+        broker.removeOrderUpdateListener(listener);
+    }
+
+    /**
+     * Logs how often requests were throttled, dropped or coalesced.
+     */
+    public void logStatistics() {
+        LOGGER.info("Request limiter: " + rateLimiter.getThrottledCount() + " throttled, "
+                        + rateLimiter.getTimedOutCount() + " not sent, " + coalescedCount.get()
+                        + " coalesced");
+    }
+
+}
@@ -0,0 +1,155 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RateLimiter is a token bucket shared by every request to the broker. Permits accrue at a
+ * steady rate up to a burst, and a request takes one before it is sent. When requests are waiting,
+ * the highest {@link RequestPriority} waiting always gets the next permit, so a burst of
+ * reconciliation reads can never hold up an order.
+ * <p>
+ * Requests to a REST API are milliseconds apart at best, so the bucket is a plain monitor.
+ */
+public class RateLimiter {
+
+    /** The Constant PRIORITIES. */
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+    /** The nanos per permit. */
+    private final long nanosPerPermit;
+
+    /** The most permits that can accrue. */
+    private final int burst;
+
+    /** The permits available. */
+    private int permits;
+
+    /** The time from which the next permit is accruing. */
+    private long refillNanos;
+
+    /** The requests waiting, by priority ordinal. */
+    private final int[] waiting = new int[PRIORITIES.length];
+
+    /** The number of requests that had to wait. */
+    private long throttledCount;
+
+    /** The number of requests that gave up waiting. */
+    private long timedOutCount;
+
+    /**
+     * Instantiates a new rate limiter, with a full bucket.
+     *
+     * @param permitsPerMinute the permits per minute
+     * @param burst the most permits that can accrue
+     */
+    public RateLimiter(int permitsPerMinute, int burst) {
+        this.nanosPerPermit = TimeUnit.MINUTES.toNanos(1) / Math.max(1, permitsPerMinute);
+        this.burst = Math.max(1, burst);
+        this.permits = this.burst;
+        this.refillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a permit, waiting for one to accrue and for every higher priority request waiting to
+     * take theirs first.
+     *
+     * @param priority the priority
+     * @param timeoutNanos how long to wait, or a negative value to wait as long as it takes
+     * @return true, if a permit was taken; false if the wait timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean acquire(RequestPriority priority, long timeoutNanos)
+                    throws InterruptedException {
+        long start = System.nanoTime();
+        boolean waited = false;
+
+        waiting[priority.ordinal()]++;
+
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                refill(now);
+
+                if (permits > 0 && !outranked(priority)) {
+                    permits--;
+
+                    if (waited) {
+                        throttledCount++;
+                    }
+                    return true;
+                }
+
+                long remaining = timeoutNanos < 0 ? Long.MAX_VALUE : start + timeoutNanos - now;
+
+                if (remaining <= 0) {
+                    timedOutCount++;
+                    return false;
+                }
+
+                // Either a permit is on its way, or a higher priority request is about to take
+                // the one there is and will wake us when it has
+                long untilPermit = permits > 0 ? remaining
+                                : refillNanos + nanosPerPermit - now;
+
+                waited = true;
+                wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(Math.min(remaining, untilPermit))));
+            }
+        } finally {
+            waiting[priority.ordinal()]--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Adds the permits accrued since the last refill.
+     *
+     * @param now the now
+     */
+    private void refill(long now) {
+        if (permits >= burst) {
+            refillNanos = now;
+            return;
+        }
+
+        long accrued = (now - refillNanos) / nanosPerPermit;
+
+        if (accrued > 0) {
+            permits = (int) Math.min(burst, permits + accrued);
+            refillNanos = permits >= burst ? now : refillNanos + accrued * nanosPerPermit;
+        }
+    }
+
+    /**
+     * Checks whether a higher priority request is waiting.
+     *
+     * @param priority the priority
+     * @return true, if outranked
+     */
+    private boolean outranked(RequestPriority priority) {
+        for (int i = 0; i < priority.ordinal(); i++) {
+            if (waiting[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of requests that had to wait for a permit.
+     *
+     * @return the throttled count
+     */
+    public synchronized long getThrottledCount() {
+        return throttledCount;
+    }
+
+    /**
+     * Gets the number of requests that gave up waiting for a permit.
+     *
+     * @return the timed out count
+     */
+    public synchronized long getTimedOutCount() {
+        return timedOutCount;
+    }
+
+}
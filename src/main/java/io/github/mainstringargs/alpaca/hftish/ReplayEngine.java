@@ -0,0 +1,158 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The ReplayEngine runs an {@link Algorithm} offline. It reads recorded {@link TickFile}s through a
+ * {@link TickStore} and pushes every quote and trade through the same onQuote/onTrade logic used
+ * live, as fast as it can,
+ * with orders going to a {@link SimulatedBroker} whose fills come back through onOrderUpdate. A
+ * replay of the same files with the same configuration always makes the same decisions.
+ */
+public class ReplayEngine implements TickListener {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(ReplayEngine.class);
+
+    /** The symbol. */
+    private final String symbol;
+
+    /** The broker. */
+    private final SimulatedBroker broker;
+
+    /** The algorithm. */
+    private final Algorithm algorithm;
+
+    /** The quote count. */
+    private long quoteCount;
+
+    /** The trade count. */
+    private long tradeCount;
+
+    /** The elapsed nanos. */
+    private long elapsedNanos;
+
+    /** The curr format. */
+    DecimalFormat currFormat = new DecimalFormat("'$'0.00");
+
+    /**
+     * Instantiates a new replay engine.
+     *
+     * @param symbol the symbol
+     * @param algoConfig the algo config
+     * @param startingCash the buying power to start with, in dollars
+     */
+    public ReplayEngine(String symbol, AlgoConfig algoConfig, double startingCash) {
+        this.symbol = symbol;
+
+        AccountState accountState = new AccountState(null);
+        accountState.setBuyingPowerCents(AccountState.toCents(startingCash));
+
+        broker = new SimulatedBroker();
+        algorithm = new Algorithm(symbol, algoConfig, accountState, broker,
+                        new RiskGate(algoConfig), null, null, null);
+    }
+
+    /**
+     * Replays the files in order. A directory is taken to be a day the recorder wrote, and all of
+     * the symbol's segments in it are replayed.
+     *
+     * @param files the files
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void replay(List<File> files) throws IOException {
+        replay(TickStore.open(files, symbol));
+    }
+
+    /**
+     * Replays one file, or one day directory.
+     *
+     * @param file the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void replay(File file) throws IOException {
+        replay(Collections.singletonList(file));
+    }
+
+    /**
+     * Replays every record in a store.
+     *
+     * @param store the store
+     */
+    public void replay(TickStore store) {
+        long start = System.nanoTime();
+        store.replay(this);
+        elapsedNanos += System.nanoTime() - start;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.TickListener#onQuote(long, long, long, long,
+     * long)
+     */
+    @Override
+    public void onQuote(long time, long bidPrice, long askPrice, long bidSize, long askSize) {
+        broker.onQuote(bidPrice, askPrice, bidSize, askSize);
+        algorithm.onQuote(time, bidPrice, askPrice, bidSize, askSize);
+        quoteCount++;
+
+        broker.deliver(algorithm);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.TickListener#onTrade(long, long, long)
+     */
+    @Override
+    public void onTrade(long time, long price, long size) {
+        algorithm.onTrade(time, price, size, 0L);
+        tradeCount++;
+
+        broker.deliver(algorithm);
+    }
+
+    /**
+     * Logs the results of the replay so far.
+     */
+    public void logResults() {
+        long events = quoteCount + tradeCount;
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+
+        LOGGER.info("Replayed " + symbol + ": " + quoteCount + " quotes, " + tradeCount
+                        + " trades in " + String.format("%.3f", seconds) + "s ("
+                        + (seconds == 0 ? 0 : (long) (events / seconds)) + " events/s)");
+        LOGGER.info("Replay " + symbol + ": " + broker.getOrderCount() + " orders, "
+                        + broker.getFillCount() + " filled, " + broker.getFilledShares()
+                        + " shares traded, holding " + broker.getShares() + "; P&L "
+                        + currFormat.format(broker.getProfitAndLoss()) + "; "
+                        + algorithm.getPosition());
+    }
+
+    /**
+     * Gets the broker.
+     *
+     * @return the broker
+     */
+    public SimulatedBroker getBroker() {
+        return broker;
+    }
+
+    /**
+     * Gets the algorithm.
+     *
+     * @return the algorithm
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+}
@@ -0,0 +1,18 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The priority of a request to the broker when the {@link RateLimiter} has to choose which waiting
+ * request goes next, highest first.
+ */
+public enum RequestPriority {
+
+    /** A new order. */
+    ORDER,
+
+    /** A cancel. */
+    CANCEL,
+
+    /** A read, such as buying power reconciliation. */
+    READ;
+
+}
@@ -0,0 +1,47 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The outcome of a {@link RiskGate} check: passed, or the limit the order would have broken.
+ */
+public enum RiskCheck {
+
+    /** The order may be submitted. */
+    PASSED("passed"),
+
+    /** The order's notional is over the per-order limit. */
+    ORDER_NOTIONAL("order notional"),
+
+    /** The order's limit price is outside the collar around the quote. */
+    PRICE_COLLAR("price collar"),
+
+    /** The day's realized loss has reached the limit. */
+    DAILY_LOSS("daily loss"),
+
+    /** Too many orders are open already. */
+    OPEN_ORDERS("open orders"),
+
+    /** Orders are being sent faster than the rate limit. */
+    ORDER_RATE("order rate");
+
+    /** The label. */
+    private final String label;
+
+    /**
+     * Instantiates a new risk check.
+     *
+     * @param label the label
+     */
+    RiskCheck(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets the label.
+     *
+     * @return the label
+     */
+    public String getLabel() {
+        return label;
+    }
+
+}
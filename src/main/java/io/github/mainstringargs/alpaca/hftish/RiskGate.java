@@ -0,0 +1,230 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The RiskGate is the last check before an order is submitted, shared by every symbol's
+ * {@link Algorithm}. It enforces a maximum notional per order, a price collar around the current
+ * quote, a daily loss limit, a maximum number of open orders and a maximum order rate.
+ * <p>
+ * Every limit is converted to ticks or microseconds up front, and every counter is a single atomic,
+ * so a check is a handful of comparisons and at most two compare-and-sets; it never allocates,
+ * locks or does I/O. The order rate is limited with a generic cell rate algorithm on the trade
+ * timestamps, so a replay is throttled exactly as the live session it recorded would have been.
+ * <p>
+ * An order that passes holds an open order slot until it finishes or fails, and the realized
+ * profit of each finished order counts towards the daily loss. Both are cleared by
+ * {@link #reset()} at the start of a session.
+ */
+public class RiskGate {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(RiskGate.class);
+
+    /** The checks, indexed by ordinal. */
+    private static final RiskCheck[] CHECKS = RiskCheck.values();
+
+    /** The maximum notional per order, in ticks. */
+    private final long maxOrderNotionalTicks;
+
+    /** The price collar, in basis points of the mid. */
+    private final long priceCollarBps;
+
+    /** The largest realized loss allowed for the day, in ticks. */
+    private final long maxDailyLossTicks;
+
+    /** The maximum open orders. */
+    private final int maxOpenOrders;
+
+    /** The interval between orders at the maximum rate, in microseconds. */
+    private final long orderIntervalMicros;
+
+    /** How far ahead of the clock the rate schedule may run, which allows a second's burst. */
+    private final long burstMicros;
+
+    /** The open orders. */
+    private final AtomicInteger openOrders = new AtomicInteger();
+
+    /** The realized profit for the day, in ticks. */
+    private final AtomicLong dailyProfitTicks = new AtomicLong();
+
+    /** The theoretical arrival time of the next order, in microseconds. */
+    private final AtomicLong nextOrderMicros = new AtomicLong(Long.MIN_VALUE);
+
+    /** The rejections, by check ordinal. */
+    private final AtomicLongArray rejections = new AtomicLongArray(CHECKS.length);
+
+    /**
+     * Instantiates a new risk gate from the configured limits.
+     *
+     * @param algoConfig the algo config
+     */
+    public RiskGate(AlgoConfig algoConfig) {
+        maxOrderNotionalTicks = Ticks.fromPrice(algoConfig.getMaxOrderNotional());
+        priceCollarBps = algoConfig.getPriceCollarBps();
+        maxDailyLossTicks = Ticks.fromPrice(algoConfig.getMaxDailyLoss());
+        maxOpenOrders = algoConfig.getMaxOpenOrders();
+
+        long second = TimeUnit.SECONDS.toMicros(1);
+        orderIntervalMicros = second / Math.max(1, algoConfig.getMaxOrdersPerSecond());
+        burstMicros = second - orderIntervalMicros;
+    }
+
+    /**
+     * Checks an order, and if it passes takes an open order slot and a place in the order rate for
+     * it.
+     *
+     * @param quantity the quantity
+     * @param limitPrice the limit price, in ticks
+     * @param bid the current bid, in ticks
+     * @param ask the current ask, in ticks
+     * @param time the time of the trade that triggered the order, in milliseconds or nanoseconds
+     * @return the check the order failed, or {@link RiskCheck#PASSED}
+     */
+    public RiskCheck check(long quantity, long limitPrice, long bid, long ask, long time) {
+        if (quantity * limitPrice > maxOrderNotionalTicks) {
+            return reject(RiskCheck.ORDER_NOTIONAL);
+        }
+
+        long mid = (bid + ask) / 2;
+
+        if (bid <= 0 || ask <= 0
+                        || Math.abs(limitPrice - mid) * 10000 > mid * priceCollarBps) {
+            return reject(RiskCheck.PRICE_COLLAR);
+        }
+
+        if (dailyProfitTicks.get() <= -maxDailyLossTicks) {
+            return reject(RiskCheck.DAILY_LOSS);
+        }
+
+        if (openOrders.incrementAndGet() > maxOpenOrders) {
+            openOrders.decrementAndGet();
+            return reject(RiskCheck.OPEN_ORDERS);
+        }
+
+        long nowMicros = Quote.toMillis(time) * 1000;
+
+        while (true) {
+            long next = nextOrderMicros.get();
+            long scheduled = Math.max(next, nowMicros);
+
+            if (scheduled - nowMicros > burstMicros) {
+                openOrders.decrementAndGet();
+                return reject(RiskCheck.ORDER_RATE);
+            }
+
+            if (nextOrderMicros.compareAndSet(next, scheduled + orderIntervalMicros)) {
+                return RiskCheck.PASSED;
+            }
+        }
+    }
+
+    /**
+     * Counts a rejection.
+     *
+     * @param check the check
+     * @return the check
+     */
+    private RiskCheck reject(RiskCheck check) {
+        rejections.incrementAndGet(check.ordinal());
+        return check;
+    }
+
+    /**
+     * Takes an open order slot for an order submitted before a restart, without checking it.
+     */
+    public void reserve() {
+        openOrders.incrementAndGet();
+    }
+
+    /**
+     * Gives back the open order slot of an order that passed but wasn't submitted, or failed.
+     */
+    public void release() {
+        while (true) {
+            int open = openOrders.get();
+
+            if (open == 0 || openOrders.compareAndSet(open, open - 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gives back a finished order's open order slot and counts what it realized.
+     *
+     * @param realizedTicks the realized profit, in ticks
+     */
+    public void onOrderDone(long realizedTicks) {
+        release();
+        dailyProfitTicks.addAndGet(realizedTicks);
+    }
+
+    /**
+     * Gets the realized profit for the day.
+     *
+     * @return the daily profit, in ticks
+     */
+    public long getDailyProfitTicks() {
+        return dailyProfitTicks.get();
+    }
+
+    /**
+     * Gets the open orders.
+     *
+     * @return the open orders
+     */
+    public int getOpenOrders() {
+        return openOrders.get();
+    }
+
+    /**
+     * Gets the number of orders a check has rejected.
+     *
+     * @param check the check
+     * @return the rejection count
+     */
+    public long getRejectionCount(RiskCheck check) {
+        return rejections.get(check.ordinal());
+    }
+
+    /**
+     * Clears the counters, for the next session.
+     */
+    public void reset() {
+        openOrders.set(0);
+        dailyProfitTicks.set(0);
+        nextOrderMicros.set(Long.MIN_VALUE);
+
+        for (int i = 0; i < CHECKS.length; i++) {
+            rejections.set(i, 0);
+        }
+    }
+
+    /**
+     * Logs the day's realized profit and any rejections.
+     */
+    public void logStatistics() {
+        StringBuilder rejected = new StringBuilder();
+
+        for (RiskCheck check : CHECKS) {
+            long count = rejections.get(check.ordinal());
+
+            if (count > 0) {
+                rejected.append(rejected.length() == 0 ? "" : ", ").append(check.getLabel())
+                                .append('=').append(count);
+            }
+        }
+
+        LOGGER.info("Risk gate: realized " + String.format("%.2f",
+                        Ticks.toPrice(dailyProfitTicks.get())) + ", open orders "
+                        + openOrders.get() + (rejected.length() == 0 ? ", no rejections"
+                                        : ", rejected " + rejected));
+    }
+
+}
@@ -0,0 +1,125 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * A RollingWindow keeps the values added over the last window of time and their running sum, in
+ * preallocated primitive rings. Adding a value evicts whatever has aged out, so the sum and count
+ * are always read in constant time, and each value is added and evicted exactly once. If the ring
+ * fills before values age out, the oldest is evicted early.
+ * <p>
+ * Not thread safe; a window belongs to one symbol's worker.
+ */
+public class RollingWindow {
+
+    /** The window, in milliseconds. */
+    private final long windowMillis;
+
+    /** The mask. */
+    private final int mask;
+
+    /** The times, in milliseconds. */
+    private final long[] times;
+
+    /** The values. */
+    private final long[] values;
+
+    /** The sequence of the oldest value. */
+    private long head;
+
+    /** The sequence of the next value. */
+    private long tail;
+
+    /** The sum of the values in the window. */
+    private long sum;
+
+    /**
+     * Instantiates a new rolling window.
+     *
+     * @param windowMillis the window, in milliseconds
+     * @param capacity the most values held, rounded up to a power of two
+     */
+    public RollingWindow(long windowMillis, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        this.windowMillis = windowMillis;
+        this.mask = size - 1;
+        this.times = new long[size];
+        this.values = new long[size];
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param time the time, in milliseconds
+     * @param value the value
+     */
+    public void add(long time, long value) {
+        evict(time);
+
+        if (tail - head > mask) {
+            removeOldest();
+        }
+
+        int slot = (int) tail & mask;
+        times[slot] = time;
+        values[slot] = value;
+        sum += value;
+        tail++;
+    }
+
+    /**
+     * Evicts the values older than the window.
+     *
+     * @param time the current time, in milliseconds
+     */
+    public void evict(long time) {
+        long oldest = time - windowMillis;
+
+        while (head != tail && times[(int) head & mask] <= oldest) {
+            removeOldest();
+        }
+    }
+
+    /**
+     * Removes the oldest value.
+     */
+    private void removeOldest() {
+        sum -= values[(int) head & mask];
+        head++;
+    }
+
+    /**
+     * Gets the sum of the values in the window.
+     *
+     * @return the sum
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * Gets the number of values in the window.
+     *
+     * @return the count
+     */
+    public int getCount() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * Gets the window.
+     *
+     * @return the window, in milliseconds
+     */
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Empties the window.
+     */
+    public void clear() {
+        head = tail;
+        sum = 0;
+    }
+
+}
@@ -0,0 +1,167 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.ArrayDeque;
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+
+/**
+ * The SimulatedBroker stands in for Alpaca during a replay. Orders are treated as
+ * immediate-or-cancel limit orders against the replayed top of book: a buy fills at the ask if its
+ * limit reaches it, up to the displayed ask size, and the rest is cancelled; sells likewise against
+ * the bid.
+ * <p>
+ * Submitted orders are held until {@link #deliver(Algorithm)} is called between events, so acks
+ * and fills reach the algorithm in a deterministic order and never re-enter a decision.
+ */
+public class SimulatedBroker implements OrderRouter {
+
+    /** The submitted orders not yet matched. */
+    private final ArrayDeque<OrderIntent> submitted = new ArrayDeque<OrderIntent>();
+
+    /** The bid, in ticks. */
+    private long bid;
+
+    /** The ask, in ticks. */
+    private long ask;
+
+    /** The bid size. */
+    private long bidSize;
+
+    /** The ask size. */
+    private long askSize;
+
+    /** The order count. */
+    private long orderCount;
+
+    /** The fill count. */
+    private long fillCount;
+
+    /** The filled shares. */
+    private long filledShares;
+
+    /** The shares held as a result of simulated fills. */
+    private long shares;
+
+    /** The cash flow from simulated fills, in ticks. */
+    private long cash;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.OrderRouter#submit(io.github.mainstringargs.
+     * alpaca.hftish.OrderIntent)
+     */
+    @Override
+    public boolean submit(OrderIntent intent) {
+        submitted.add(intent);
+        return true;
+    }
+
+    /**
+     * Updates the top of book orders are matched against.
+     *
+     * @param bidPrice the bid price, in ticks
+     * @param askPrice the ask price, in ticks
+     * @param quoteBidSize the quote bid size
+     * @param quoteAskSize the quote ask size
+     */
+    public void onQuote(long bidPrice, long askPrice, long quoteBidSize, long quoteAskSize) {
+        this.bid = bidPrice;
+        this.ask = askPrice;
+        this.bidSize = quoteBidSize;
+        this.askSize = quoteAskSize;
+    }
+
+    /**
+     * Matches the orders submitted since the last call and reports acks and fills to the
+     * algorithm.
+     *
+     * @param algorithm the algorithm
+     */
+    public void deliver(Algorithm algorithm) {
+        OrderIntent intent;
+
+        while ((intent = submitted.poll()) != null) {
+            String orderId = "sim-" + (++orderCount);
+            algorithm.onOrderAccepted(intent, orderId);
+
+            boolean buy = intent.getSide() == OrderSide.BUY;
+            long filledQty = 0;
+            long price = 0;
+
+            // Quoted sizes are in round lots
+            if (buy && intent.getLimitPrice() >= ask) {
+                filledQty = Math.min(intent.getQuantity(), askSize * 100);
+                price = ask;
+            } else if (!buy && intent.getLimitPrice() <= bid) {
+                filledQty = Math.min(intent.getQuantity(), bidSize * 100);
+                price = bid;
+            }
+
+            if (filledQty > 0) {
+                fillCount++;
+                filledShares += filledQty;
+                shares += buy ? filledQty : -filledQty;
+                cash += buy ? -filledQty * price : filledQty * price;
+            }
+
+            if (filledQty == intent.getQuantity()) {
+                algorithm.onOrderUpdate(OrderUpdateType.FILL, orderId, intent.getSide(),
+                                intent.getQuantity(), filledQty, intent.getLimitPrice(), price);
+            } else {
+                if (filledQty > 0) {
+                    algorithm.onOrderUpdate(OrderUpdateType.PARTIAL_FILL, orderId,
+                                    intent.getSide(), intent.getQuantity(), filledQty,
+                                    intent.getLimitPrice(), price);
+                }
+                algorithm.onOrderUpdate(OrderUpdateType.CANCELLED, orderId, intent.getSide(),
+                                intent.getQuantity(), filledQty, intent.getLimitPrice(), price);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of orders received.
+     *
+     * @return the order count
+     */
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    /**
+     * Gets the number of orders that filled at least partially.
+     *
+     * @return the fill count
+     */
+    public long getFillCount() {
+        return fillCount;
+    }
+
+    /**
+     * Gets the filled shares.
+     *
+     * @return the filled shares
+     */
+    public long getFilledShares() {
+        return filledShares;
+    }
+
+    /**
+     * Gets the shares held as a result of simulated fills.
+     *
+     * @return the shares
+     */
+    public long getShares() {
+        return shares;
+    }
+
+    /**
+     * Gets the profit and loss, marking open shares to the mid.
+     *
+     * @return the profit and loss
+     */
+    public double getProfitAndLoss() {
+        return Ticks.toPrice(cash + shares * ((bid + ask) / 2));
+    }
+
+}
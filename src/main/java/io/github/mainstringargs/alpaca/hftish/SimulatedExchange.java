@@ -0,0 +1,541 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+
+/**
+ * The SimulatedExchange is an in-process {@link Broker} and {@link MarketDataFeed}, so the engine's
+ * whole decision loop can be load tested without a network or a live account.
+ * <p>
+ * A publisher thread random-walks a penny-spread book for every subscribed symbol and publishes
+ * quotes and trades at the configured rate. Market time advances a few milliseconds per event, so
+ * the strategy sees realistic gaps between quotes and trades however fast the tape runs. Orders
+ * take the configured ack latency to submit, are rejected with the configured probability, and
+ * otherwise match against the book: marketable orders fill completely, or partially with the
+ * configured probability. Orders are immediate-or-cancel unless --cancel-on-ack is set, in which
+ * case anything left rests until it is cancelled. Fills and cancels are published asynchronously
+ * on their own thread, like the trade updates stream.
+ */
+public class SimulatedExchange implements Broker, MarketDataFeed {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(SimulatedExchange.class);
+
+    /** The algo config. */
+    private final AlgoConfig algoConfig;
+
+    /** The books by symbol. */
+    private final Map<String, Book> books = new LinkedHashMap<String, Book>();
+
+    /** The market data listeners. */
+    private final List<MarketDataListener> marketDataListeners =
+                    new CopyOnWriteArrayList<MarketDataListener>();
+
+    /** The order update listeners. */
+    private final List<OrderUpdateListener> orderUpdateListeners =
+                    new CopyOnWriteArrayList<OrderUpdateListener>();
+
+    /** The orders that still have quantity resting. */
+    private final Map<String, SimulatedOrder> openOrders =
+                    new ConcurrentHashMap<String, SimulatedOrder>();
+
+    /** The positions by symbol. */
+    private final Map<String, Long> positions = new HashMap<String, Long>();
+
+    /** The thread order updates are published on. */
+    private final ExecutorService updatePublisher;
+
+    /** The random source for order handling. */
+    private final Random orderRandom = new Random(7);
+
+    /** The order ids. */
+    private final AtomicLong orderIds = new AtomicLong();
+
+    /** The published events. */
+    private final AtomicLong publishedEvents = new AtomicLong();
+
+    /** The rejected orders. */
+    private final AtomicLong rejectedOrders = new AtomicLong();
+
+    /** The filled orders. */
+    private final AtomicLong filledOrders = new AtomicLong();
+
+    /** The buying power cents. */
+    private final AtomicLong buyingPowerCents;
+
+    /** The publisher thread. */
+    private Thread publisher;
+
+    /** The running flag. */
+    private volatile boolean running;
+
+    /** The publish start nanos. */
+    private long startNanos;
+
+    /** The publish stop nanos. */
+    private long stopNanos;
+
+    /**
+     * Instantiates a new simulated exchange.
+     *
+     * @param algoConfig the algo config
+     */
+    public SimulatedExchange(AlgoConfig algoConfig) {
+        this.algoConfig = algoConfig;
+        this.buyingPowerCents = new AtomicLong(AccountState.toCents(algoConfig.getReplayCash()));
+
+        updatePublisher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "sim-order-updates");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts publishing market data for the subscribed symbols.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        publisher = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                publish();
+            }
+        }, "sim-market-data");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    /**
+     * Stops publishing market data.
+     */
+    public void stop() {
+        running = false;
+
+        try {
+            if (publisher != null) {
+                publisher.join();
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Publishes quotes and trades at the configured rate until stopped.
+     */
+    private void publish() {
+        Random random = new Random(42);
+        Book[] symbolBooks;
+
+        synchronized (books) {
+            symbolBooks = books.values().toArray(new Book[books.size()]);
+        }
+
+        if (symbolBooks.length == 0) {
+            return;
+        }
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / algoConfig.getSimulatedEventRate();
+        startNanos = System.nanoTime();
+        long event = 0;
+
+        while (running) {
+            long due = startNanos + event * intervalNanos;
+            while (System.nanoTime() < due) {
+                // Pace the tape
+            }
+
+            Book book = symbolBooks[(int) (event % symbolBooks.length)];
+            book.time += 1 + random.nextInt(20);
+
+            if (random.nextInt(10) < 7) {
+                long bid;
+                long ask;
+                long bidSize = 1 + random.nextInt(20);
+                long askSize = 1 + random.nextInt(20);
+
+                synchronized (book) {
+                    int move = random.nextInt(10);
+
+                    if (move == 0) {
+                        book.bid += Ticks.PER_CENT;
+                        book.ask += Ticks.PER_CENT;
+                    } else if (move == 1 && book.bid > 2 * Ticks.PER_CENT) {
+                        book.bid -= Ticks.PER_CENT;
+                        book.ask -= Ticks.PER_CENT;
+                    }
+
+                    book.bidSize = bidSize;
+                    book.askSize = askSize;
+                    bid = book.bid;
+                    ask = book.ask;
+                }
+
+                long now = System.nanoTime();
+                for (MarketDataListener listener : marketDataListeners) {
+                    listener.onQuote(book.symbol, book.time, bid, ask, bidSize, askSize, now);
+                }
+            } else {
+                long price;
+
+                synchronized (book) {
+                    price = random.nextBoolean() ? book.bid : book.ask;
+                }
+
+                long size = 100 * (1 + random.nextInt(10));
+                long now = System.nanoTime();
+                for (MarketDataListener listener : marketDataListeners) {
+                    listener.onTrade(book.symbol, book.time, price, size, now);
+                }
+            }
+
+            event++;
+            publishedEvents.incrementAndGet();
+        }
+
+        stopNanos = System.nanoTime();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.MarketDataFeed#subscribe(java.util.Collection,
+     * io.github.mainstringargs.alpaca.hftish.MarketDataListener)
+     */
+    @Override
+    public void subscribe(Collection<String> symbols, MarketDataListener listener) {
+        synchronized (books) {
+            for (String symbol : symbols) {
+                if (!books.containsKey(symbol)) {
+                    books.put(symbol, new Book(symbol));
+                }
+            }
+        }
+        marketDataListeners.add(listener);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.MarketDataFeed#unsubscribe(io.github.
+     * mainstringargs.alpaca.hftish.MarketDataListener)
+     */
+    @Override
+    public void unsubscribe(MarketDataListener listener) {
+        marketDataListeners.remove(listener);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getMarketHours()
+     */
+    @Override
+    public MarketHours getMarketHours() {
+        ZonedDateTime now = ZonedDateTime.now();
+        return new MarketHours(true, now.plusDays(1), now.plusHours(1));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getBuyingPowerCents()
+     */
+    @Override
+    public long getBuyingPowerCents() {
+        return buyingPowerCents.get();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getPositions()
+     */
+    @Override
+    public Map<String, Long> getPositions() {
+        synchronized (positions) {
+            return new HashMap<String, Long>(positions);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#getOpenOrderIds(java.util.Collection)
+     */
+    @Override
+    public List<String> getOpenOrderIds(Collection<String> symbols) {
+        List<String> orderIds = new ArrayList<String>();
+
+        for (SimulatedOrder order : openOrders.values()) {
+            if (symbols.contains(order.intent.getSymbol())) {
+                orderIds.add(order.orderId);
+            }
+        }
+
+        return orderIds;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#isImmediateOrCancel()
+     */
+    @Override
+    public boolean isImmediateOrCancel() {
+        return !algoConfig.isCancelOnAck();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#submitOrder(io.github.mainstringargs.
+     * alpaca.hftish.OrderIntent)
+     */
+    @Override
+    public String submitOrder(OrderIntent intent) throws BrokerException {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(algoConfig.getSimulatedAckMicros()));
+
+        Book book;
+        synchronized (books) {
+            book = books.get(intent.getSymbol());
+        }
+
+        boolean reject;
+        boolean partial;
+        synchronized (orderRandom) {
+            reject = orderRandom.nextDouble() < algoConfig.getSimulatedRejectProbability();
+            partial = orderRandom.nextDouble() < algoConfig.getSimulatedPartialFillProbability();
+        }
+
+        if (book == null || reject) {
+            rejectedOrders.incrementAndGet();
+            throw new BrokerException("Simulated reject: " + intent);
+        }
+
+        final SimulatedOrder order =
+                        new SimulatedOrder("sim-" + orderIds.incrementAndGet(), intent);
+        boolean buy = intent.getSide() == OrderSide.BUY;
+
+        synchronized (book) {
+            if (buy && intent.getLimitPrice() >= book.ask) {
+                order.filledQty = Math.min(intent.getQuantity(), book.askSize * 100);
+                order.filledPrice = book.ask;
+            } else if (!buy && intent.getLimitPrice() <= book.bid) {
+                order.filledQty = Math.min(intent.getQuantity(), book.bidSize * 100);
+                order.filledPrice = book.bid;
+            }
+        }
+
+        if (partial && order.filledQty > 1) {
+            order.filledQty = order.filledQty / 2;
+        }
+
+        if (order.filledQty > 0) {
+            filledOrders.incrementAndGet();
+            applyFill(intent.getSymbol(), buy, order.filledQty, order.filledPrice);
+        }
+
+        if (order.filledQty == intent.getQuantity()) {
+            publishUpdate(order, OrderUpdateType.FILL);
+        } else if (isImmediateOrCancel()) {
+            if (order.filledQty > 0) {
+                publishUpdate(order, OrderUpdateType.PARTIAL_FILL);
+            }
+            publishUpdate(order, OrderUpdateType.CANCELLED);
+        } else {
+            openOrders.put(order.orderId, order);
+            publishUpdate(order, order.filledQty > 0 ? OrderUpdateType.PARTIAL_FILL
+                            : OrderUpdateType.NEW);
+        }
+
+        return order.orderId;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#cancelOrder(java.lang.String)
+     */
+    @Override
+    public boolean cancelOrder(String orderId) {
+        SimulatedOrder order = openOrders.remove(orderId);
+
+        if (order == null) {
+            return false;
+        }
+
+        publishUpdate(order, OrderUpdateType.CANCELLED);
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#addOrderUpdateListener(io.github.
+     * mainstringargs.alpaca.hftish.OrderUpdateListener)
+     */
+    @Override
+    public void addOrderUpdateListener(OrderUpdateListener listener) {
+        orderUpdateListeners.add(listener);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see io.github.mainstringargs.alpaca.hftish.Broker#removeOrderUpdateListener(io.github.
+     * mainstringargs.alpaca.hftish.OrderUpdateListener)
+     */
+    @Override
+    public void removeOrderUpdateListener(OrderUpdateListener listener) {
+        orderUpdateListeners.remove(listener);
+    }
+
+    /**
+     * Applies a fill to the simulated account.
+     *
+     * @param symbol the symbol
+     * @param buy the buy
+     * @param qty the qty
+     * @param price the price, in ticks
+     */
+    private void applyFill(String symbol, boolean buy, long qty, long price) {
+        long signedQty = buy ? qty : -qty;
+        buyingPowerCents.addAndGet(-signedQty * Ticks.toCents(price));
+
+        synchronized (positions) {
+            Long held = positions.get(symbol);
+            positions.put(symbol, (held == null ? 0 : held) + signedQty);
+        }
+    }
+
+    /**
+     * Publishes an order update on the update thread.
+     *
+     * @param order the order
+     * @param type the type
+     */
+    private void publishUpdate(final SimulatedOrder order, final OrderUpdateType type) {
+        final long filledQty = order.filledQty;
+
+        updatePublisher.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                OrderIntent intent = order.intent;
+
+                for (OrderUpdateListener listener : orderUpdateListeners) {
+                    listener.onOrderUpdate(intent.getSymbol(), type, order.orderId,
+                                    intent.getSide(), intent.getQuantity(), filledQty,
+                                    intent.getLimitPrice(), order.filledPrice);
+                }
+            }
+        });
+    }
+
+    /**
+     * Logs what the exchange published and how it handled orders.
+     */
+    public void logStatistics() {
+        long events = publishedEvents.get();
+        long end = stopNanos == 0 ? System.nanoTime() : stopNanos;
+        double seconds = (end - startNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+
+        LOGGER.info("Simulated exchange: published " + events + " events in "
+                        + String.format("%.1f", seconds) + "s ("
+                        + (seconds <= 0 ? 0 : (long) (events / seconds)) + " events/s); "
+                        + orderIds.get() + " orders accepted, " + rejectedOrders.get()
+                        + " rejected, " + filledOrders.get() + " filled; positions "
+                        + getPositions());
+    }
+
+    /**
+     * The simulated top of book for one symbol.
+     */
+    private static class Book {
+
+        /** The symbol. */
+        final String symbol;
+
+        /** The market time in milliseconds. */
+        long time = System.currentTimeMillis();
+
+        /** The bid, in ticks. */
+        long bid = 10 * Ticks.PER_DOLLAR;
+
+        /** The ask, in ticks. */
+        long ask = bid + Ticks.PER_CENT;
+
+        /** The bid size, in round lots. */
+        long bidSize = 10;
+
+        /** The ask size, in round lots. */
+        long askSize = 10;
+
+        /**
+         * Instantiates a new book.
+         *
+         * @param symbol the symbol
+         */
+        Book(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    /**
+     * An order the exchange has accepted.
+     */
+    private static class SimulatedOrder {
+
+        /** The order id. */
+        final String orderId;
+
+        /** The intent. */
+        final OrderIntent intent;
+
+        /** The filled qty. */
+        long filledQty;
+
+        /** The filled price, in ticks. */
+        long filledPrice;
+
+        /**
+         * Instantiates a new simulated order.
+         *
+         * @param orderId the order id
+         * @param intent the intent
+         */
+        SimulatedOrder(String orderId, OrderIntent intent) {
+            this.orderId = orderId;
+            this.intent = intent;
+        }
+    }
+
+}
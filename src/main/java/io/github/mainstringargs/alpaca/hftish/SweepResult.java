@@ -0,0 +1,109 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The outcome of backtesting one set of strategy parameters. Results order best first: by P&amp;L,
+ * then by fill rate.
+ */
+public class SweepResult implements Comparable<SweepResult> {
+
+    /** The algo config. */
+    private final AlgoConfig algoConfig;
+
+    /** The profit and loss. */
+    private final double profitAndLoss;
+
+    /** The order count. */
+    private final long orderCount;
+
+    /** The fill count. */
+    private final long fillCount;
+
+    /**
+     * Instantiates a new sweep result.
+     *
+     * @param algoConfig the algo config
+     * @param profitAndLoss the profit and loss
+     * @param orderCount the order count
+     * @param fillCount the fill count
+     */
+    public SweepResult(AlgoConfig algoConfig, double profitAndLoss, long orderCount,
+                    long fillCount) {
+        this.algoConfig = algoConfig;
+        this.profitAndLoss = profitAndLoss;
+        this.orderCount = orderCount;
+        this.fillCount = fillCount;
+    }
+
+    /**
+     * Gets the algo config.
+     *
+     * @return the algo config
+     */
+    public AlgoConfig getAlgoConfig() {
+        return algoConfig;
+    }
+
+    /**
+     * Gets the profit and loss.
+     *
+     * @return the profit and loss
+     */
+    public double getProfitAndLoss() {
+        return profitAndLoss;
+    }
+
+    /**
+     * Gets the order count.
+     *
+     * @return the order count
+     */
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    /**
+     * Gets the fill count.
+     *
+     * @return the fill count
+     */
+    public long getFillCount() {
+        return fillCount;
+    }
+
+    /**
+     * Gets the fraction of orders that filled at least partially.
+     *
+     * @return the fill rate
+     */
+    public double getFillRate() {
+        return orderCount == 0 ? 0 : fillCount / (double) orderCount;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Comparable#compareTo(java.lang.Object)
+     */
+    @Override
+    public int compareTo(SweepResult other) {
+        int byProfit = Double.compare(other.profitAndLoss, profitAndLoss);
+        return byProfit != 0 ? byProfit : Double.compare(other.getFillRate(), getFillRate());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "SweepResult [minTradeSize=" + algoConfig.getMinTradeSize() + ", imbalanceRatio="
+                        + algoConfig.getImbalanceRatio() + ", quoteGuardMillis="
+                        + algoConfig.getQuoteGuardMillis() + ", lotSize="
+                        + algoConfig.getLotSize() + ", profitAndLoss="
+                        + String.format("%.2f", profitAndLoss) + ", orderCount=" + orderCount
+                        + ", fillCount=" + fillCount + ", fillRate="
+                        + String.format("%.3f", getFillRate()) + "]";
+    }
+
+}
@@ -0,0 +1,158 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The SweepRunner backtests every combination of the swept strategy parameters over one recorded
+ * tape. Each combination gets its own {@link ReplayEngine}, and so its own {@link Algorithm},
+ * {@link Quote}, {@link Position} and {@link SimulatedBroker}, while all of them read the same
+ * mapped {@link TickStore}. The combinations are split across a fork/join pool.
+ */
+public class SweepRunner {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(SweepRunner.class);
+
+    /** The symbol. */
+    private final String symbol;
+
+    /** The algo config. */
+    private final AlgoConfig algoConfig;
+
+    /** The tick store. */
+    private final TickStore store;
+
+    /** The configurations to backtest. */
+    private final List<AlgoConfig> configs = new ArrayList<AlgoConfig>();
+
+    /**
+     * Instantiates a new sweep runner over the grid of the config's swept parameters.
+     *
+     * @param symbol the symbol
+     * @param algoConfig the algo config
+     * @param store the store
+     */
+    public SweepRunner(String symbol, AlgoConfig algoConfig, TickStore store) {
+        this.symbol = symbol;
+        this.algoConfig = algoConfig;
+        this.store = store;
+
+        for (long minTradeSize : algoConfig.getSweepMinTradeSizes()) {
+            for (double imbalanceRatio : algoConfig.getSweepImbalanceRatios()) {
+                for (long quoteGuardMillis : algoConfig.getSweepQuoteGuardMillis()) {
+                    for (long lotSize : algoConfig.getSweepLotSizes()) {
+                        configs.add(algoConfig.withStrategy(minTradeSize, imbalanceRatio,
+                                        quoteGuardMillis, lotSize));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Backtests every configuration.
+     *
+     * @param parallelism the number of threads
+     * @return the results, best first
+     */
+    public List<SweepResult> run(int parallelism) {
+        SweepResult[] results = new SweepResult[configs.size()];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long start = System.nanoTime();
+
+        try {
+            pool.invoke(new Sweep(results, 0, results.length));
+        } finally {
+            pool.shutdown();
+        }
+
+        LOGGER.info("Swept " + results.length + " configurations of " + symbol + " over "
+                        + store.getRecordCount() + " ticks on " + parallelism + " threads in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+
+        List<SweepResult> ranked = new ArrayList<SweepResult>(Arrays.asList(results));
+        Collections.sort(ranked);
+        return ranked;
+    }
+
+    /**
+     * Backtests one configuration.
+     *
+     * @param config the config
+     * @return the result
+     */
+    private SweepResult backtest(AlgoConfig config) {
+        ReplayEngine replayEngine = new ReplayEngine(symbol, config, algoConfig.getReplayCash());
+        replayEngine.replay(store);
+
+        SimulatedBroker broker = replayEngine.getBroker();
+        return new SweepResult(config, broker.getProfitAndLoss(), broker.getOrderCount(),
+                        broker.getFillCount());
+    }
+
+    /**
+     * Logs the results in rank order.
+     *
+     * @param results the results
+     */
+    public void logResults(List<SweepResult> results) {
+        for (int rank = 0; rank < results.size(); rank++) {
+            LOGGER.info("#" + (rank + 1) + " " + results.get(rank));
+        }
+    }
+
+    /**
+     * Backtests a range of the configurations, splitting it in half until one is left.
+     */
+    private class Sweep extends RecursiveAction {
+
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+
+        /** The results. */
+        private final SweepResult[] results;
+
+        /** The first configuration. */
+        private final int from;
+
+        /** The end of the range. */
+        private final int to;
+
+        /**
+         * Instantiates a new sweep.
+         *
+         * @param results the results
+         * @param from the first configuration
+         * @param to the end of the range
+         */
+        Sweep(SweepResult[] results, int from, int to) {
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = backtest(configs.get(from));
+            } else if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Sweep(results, from, mid), new Sweep(results, mid, to));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * SymbolWorkers is a fixed set of {@link EventLoop}s. Every symbol is pinned to one of them by
+ * hash, so all events for a symbol run in order on the same thread and its {@link Algorithm},
+ * {@link Quote} and {@link Position} never need a lock.
+ */
+public class SymbolWorkers {
+
+    /** The workers. */
+    private final EventLoop[] workers;
+
+    /**
+     * Instantiates a new symbol workers.
+     *
+     * @param count the number of worker threads
+     * @param waitStrategy how idle workers wait for events
+     * @param latencyStats the latency stats trade dispatch is recorded to, or null
+     */
+    public SymbolWorkers(int count, WaitStrategy waitStrategy, LatencyStats latencyStats) {
+        workers = new EventLoop[count];
+
+        for (int i = 0; i < count; i++) {
+            workers[i] = new EventLoop("symbol-worker-" + i, EventLoop.DEFAULT_CAPACITY,
+                            waitStrategy, latencyStats);
+        }
+    }
+
+    /**
+     * Gets the index of the worker a symbol is pinned to.
+     *
+     * @param symbol the symbol
+     * @return the worker index
+     */
+    public int workerFor(String symbol) {
+        return Math.floorMod(symbol.hashCode(), workers.length);
+    }
+
+    /**
+     * Gets the event loop a symbol is pinned to.
+     *
+     * @param symbol the symbol
+     * @return the event loop
+     */
+    public EventLoop loopFor(String symbol) {
+        return workers[workerFor(symbol)];
+    }
+
+    /**
+     * Gets the number of workers.
+     *
+     * @return the size
+     */
+    public int size() {
+        return workers.length;
+    }
+
+    /**
+     * Gets the number of publishes, across all workers, that had to wait for room.
+     *
+     * @return the stall count
+     */
+    public long getStallCount() {
+        long stallCount = 0;
+
+        for (EventLoop worker : workers) {
+            stallCount += worker.getStallCount();
+        }
+
+        return stallCount;
+    }
+
+    /**
+     * Gets the number of events published, across all workers, but not yet handled.
+     *
+     * @return the queue depth
+     */
+    public long getQueueDepth() {
+        long queueDepth = 0;
+
+        for (EventLoop worker : workers) {
+            queueDepth += worker.getQueueDepth();
+        }
+
+        return queueDepth;
+    }
+
+    /**
+     * Stops the workers.
+     */
+    public void shutdown() {
+        for (EventLoop worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of a tick file: a sequence of fixed-width little-endian records, one per quote or
+ * trade, for a single symbol in the order they were received. Prices are stored as {@link Ticks}
+ * so they round-trip exactly.
+ *
+ * <pre>
+ * offset  size  quote      trade
+ *      0     1  'Q'        'T'
+ *      8     8  time       time
+ *     16     8  bid        price
+ *     24     8  ask        0
+ *     32     4  bid size   size
+ *     36     4  ask size   0
+ * </pre>
+ *
+ * A record with a zero type byte is padding, and marks the end of the data in a segment file that
+ * was not truncated to its length.
+ * <p>
+ * A recorded segment may have an index file beside it, holding one fixed-width little-endian
+ * entry for every {@link #INDEX_INTERVAL} records. Receive order is not strictly time order, so
+ * each entry holds the latest time seen up to that record, which keeps the index sorted: every
+ * record before an entry is no later than its time.
+ *
+ * <pre>
+ * offset  size
+ *      0     8  latest time up to the record
+ *      8     8  record number
+ * </pre>
+ */
+public final class TickFile {
+
+    /** The Constant RECORD_SIZE. */
+    public static final int RECORD_SIZE = 40;
+
+    /** The Constant QUOTE. */
+    public static final byte QUOTE = 'Q';
+
+    /** The Constant TRADE. */
+    public static final byte TRADE = 'T';
+
+    /** The Constant TYPE_OFFSET. */
+    public static final int TYPE_OFFSET = 0;
+
+    /** The Constant TIME_OFFSET. */
+    public static final int TIME_OFFSET = 8;
+
+    /** The Constant PRICE1_OFFSET. */
+    public static final int PRICE1_OFFSET = 16;
+
+    /** The Constant PRICE2_OFFSET. */
+    public static final int PRICE2_OFFSET = 24;
+
+    /** The Constant SIZE1_OFFSET. */
+    public static final int SIZE1_OFFSET = 32;
+
+    /** The Constant SIZE2_OFFSET. */
+    public static final int SIZE2_OFFSET = 36;
+
+    /** The Constant INDEX_INTERVAL. */
+    public static final int INDEX_INTERVAL = 1024;
+
+    /** The Constant INDEX_ENTRY_SIZE. */
+    public static final int INDEX_ENTRY_SIZE = 16;
+
+    /** The Constant SEGMENT_SUFFIX. */
+    public static final String SEGMENT_SUFFIX = ".ticks";
+
+    /** The Constant INDEX_SUFFIX. */
+    public static final String INDEX_SUFFIX = ".idx";
+
+    /**
+     * Not instantiable.
+     */
+    private TickFile() {}
+
+    /**
+     * Writes a quote record at the buffer's position and advances it.
+     *
+     * @param buffer the buffer
+     * @param time the time
+     * @param bidPrice the bid price, in ticks
+     * @param askPrice the ask price, in ticks
+     * @param bidSize the bid size
+     * @param askSize the ask size
+     */
+    public static void putQuote(ByteBuffer buffer, long time, long bidPrice, long askPrice,
+                    long bidSize, long askSize) {
+        int base = buffer.position();
+        buffer.put(base + TYPE_OFFSET, QUOTE);
+        buffer.putLong(base + TIME_OFFSET, time);
+        buffer.putLong(base + PRICE1_OFFSET, bidPrice);
+        buffer.putLong(base + PRICE2_OFFSET, askPrice);
+        buffer.putInt(base + SIZE1_OFFSET, (int) bidSize);
+        buffer.putInt(base + SIZE2_OFFSET, (int) askSize);
+        buffer.position(base + RECORD_SIZE);
+    }
+
+    /**
+     * Writes a trade record at the buffer's position and advances it.
+     *
+     * @param buffer the buffer
+     * @param time the time
+     * @param price the price, in ticks
+     * @param size the size
+     */
+    public static void putTrade(ByteBuffer buffer, long time, long price, long size) {
+        int base = buffer.position();
+        buffer.put(base + TYPE_OFFSET, TRADE);
+        buffer.putLong(base + TIME_OFFSET, time);
+        buffer.putLong(base + PRICE1_OFFSET, price);
+        buffer.putLong(base + PRICE2_OFFSET, 0L);
+        buffer.putInt(base + SIZE1_OFFSET, (int) size);
+        buffer.putInt(base + SIZE2_OFFSET, 0);
+        buffer.position(base + RECORD_SIZE);
+    }
+
+}
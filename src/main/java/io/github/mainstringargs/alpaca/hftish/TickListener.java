@@ -0,0 +1,30 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * The listener interface for quotes and trades read back from a {@link TickStore}. The values are
+ * passed as they are stored, in the shape {@link Algorithm#onQuote(long, long, long, long, long)}
+ * and {@link Algorithm#onTrade(long, long, long, long)} take them.
+ */
+public interface TickListener {
+
+    /**
+     * On quote.
+     *
+     * @param time the quote time
+     * @param bidPrice the bid price, in ticks
+     * @param askPrice the ask price, in ticks
+     * @param bidSize the bid size
+     * @param askSize the ask size
+     */
+    void onQuote(long time, long bidPrice, long askPrice, long bidSize, long askSize);
+
+    /**
+     * On trade.
+     *
+     * @param time the trade time
+     * @param price the price, in ticks
+     * @param size the size
+     */
+    void onTrade(long time, long price, long size);
+
+}
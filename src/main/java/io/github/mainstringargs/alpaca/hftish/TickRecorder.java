@@ -0,0 +1,519 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The TickRecorder captures the tape. It appends quotes and trades to memory-mapped
+ * {@link TickFile} segments, one series per symbol under a directory per day, so a segment can be
+ * replayed as it is. Each segment gets an index file when it is closed, either because it is full
+ * or because the recorder is rolled at the close.
+ * <p>
+ * Quotes and trades are handed over through a preallocated ring of their own, which a writer
+ * thread copies into the segments, so recording costs the market data thread a few array stores.
+ * The tape is never dropped: if the writer falls a full ring behind, the thread recording waits
+ * for room and the stall is counted. Copying into a mapped segment only touches the page cache, so
+ * the writer falls behind only when a new segment is slow to open.
+ */
+public class TickRecorder implements Closeable {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(TickRecorder.class);
+
+    /** The Constant SEGMENT_RECORDS. */
+    public static final int SEGMENT_RECORDS = 1 << 20;
+
+    /** The Constant DEFAULT_CAPACITY. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** The number of longs in a ring record. */
+    private static final int RECORD_LONGS = 5;
+
+    /** The Constant TIME. */
+    private static final int TIME = 0;
+
+    /** The Constant PRICE1. */
+    private static final int PRICE1 = 1;
+
+    /** The Constant PRICE2. */
+    private static final int PRICE2 = 2;
+
+    /** The Constant SIZE1. */
+    private static final int SIZE1 = 3;
+
+    /** The Constant SIZE2. */
+    private static final int SIZE2 = 4;
+
+    /** The directory the day directories are created in. */
+    private final File directory;
+
+    /** The open segments by symbol. */
+    private final Map<String, Segment> segments = new HashMap<String, Segment>();
+
+    /** The number of records written since the last roll. */
+    private long recordCount;
+
+    /** Whether recording stopped after an I/O error, until the next roll. */
+    private boolean failed;
+
+    /** The mask from a sequence to its slot. */
+    private final int mask;
+
+    /** The ring record fields, RECORD_LONGS per slot. */
+    private final long[] records;
+
+    /** The ring record types. */
+    private final byte[] types;
+
+    /** The ring record symbols. */
+    private final String[] symbols;
+
+    /** The sequence each slot was last published with. */
+    private final AtomicLongArray published;
+
+    /** The next sequence to claim. */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /** The next sequence to write. */
+    private final AtomicLong written = new AtomicLong();
+
+    /** The number of records that waited for room in the ring. */
+    private final AtomicLong stalls = new AtomicLong();
+
+    /** The writer thread. */
+    private Thread writerThread;
+
+    /** The running flag. */
+    private volatile boolean running;
+
+    /**
+     * Instantiates a new tick recorder with the default ring capacity.
+     *
+     * @param directory the directory
+     */
+    public TickRecorder(File directory) {
+        this(directory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Instantiates a new tick recorder.
+     *
+     * @param directory the directory
+     * @param capacity the number of records the ring holds, rounded up to a power of two
+     */
+    public TickRecorder(File directory, int capacity) {
+        this.directory = directory;
+
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        mask = size - 1;
+        records = new long[size * RECORD_LONGS];
+        types = new byte[size];
+        symbols = new String[size];
+        published = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Records a quote, waiting for room if the writer is a full ring behind.
+     *
+     * @param symbol the symbol
+     * @param time the time
+     * @param bidPrice the bid price, in ticks
+     * @param askPrice the ask price, in ticks
+     * @param bidSize the bid size
+     * @param askSize the ask size
+     */
+    public void recordQuote(String symbol, long time, long bidPrice, long askPrice, long bidSize,
+                    long askSize) {
+        record(TickFile.QUOTE, symbol, time, bidPrice, askPrice, bidSize, askSize);
+    }
+
+    /**
+     * Records a trade, waiting for room if the writer is a full ring behind.
+     *
+     * @param symbol the symbol
+     * @param time the time
+     * @param price the price, in ticks
+     * @param size the size
+     */
+    public void recordTrade(String symbol, long time, long price, long size) {
+        record(TickFile.TRADE, symbol, time, price, 0, size, 0);
+    }
+
+    /**
+     * Claims a slot, waiting for the writer to free one if needed, fills it and publishes it.
+     *
+     * @param type the type
+     * @param symbol the symbol
+     * @param time the time
+     * @param price1 the first price
+     * @param price2 the second price
+     * @param size1 the first size
+     * @param size2 the second size
+     */
+    private void record(byte type, String symbol, long time, long price1, long price2,
+                    long size1, long size2) {
+        boolean stalled = false;
+        long sequence;
+
+        while (true) {
+            sequence = claimed.get();
+
+            if (sequence - written.get() > mask) {
+                if (!stalled) {
+                    stalls.incrementAndGet();
+                    stalled = true;
+                }
+                Thread.yield();
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        int slot = (int) sequence & mask;
+        int base = slot * RECORD_LONGS;
+
+        records[base + TIME] = time;
+        records[base + PRICE1] = price1;
+        records[base + PRICE2] = price2;
+        records[base + SIZE1] = size1;
+        records[base + SIZE2] = size2;
+        types[slot] = type;
+        symbols[slot] = symbol;
+
+        published.lazySet(slot, sequence);
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        writerThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (running) {
+                    if (drain() == 0) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                }
+                drain();
+            }
+        }, "tick-recorder");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stops the writer thread after it has written what was recorded.
+     */
+    public void stop() {
+        running = false;
+
+        try {
+            if (writerThread != null) {
+                writerThread.join();
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Waits until the writer has written everything recorded so far.
+     */
+    public void awaitWritten() {
+        long sequence = claimed.get();
+
+        while (running && written.get() < sequence) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Writes every published record in order to the segments.
+     *
+     * @return the number of records written
+     */
+    int drain() {
+        long sequence = written.get();
+        int count = 0;
+
+        while (true) {
+            int slot = (int) sequence & mask;
+
+            if (published.get(slot) != sequence) {
+                break;
+            }
+
+            int base = slot * RECORD_LONGS;
+
+            if (types[slot] == TickFile.QUOTE) {
+                writeQuote(symbols[slot], records[base + TIME], records[base + PRICE1],
+                                records[base + PRICE2], records[base + SIZE1],
+                                records[base + SIZE2]);
+            } else {
+                writeTrade(symbols[slot], records[base + TIME], records[base + PRICE1],
+                                records[base + SIZE1]);
+            }
+
+            symbols[slot] = null;
+            sequence++;
+            count++;
+            written.lazySet(sequence);
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the number of records that had to wait for room in the ring.
+     *
+     * @return the stall count
+     */
+    public long getStallCount() {
+        return stalls.get();
+    }
+
+    /**
+     * Appends a quote.
+     *
+     * @param symbol the symbol
+     * @param time the time
+     * @param bidPrice the bid price, in ticks
+     * @param askPrice the ask price, in ticks
+     * @param bidSize the bid size
+     * @param askSize the ask size
+     */
+    private synchronized void writeQuote(String symbol, long time, long bidPrice, long askPrice,
+                    long bidSize, long askSize) {
+        Segment segment = segmentFor(symbol);
+
+        if (segment != null) {
+            segment.index(time);
+            TickFile.putQuote(segment.buffer, time, bidPrice, askPrice, bidSize, askSize);
+            recordCount++;
+        }
+    }
+
+    /**
+     * Appends a trade.
+     *
+     * @param symbol the symbol
+     * @param time the time
+     * @param price the price, in ticks
+     * @param size the size
+     */
+    private synchronized void writeTrade(String symbol, long time, long price, long size) {
+        Segment segment = segmentFor(symbol);
+
+        if (segment != null) {
+            segment.index(time);
+            TickFile.putTrade(segment.buffer, time, price, size);
+            recordCount++;
+        }
+    }
+
+    /**
+     * Gets the symbol's open segment with room for a record, opening the next one if needed.
+     *
+     * @param symbol the symbol
+     * @return the segment, or null if recording failed
+     */
+    private Segment segmentFor(String symbol) {
+        Segment segment = segments.get(symbol);
+
+        if (segment != null && segment.buffer.hasRemaining()) {
+            return segment;
+        }
+
+        if (failed) {
+            return null;
+        }
+
+        try {
+            if (segment != null) {
+                segment.close();
+            }
+
+            segment = new Segment(nextSegmentFile(symbol));
+            segments.put(symbol, segment);
+            return segment;
+        } catch (IOException e) {
+            e.printStackTrace();
+            failed = true;
+            return null;
+        }
+    }
+
+    /**
+     * Picks the first unused segment file for the symbol in today's directory.
+     *
+     * @param symbol the symbol
+     * @return the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private File nextSegmentFile(String symbol) throws IOException {
+        File day = new File(directory, LocalDate.now().toString());
+
+        if (!day.isDirectory() && !day.mkdirs()) {
+            throw new IOException("Could not create " + day);
+        }
+
+        for (int number = 0;; number++) {
+            File file = new File(day, String.format("%s.%04d%s", symbol, number,
+                            TickFile.SEGMENT_SUFFIX));
+
+            if (!file.exists()) {
+                return file;
+            }
+        }
+    }
+
+    /**
+     * Closes every open segment, so the next record for each symbol starts a new segment in the
+     * directory for the day it arrives on.
+     */
+    public synchronized void roll() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (recordCount > 0) {
+            LOGGER.info("Recorded " + recordCount + " ticks for " + segments.size()
+                            + " symbols to " + directory);
+        }
+
+        segments.clear();
+        recordCount = 0;
+        failed = false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() {
+        stop();
+        roll();
+    }
+
+    /**
+     * A segment file mapped for writing, and the index entries made so far.
+     */
+    private static class Segment {
+
+        /** The file. */
+        private final File file;
+
+        /** The channel. */
+        private final FileChannel channel;
+
+        /** The mapped buffer, positioned at the next record. */
+        private final MappedByteBuffer buffer;
+
+        /** The index, latest time and record number per entry. */
+        private final ByteBuffer index = ByteBuffer
+                        .allocate(SEGMENT_RECORDS / TickFile.INDEX_INTERVAL
+                                        * TickFile.INDEX_ENTRY_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+
+        /** The latest time written. */
+        private long latestTime = Long.MIN_VALUE;
+
+        /**
+         * Creates and maps a segment file.
+         *
+         * @param file the file
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @SuppressWarnings("resource")
+        Segment(File file) throws IOException {
+            this.file = file;
+
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                            (long) SEGMENT_RECORDS * TickFile.RECORD_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Makes an index entry if the next record starts an interval.
+         *
+         * @param time the time of the next record
+         */
+        void index(long time) {
+            latestTime = Math.max(latestTime, time);
+
+            int record = buffer.position() / TickFile.RECORD_SIZE;
+
+            if (record % TickFile.INDEX_INTERVAL == 0) {
+                index.putLong(latestTime);
+                index.putLong(record);
+            }
+        }
+
+        /**
+         * Writes the index, and truncates the segment to the records written where the platform
+         * allows a mapped file to be truncated.
+         *
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        void close() throws IOException {
+            long length = buffer.position();
+            buffer.force();
+
+            String name = file.getName();
+            File indexFile = new File(file.getParentFile(),
+                            name.substring(0, name.length() - TickFile.SEGMENT_SUFFIX.length())
+                                            + TickFile.INDEX_SUFFIX);
+
+            try (FileChannel indexChannel = new FileOutputStream(indexFile).getChannel()) {
+                index.flip();
+                while (index.hasRemaining()) {
+                    indexChannel.write(index);
+                }
+            }
+
+            try {
+                channel.truncate(length);
+            } catch (IOException e) {
+                // The zeroed tail reads as padding
+            }
+
+            channel.close();
+        }
+    }
+
+}
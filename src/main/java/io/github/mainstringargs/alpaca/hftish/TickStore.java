@@ -0,0 +1,350 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The TickStore reads a symbol's {@link TickFile}s back. Every file is memory-mapped read-only and
+ * decoded in place, and each record is handed straight to a {@link TickListener} as primitives.
+ * <p>
+ * A sparse time index, one entry per {@link TickFile#INDEX_INTERVAL} records, is loaded from each
+ * segment's index file, or built by scanning the segment if it has none. Starting a replay at a
+ * given time is a binary search of that index followed by a scan of at most one interval.
+ * <p>
+ * Replays only read the mappings, so any number of threads may replay one store at once.
+ */
+public class TickStore {
+
+    /** The largest mapping, a whole number of records under 2GB. */
+    private static final long CHUNK_SIZE =
+                    (Integer.MAX_VALUE / TickFile.RECORD_SIZE) * (long) TickFile.RECORD_SIZE;
+
+    /** The mapped segments. */
+    private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+
+    /** The number of records of data in each segment. */
+    private int[] recordCounts = new int[16];
+
+    /** The index entries' latest times, which never decrease. */
+    private long[] indexTimes = new long[1024];
+
+    /** The index entries' segments. */
+    private int[] indexSegments = new int[1024];
+
+    /** The index entries' records. */
+    private int[] indexRecords = new int[1024];
+
+    /** The number of index entries. */
+    private int indexSize;
+
+    /** The total record count. */
+    private long recordCount;
+
+    /**
+     * Opens the files, in order.
+     *
+     * @param files the files
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public TickStore(List<File> files) throws IOException {
+        for (File file : files) {
+            map(file);
+        }
+    }
+
+    /**
+     * Opens the files for a symbol, in order. A directory is taken to be a day the recorder wrote,
+     * and stands for all of the symbol's segments in it.
+     *
+     * @param files the files
+     * @param symbol the symbol
+     * @return the tick store
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static TickStore open(List<File> files, String symbol) throws IOException {
+        List<File> segmentFiles = new ArrayList<File>();
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                segmentFiles.addAll(segmentFiles(file, symbol));
+            } else {
+                segmentFiles.add(file);
+            }
+        }
+
+        return new TickStore(segmentFiles);
+    }
+
+    /**
+     * Lists a symbol's segment files in a day directory, in order.
+     *
+     * @param directory the directory
+     * @param symbol the symbol
+     * @return the files
+     */
+    public static List<File> segmentFiles(File directory, final String symbol) {
+        File[] files = directory.listFiles(new FileFilter() {
+
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return file.isFile() && name.startsWith(symbol + ".")
+                                && name.endsWith(TickFile.SEGMENT_SUFFIX);
+            }
+        });
+
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Maps a file as one or more segments and indexes them.
+     *
+     * @param file the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void map(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                        FileChannel channel = randomAccessFile.getChannel()) {
+
+            long size = channel.size() - channel.size() % TickFile.RECORD_SIZE;
+            boolean indexed = size <= CHUNK_SIZE && loadIndex(file, size);
+
+            for (long offset = 0; offset < size; offset += CHUNK_SIZE) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                                Math.min(CHUNK_SIZE, size - offset))
+                                .order(ByteOrder.LITTLE_ENDIAN);
+                addSegment(buffer);
+
+                if (!indexed) {
+                    buildIndex(segments.size() - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a mapped segment, counting the records before any zeroed padding.
+     *
+     * @param buffer the buffer
+     */
+    private void addSegment(ByteBuffer buffer) {
+        // Data is contiguous from the start, so the end of it can be found by bisection
+        int low = 0;
+        int high = buffer.limit() / TickFile.RECORD_SIZE;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (buffer.get(mid * TickFile.RECORD_SIZE + TickFile.TYPE_OFFSET) != 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        if (segments.size() == recordCounts.length) {
+            recordCounts = Arrays.copyOf(recordCounts, recordCounts.length * 2);
+        }
+
+        recordCounts[segments.size()] = low;
+        segments.add(buffer);
+        recordCount += low;
+    }
+
+    /**
+     * Loads the index file written beside a recorded segment, for the segment about to be added.
+     *
+     * @param file the segment file
+     * @param size the segment size
+     * @return true, if there was an index file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private boolean loadIndex(File file, long size) throws IOException {
+        String name = file.getName();
+
+        if (!name.endsWith(TickFile.SEGMENT_SUFFIX)) {
+            return false;
+        }
+
+        File indexFile = new File(file.getParentFile(),
+                        name.substring(0, name.length() - TickFile.SEGMENT_SUFFIX.length())
+                                        + TickFile.INDEX_SUFFIX);
+
+        if (!indexFile.isFile()) {
+            return false;
+        }
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile, "r");
+                        FileChannel channel = randomAccessFile.getChannel()) {
+            int entries = (int) (channel.size() / TickFile.INDEX_ENTRY_SIZE);
+            ByteBuffer index = ByteBuffer.allocate(entries * TickFile.INDEX_ENTRY_SIZE)
+                            .order(ByteOrder.LITTLE_ENDIAN);
+
+            while (index.hasRemaining() && channel.read(index) >= 0) {
+                // Keep reading
+            }
+            index.flip();
+
+            long records = size / TickFile.RECORD_SIZE;
+
+            while (index.remaining() >= TickFile.INDEX_ENTRY_SIZE) {
+                long time = index.getLong();
+                long record = index.getLong();
+
+                if (record < records) {
+                    addIndexEntry(time, segments.size(), (int) record);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Builds the index of a segment by scanning it.
+     *
+     * @param segment the segment
+     */
+    private void buildIndex(int segment) {
+        ByteBuffer buffer = segments.get(segment);
+        long latestTime = Long.MIN_VALUE;
+
+        for (int record = 0; record < recordCounts[segment]; record++) {
+            latestTime = Math.max(latestTime,
+                            buffer.getLong(record * TickFile.RECORD_SIZE + TickFile.TIME_OFFSET));
+
+            if (record % TickFile.INDEX_INTERVAL == 0) {
+                addIndexEntry(latestTime, segment, record);
+            }
+        }
+    }
+
+    /**
+     * Appends an index entry, keeping the times in order across segments.
+     *
+     * @param time the latest time up to the record
+     * @param segment the segment
+     * @param record the record
+     */
+    private void addIndexEntry(long time, int segment, int record) {
+        if (indexSize == indexTimes.length) {
+            indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+            indexSegments = Arrays.copyOf(indexSegments, indexSize * 2);
+            indexRecords = Arrays.copyOf(indexRecords, indexSize * 2);
+        }
+
+        indexTimes[indexSize] = indexSize == 0 ? time : Math.max(indexTimes[indexSize - 1], time);
+        indexSegments[indexSize] = segment;
+        indexRecords[indexSize] = record;
+        indexSize++;
+    }
+
+    /**
+     * Finds the last index entry every record up to which is before the time.
+     *
+     * @param time the time
+     * @return the entry, or -1 if the first record may already be at or after the time
+     */
+    private int entryBefore(long time) {
+        int low = 0;
+        int high = indexSize;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (indexTimes[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low - 1;
+    }
+
+    /**
+     * Replays every record.
+     *
+     * @param listener the listener
+     * @return the number of records replayed
+     */
+    public long replay(TickListener listener) {
+        return replay(Long.MIN_VALUE, Long.MAX_VALUE, listener);
+    }
+
+    /**
+     * Replays records in receive order, from the first at or after the from time up to the first
+     * at or after the to time.
+     *
+     * @param fromTime the from time
+     * @param toTime the to time
+     * @param listener the listener
+     * @return the number of records replayed
+     */
+    public long replay(long fromTime, long toTime, TickListener listener) {
+        int entry = entryBefore(fromTime);
+        int segment = entry < 0 ? 0 : indexSegments[entry];
+        int start = entry < 0 ? 0 : indexRecords[entry] * TickFile.RECORD_SIZE;
+        boolean started = false;
+        long count = 0;
+
+        for (; segment < segments.size(); segment++, start = 0) {
+            ByteBuffer buffer = segments.get(segment);
+            int limit = recordCounts[segment] * TickFile.RECORD_SIZE;
+
+            for (int base = start; base < limit; base += TickFile.RECORD_SIZE) {
+                long time = buffer.getLong(base + TickFile.TIME_OFFSET);
+
+                if (!started) {
+                    if (time < fromTime) {
+                        continue;
+                    }
+                    started = true;
+                }
+
+                if (time >= toTime) {
+                    return count;
+                }
+
+                byte type = buffer.get(base + TickFile.TYPE_OFFSET);
+
+                if (type == TickFile.QUOTE) {
+                    listener.onQuote(time, buffer.getLong(base + TickFile.PRICE1_OFFSET),
+                                    buffer.getLong(base + TickFile.PRICE2_OFFSET),
+                                    buffer.getInt(base + TickFile.SIZE1_OFFSET),
+                                    buffer.getInt(base + TickFile.SIZE2_OFFSET));
+                } else if (type == TickFile.TRADE) {
+                    listener.onTrade(time, buffer.getLong(base + TickFile.PRICE1_OFFSET),
+                                    buffer.getInt(base + TickFile.SIZE1_OFFSET));
+                }
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the number of records in the store.
+     *
+     * @return the record count
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+}
@@ -0,0 +1,125 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+/**
+ * Prices are carried as long ticks of a hundredth of a cent from the moment they are decoded, so
+ * level changes, spreads and price matches are exact integer compares. Only order entry and
+ * logging convert back to dollars.
+ */
+public final class Ticks {
+
+    /** The number of ticks per dollar. */
+    public static final long PER_DOLLAR = 10000;
+
+    /** The number of ticks per cent. */
+    public static final long PER_CENT = PER_DOLLAR / 100;
+
+    /**
+     * Not instantiable.
+     */
+    private Ticks() {}
+
+    /**
+     * Converts a dollar price to ticks.
+     *
+     * @param price the price
+     * @return the ticks
+     */
+    public static long fromPrice(double price) {
+        return Math.round(price * PER_DOLLAR);
+    }
+
+    /**
+     * Parses a dollar price to ticks. Plain decimals such as "12.3456" are parsed digit by digit
+     * without allocating, rounding half up past the fourth decimal place; anything else falls back
+     * to {@link Double#parseDouble(String)}.
+     *
+     * @param price the price
+     * @return the ticks, or 0 if the price is missing
+     */
+    public static long parse(String price) {
+        if (price == null) {
+            return 0;
+        }
+
+        int start = 0;
+        int end = price.length();
+
+        while (start < end && price.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && price.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        if (start == end) {
+            return 0;
+        }
+
+        boolean negative = price.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        long ticks = 0;
+        long scale = PER_DOLLAR;
+        boolean fraction = false;
+        boolean digits = false;
+
+        for (; i < end; i++) {
+            char c = price.charAt(i);
+
+            if (c == '.' && !fraction) {
+                fraction = true;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+
+                if (!fraction) {
+                    ticks = ticks * 10 + (c - '0') * PER_DOLLAR;
+                } else if (scale > 1) {
+                    scale /= 10;
+                    ticks += (c - '0') * scale;
+                } else {
+                    if (c >= '5') {
+                        ticks++;
+                    }
+                    break;
+                }
+            } else {
+                return fromPrice(Double.parseDouble(price.trim()));
+            }
+        }
+
+        // Validate anything after a rounding digit
+        for (i++; i < end; i++) {
+            char c = price.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return fromPrice(Double.parseDouble(price.trim()));
+            }
+        }
+
+        if (!digits) {
+            return fromPrice(Double.parseDouble(price.trim()));
+        }
+
+        return negative ? -ticks : ticks;
+    }
+
+    /**
+     * Converts ticks to a dollar price.
+     *
+     * @param ticks the ticks
+     * @return the price
+     */
+    public static double toPrice(long ticks) {
+        return ticks / (double) PER_DOLLAR;
+    }
+
+    /**
+     * Converts ticks to whole cents, rounding half up.
+     *
+     * @param ticks the ticks
+     * @return the cents
+     */
+    public static long toCents(long ticks) {
+        return Math.floorDiv(ticks + PER_CENT / 2, PER_CENT);
+    }
+
+}
@@ -0,0 +1,63 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How an {@link EventLoop} waits when its ring is empty, trading CPU for the latency of noticing
+ * the next event.
+ */
+public enum WaitStrategy {
+
+    /** Spin on the ring without ever giving up the core. Lowest latency; burns a core per loop. */
+    BUSY_SPIN,
+
+    /** Spin briefly, then yield the core to other runnable threads between checks. */
+    YIELD,
+
+    /**
+     * Spin and yield briefly, then park until a producer wakes the loop or {@link #PARK_NANOS}
+     * pass. Idles at close to no CPU.
+     */
+    PARK;
+
+    /** The number of empty checks spent spinning before yielding or parking. */
+    public static final int SPIN_TRIES = 100;
+
+    /** The number of empty checks spent yielding before parking. */
+    public static final int YIELD_TRIES = 100;
+
+    /** The longest a parked loop sleeps without being woken. */
+    public static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Waits once after an empty check of the ring.
+     *
+     * @param idleCount the number of empty checks in a row before this one
+     * @return the idle count for the next check
+     */
+    public int idle(int idleCount) {
+        if (this == BUSY_SPIN || idleCount < SPIN_TRIES) {
+            return idleCount + 1;
+        }
+
+        if (this == YIELD || idleCount < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+            return idleCount + 1;
+        }
+
+        LockSupport.parkNanos(this, PARK_NANOS);
+        return idleCount;
+    }
+
+    /**
+     * Checks if the next wait parks, so the loop's producers must be able to wake it.
+     *
+     * @param idleCount the number of empty checks in a row
+     * @return true, if it parks
+     */
+    public boolean willPark(int idleCount) {
+        return this == PARK && idleCount >= SPIN_TRIES + YIELD_TRIES;
+    }
+
+}
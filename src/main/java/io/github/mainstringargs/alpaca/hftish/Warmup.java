@@ -0,0 +1,328 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The Warmup drives synthetic quotes and trades through the same code the live path runs, so the
+ * JIT has compiled it before the open instead of during the first minutes of trading. The ticks
+ * are published into an {@link EventLoop}, decided by an {@link Algorithm} behind its own
+ * {@link RiskGate}, and every signal is submitted through an {@link OrderGateway} to a stub broker
+ * that accepts it and fills it at its limit, so the ack and fill handling is warmed as well.
+ * <p>
+ * The algorithm also journals and counts into a scratch {@link EventJournal},
+ * {@link EngineMetrics} and {@link PositionJournal}, so the branches the live algorithms take for
+ * them are profiled as taken and the compiled code isn't thrown away on the first real signal.
+ * Only the broker behind the gateway and the gateway's listener are stand-ins, and those are
+ * called on the gateway's thread after an order has left the decision path. Nothing here touches
+ * the engine's own state.
+ * <p>
+ * Ticks alternate between two penny-spread levels, one imbalanced towards the bid and one towards
+ * the ask, so every level is a buy or sell signal, and the buys and sells fill at the same price.
+ * Like the live tape, most trades are evaluated all the way through and not followed. Only one
+ * buy and one sell of each round are logged, so a warmup adds two lines a round to the order log
+ * rather than one a level, while the logging is still compiled in as it runs after the open.
+ * Rounds are repeated until a round adds no JIT compilation time, up to {@link #MAX_ROUNDS}.
+ */
+public class Warmup {
+
+    /** The logger. */
+    private static Logger LOGGER = LogManager.getLogger(Warmup.class);
+
+    /** The symbol the synthetic ticks are for. */
+    public static final String SYMBOL = "WARMUP";
+
+    /** The most rounds run. */
+    public static final int MAX_ROUNDS = 20;
+
+    /** The trades inside the spread at each level, which are evaluated but not followed. */
+    public static final int UNFOLLOWED_TRADES = 16;
+
+    /** The position journal records a level can write: an intent, its ack and its fill. */
+    private static final int RECORDS_PER_LEVEL = 3;
+
+    /** How long an order may take to come back before the warmup gives up. */
+    private static final long ORDER_TIMEOUT_MILLIS = 1000;
+
+    /** The algo config. */
+    private final AlgoConfig algoConfig;
+
+    /**
+     * Instantiates a new warmup.
+     *
+     * @param algoConfig the algo config the live algorithms run with
+     */
+    public Warmup(AlgoConfig algoConfig) {
+        this.algoConfig = algoConfig;
+    }
+
+    /**
+     * Runs rounds of synthetic ticks until the JIT settles.
+     *
+     * @param iterations the levels per round
+     */
+    public void run(int iterations) {
+        CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+        boolean monitored = compiler != null && compiler.isCompilationTimeMonitoringSupported();
+        long start = System.nanoTime();
+
+        LatencyStats latencyStats = new LatencyStats();
+        final EventLoop loop = new EventLoop("warmup", EventLoop.DEFAULT_CAPACITY,
+                        algoConfig.getWaitStrategy(), latencyStats);
+        AccountState accountState = new AccountState(null);
+        accountState.setBuyingPowerCents(Long.MAX_VALUE / 2);
+        RiskGate riskGate = new RiskGate(algoConfig);
+
+        final Algorithm[] algorithm = new Algorithm[1];
+        OrderGatewayListener fills = new OrderGatewayListener() {
+
+            @Override
+            public void onOrderAccepted(OrderIntent intent, String orderId) {
+                loop.publishOrderAccepted(algorithm[0], intent, orderId);
+                loop.publishOrderUpdate(algorithm[0], OrderUpdateType.FILL, orderId,
+                                intent.getSide(), intent.getQuantity(), intent.getQuantity(),
+                                intent.getLimitPrice(), intent.getLimitPrice());
+            }
+
+            @Override
+            public void onOrderFailed(OrderIntent intent, String reason) {
+                loop.publishOrderFailed(algorithm[0], intent, reason);
+            }
+        };
+        OrderGateway orderGateway = new OrderGateway(new FillingBroker(), fills,
+                        OrderGateway.DEFAULT_CAPACITY, latencyStats);
+
+        EventJournal journal = new EventJournal(EventJournal.DEFAULT_CAPACITY);
+        journal.start();
+
+        File journalFile = null;
+        PositionJournal positionJournal = null;
+        try {
+            journalFile = File.createTempFile("warmup", ".journal");
+            journalFile.deleteOnExit();
+            positionJournal = new PositionJournal(journalFile, iterations * RECORDS_PER_LEVEL,
+                            algoConfig.getJournalCommitMillis());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        algorithm[0] = new Algorithm(SYMBOL, algoConfig, accountState, orderGateway, riskGate,
+                        journal, new EngineMetrics(), positionJournal);
+
+        long time = 0;
+        int rounds = 0;
+
+        try {
+            long compileMillis = monitored ? compiler.getTotalCompilationTime() : 0;
+
+            while (rounds < MAX_ROUNDS) {
+                // Each round writes over the last one's records, so the file never fills
+                if (positionJournal != null) {
+                    positionJournal.startSession(rounds + 1);
+                }
+
+                time = round(loop, algorithm[0], riskGate, iterations, time);
+                rounds++;
+
+                if (!monitored) {
+                    break;
+                }
+
+                long previous = compileMillis;
+                compileMillis = compiler.getTotalCompilationTime();
+
+                if (rounds > 1 && compileMillis == previous) {
+                    break;
+                }
+            }
+        } catch (IllegalStateException e) {
+            LOGGER.warn("Warmup stopped: " + e.getMessage());
+        } finally {
+            orderGateway.shutdown();
+            loop.shutdown();
+            journal.stop();
+
+            if (journalFile != null) {
+                journalFile.delete();
+            }
+        }
+
+        LOGGER.info("Warmed up in " + rounds + " rounds of " + iterations + " levels in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms"
+                        + (monitored ? "; JIT compilation time "
+                                        + compiler.getTotalCompilationTime() + "ms" : ""));
+    }
+
+    /**
+     * Runs one round of levels, each with a trade too small to follow, trades inside the spread and
+     * one that signals.
+     *
+     * @param loop the loop
+     * @param algorithm the algorithm
+     * @param riskGate the risk gate
+     * @param iterations the levels
+     * @param time the synthetic time to start from, in milliseconds
+     * @return the synthetic time reached
+     */
+    private long round(EventLoop loop, Algorithm algorithm, RiskGate riskGate, int iterations,
+                    long time) {
+        long step = algoConfig.getQuoteGuardMillis() + 1;
+        long bid = 10 * Ticks.PER_DOLLAR;
+
+        for (int i = 0; i < iterations; i++) {
+            boolean buy = (i & 1) == 0;
+            long levelBid = buy ? bid : bid + Ticks.PER_CENT;
+            long ask = levelBid + Ticks.PER_CENT;
+
+            // The loop is drained, so the flag is seen by the level's trades
+            algorithm.setLogSignals(i == 1 || i == 2);
+
+            time += step;
+            loop.publishQuote(algorithm, time, levelBid, ask, buy ? 900 : 100, buy ? 100 : 900);
+            time += step;
+            loop.publishTrade(algorithm, time, buy ? ask : levelBid, 1, System.nanoTime());
+
+            for (int j = 0; j < UNFOLLOWED_TRADES; j++) {
+                time += step;
+                loop.publishTrade(algorithm, time, levelBid + Ticks.PER_CENT / 2,
+                                algoConfig.getMinTradeSize(), System.nanoTime());
+            }
+
+            time += step;
+            loop.publishTrade(algorithm, time, buy ? ask : levelBid,
+                            algoConfig.getMinTradeSize(), System.nanoTime());
+
+            awaitOrders(loop, riskGate);
+        }
+
+        return time;
+    }
+
+    /**
+     * Waits until the loop has handled every tick and the order it led to, if any, has filled.
+     *
+     * @param loop the loop
+     * @param riskGate the risk gate
+     */
+    private static void awaitOrders(EventLoop loop, RiskGate riskGate) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ORDER_TIMEOUT_MILLIS);
+
+        // The open order is taken while the trade is handled, so once the loop is drained an
+        // order in flight is still counted until its fill has been handled
+        while (!loop.isDrained() || riskGate.getOpenOrders() > 0) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("an order didn't come back");
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * A broker that accepts every order. The fills are published by the gateway listener.
+     */
+    private static class FillingBroker implements Broker {
+
+        /** The order count. */
+        private long orderCount;
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see io.github.mainstringargs.alpaca.hftish.Broker#getMarketHours()
+         */
+        @Override
+        public MarketHours getMarketHours() throws BrokerException {
+            throw new BrokerException("Not available during warmup");
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see io.github.mainstringargs.alpaca.hftish.Broker#getBuyingPowerCents()
+         */
+        @Override
+        public long getBuyingPowerCents() throws BrokerException {
+            throw new BrokerException("Not available during warmup");
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see io.github.mainstringargs.alpaca.hftish.Broker#getPositions()
+         */
+        @Override
+        public Map<String, Long> getPositions() {
+            return Collections.emptyMap();
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see io.github.mainstringargs.alpaca.hftish.Broker#getOpenOrderIds(java.util.
+         * Collection)
+         */
+        @Override
+        public List<String> getOpenOrderIds(Collection<String> symbols) {
+            return Collections.emptyList();
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see io.github.mainstringargs.alpaca.hftish.Broker#isImmediateOrCancel()
+         */
+        @Override
+        public boolean isImmediateOrCancel() {
+            return true;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see io.github.mainstringargs.alpaca.hftish.Broker#submitOrder(io.github.
+         * mainstringargs.alpaca.hftish.OrderIntent)
+         */
+        @Override
+        public String submitOrder(OrderIntent intent) {
+            return "warmup-" + orderCount++;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see io.github.mainstringargs.alpaca.hftish.Broker#cancelOrder(java.lang.String)
+         */
+        @Override
+        public boolean cancelOrder(String orderId) {
+            return true;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see io.github.mainstringargs.alpaca.hftish.Broker#addOrderUpdateListener(io.github.
+         * mainstringargs.alpaca.hftish.OrderUpdateListener)
+         */
+        @Override
+        public void addOrderUpdateListener(OrderUpdateListener listener) {}
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see io.github.mainstringargs.alpaca.hftish.Broker#removeOrderUpdateListener(io.github.
+         * mainstringargs.alpaca.hftish.OrderUpdateListener)
+         */
+        @Override
+        public void removeOrderUpdateListener(OrderUpdateListener listener) {}
+    }
+
+}
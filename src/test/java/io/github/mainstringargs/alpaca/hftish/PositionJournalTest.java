@@ -0,0 +1,265 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import static org.junit.Assert.assertEquals;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+
+/**
+ * Tests writing a {@link PositionJournal}, reopening it as after a crash and replaying it.
+ */
+public class PositionJournalTest {
+
+    /** The records the test journals hold. */
+    private static final int CAPACITY = 64;
+
+    /** The intent journaled. */
+    private static final OrderIntent INTENT =
+                    new OrderIntent("SNAP", 100, OrderSide.BUY, 100500, 42);
+
+    /** The journal file. */
+    private File file;
+
+    /**
+     * Creates the journal file.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("positions", ".journal");
+    }
+
+    /**
+     * Deletes the journal file.
+     */
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Every kind of record is replayed as it was written, in order.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void replaysRecordsInOrder() throws IOException {
+        writeSession(open(), 7);
+
+        PositionJournal reopened = open();
+
+        assertEquals(7, reopened.getSession());
+        assertEquals(4, reopened.getRecoveredCount());
+        assertEquals(Arrays.asList("checkpoint SNAP 300", "intent " + INTENT,
+                        "accepted " + INTENT + " order-1",
+                        "update SNAP PARTIAL_FILL order-1 BUY 100 40 100500 100400"),
+                        replay(reopened));
+    }
+
+    /**
+     * A last record torn by a crash fails its checksum and is neither replayed nor kept: the next
+     * record is written in its place.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void ignoresTornFinalRecord() throws IOException {
+        writeSession(open(), 7);
+
+        tear(3);
+
+        PositionJournal reopened = open();
+
+        assertEquals(3, reopened.getRecoveredCount());
+        assertEquals(3, replay(reopened).size());
+
+        reopened.recordFailed(INTENT);
+
+        PositionJournal again = open();
+
+        assertEquals(4, again.getRecoveredCount());
+        assertEquals("failed " + INTENT, replay(again).get(3));
+    }
+
+    /**
+     * The records written past a torn one are cleared when the journal is opened, so once new
+     * records are appended behind the torn one and the journal is opened again, they aren't
+     * replayed after them.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void clearsRecordsPastTornRecord() throws IOException {
+        writeSession(open(), 7);
+
+        // The second record was torn while the others made it
+        tear(1);
+
+        PositionJournal reopened = open();
+
+        assertEquals(1, reopened.getRecoveredCount());
+
+        reopened.recordCheckpoint("SNAP", 500);
+
+        PositionJournal again = open();
+
+        assertEquals(2, again.getRecoveredCount());
+        assertEquals(Arrays.asList("checkpoint SNAP 300", "checkpoint SNAP 500"), replay(again));
+    }
+
+    /**
+     * A session whose first record was torn is started again without its other records.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void restartedSessionClearsItsOldRecords() throws IOException {
+        writeSession(open(), 7);
+        tear(0);
+
+        PositionJournal reopened = open();
+
+        assertEquals(0, reopened.getRecoveredCount());
+
+        reopened.startSession(7);
+        reopened.recordCheckpoint("SNAP", 500);
+
+        PositionJournal again = open();
+
+        assertEquals(7, again.getSession());
+        assertEquals(Arrays.asList("checkpoint SNAP 500"), replay(again));
+    }
+
+    /**
+     * A last record whose checksum was never written is not replayed.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void ignoresUnfinishedFinalRecord() throws IOException {
+        writeSession(open(), 7);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(3 * PositionJournal.RECORD_SIZE);
+            randomAccessFile.write(new byte[8]);
+        }
+
+        assertEquals(3, open().getRecoveredCount());
+    }
+
+    /**
+     * A new session overwrites the last one from the start, and the last one's records past its
+     * end are not replayed with it.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void newSessionDoesNotReplayPreviousTail() throws IOException {
+        writeSession(open(), 7);
+
+        PositionJournal journal = open();
+        journal.startSession(8);
+
+        assertEquals(0, journal.getRecoveredCount());
+
+        journal.recordCheckpoint("SNAP", 500);
+
+        PositionJournal reopened = open();
+
+        assertEquals(8, reopened.getSession());
+        assertEquals(1, reopened.getRecoveredCount());
+        assertEquals(Arrays.asList("checkpoint SNAP 500"), replay(reopened));
+    }
+
+    /**
+     * Opens the journal file.
+     *
+     * @return the journal
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private PositionJournal open() throws IOException {
+        return new PositionJournal(file, CAPACITY, 10);
+    }
+
+    /**
+     * Tears a record as a crash mid-write would: part of its quantity never reaches the file.
+     *
+     * @param index the record
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void tear(int index) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(index * PositionJournal.RECORD_SIZE + 32);
+            randomAccessFile.write(0xFF);
+        }
+    }
+
+    /**
+     * Writes a session of four records: a checkpoint, and an intent that is accepted and
+     * partially filled.
+     *
+     * @param journal the journal
+     * @param session the session
+     */
+    private static void writeSession(PositionJournal journal, long session) {
+        journal.startSession(session);
+        journal.recordCheckpoint("SNAP", 300);
+        journal.recordIntent(INTENT);
+        journal.recordAccepted(INTENT, "order-1");
+        journal.recordUpdate("SNAP", OrderUpdateType.PARTIAL_FILL, "order-1", OrderSide.BUY, 100,
+                        40, 100500, 100400);
+    }
+
+    /**
+     * Replays a journal into a list of one line per record.
+     *
+     * @param journal the journal
+     * @return the records
+     */
+    private static List<String> replay(PositionJournal journal) {
+        final List<String> records = new ArrayList<String>();
+
+        journal.replay(new PositionJournalListener() {
+
+            @Override
+            public void onCheckpoint(String symbol, long totalShares) {
+                records.add("checkpoint " + symbol + " " + totalShares);
+            }
+
+            @Override
+            public void onIntent(OrderIntent intent) {
+                records.add("intent " + intent);
+            }
+
+            @Override
+            public void onOrderAccepted(OrderIntent intent, String orderId) {
+                records.add("accepted " + intent + " " + orderId);
+            }
+
+            @Override
+            public void onOrderFailed(OrderIntent intent) {
+                records.add("failed " + intent);
+            }
+
+            @Override
+            public void onOrderUpdate(String symbol, OrderUpdateType type, String orderId,
+                            OrderSide side, long qty, long filledQty, long limitPrice,
+                            long filledAvgPrice) {
+                records.add("update " + symbol + " " + type + " " + orderId + " " + side + " "
+                                + qty + " " + filledQty + " " + limitPrice + " "
+                                + filledAvgPrice);
+            }
+        });
+
+        return records;
+    }
+
+}
@@ -0,0 +1,280 @@
+package io.github.mainstringargs.alpaca.hftish;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import io.github.mainstringargs.alpaca.enums.OrderSide;
+
+/**
+ * Tests rebuilding a position from a {@link PositionJournal} with a {@link PositionRecovery} and
+ * reconciling it with the broker.
+ */
+public class PositionRecoveryTest {
+
+    /** The symbol. */
+    private static final String SYMBOL = "SNAP";
+
+    /** The limit price, in ticks. */
+    private static final long PRICE = 100500;
+
+    /** The journal file. */
+    private File file;
+
+    /** The journal written before the restart. */
+    private PositionJournal journal;
+
+    /** The risk gate. */
+    private RiskGate riskGate;
+
+    /** The algorithm. */
+    private Algorithm algorithm;
+
+    /** The symbol workers. */
+    private SymbolWorkers workers;
+
+    /** The broker. */
+    private StubBroker broker;
+
+    /** The recovery. */
+    private PositionRecovery recovery;
+
+    /**
+     * Creates the journal, and an algorithm and recovery as the engine does after a restart.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("positions", ".journal");
+        journal = new PositionJournal(file, 64, 10);
+        journal.startSession(1);
+
+        AlgoConfig algoConfig = new AlgoConfig();
+        AccountState accountState = new AccountState(null);
+        accountState.setBuyingPowerCents(AccountState.toCents(100000));
+        riskGate = new RiskGate(algoConfig);
+
+        algorithm = new Algorithm(SYMBOL, algoConfig, accountState, new OrderRouter() {
+
+            @Override
+            public boolean submit(OrderIntent intent) {
+                return true;
+            }
+        }, riskGate, null, null, null);
+
+        workers = new SymbolWorkers(1, WaitStrategy.PARK, new LatencyStats());
+        broker = new StubBroker();
+        recovery = new PositionRecovery(Collections.singletonMap(SYMBOL, algorithm), workers,
+                        broker);
+    }
+
+    /**
+     * Stops the workers and deletes the journal file.
+     */
+    @After
+    public void tearDown() {
+        workers.shutdown();
+        file.delete();
+    }
+
+    /**
+     * An order whose fill was journaled before its ack finished before the restart, so it is
+     * filled in the position and not recovered as live.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void updateBeforeAcceptedFinishesOrder() throws IOException {
+        OrderIntent intent = buy(1);
+
+        journal.recordCheckpoint(SYMBOL, 100);
+        journal.recordIntent(intent);
+        journal.recordUpdate(SYMBOL, OrderUpdateType.FILL, "order-1", OrderSide.BUY, 100, 100,
+                        PRICE, PRICE);
+        journal.recordAccepted(intent, "order-1");
+
+        assertEquals(4, recovery.replay(reopen()));
+
+        Position position = algorithm.getPosition();
+
+        assertEquals(200, position.getTotalShares());
+        assertEquals(0, position.getPendingBuyShares());
+        assertEquals(0, position.getOpenOrderCount());
+        assertEquals(0, riskGate.getOpenOrders());
+
+        // Were it live, reconciling would close it out for not being open at the broker
+        broker.positions.put(SYMBOL, 200L);
+        recovery.reconcile();
+
+        assertTrue(recovery.accept("order-1", OrderUpdateType.FILL));
+        assertEquals(200, position.getTotalShares());
+    }
+
+    /**
+     * An order that finished while the engine was down is closed out with its journaled fill, and
+     * its late updates from the stream are dropped; an order still open is kept live.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void dropsLateUpdatesForClosedOutOrders() throws IOException {
+        OrderIntent finished = buy(1);
+        OrderIntent open = buy(2);
+
+        journal.recordCheckpoint(SYMBOL, 0);
+        journal.recordIntent(finished);
+        journal.recordAccepted(finished, "order-1");
+        journal.recordUpdate(SYMBOL, OrderUpdateType.PARTIAL_FILL, "order-1", OrderSide.BUY, 100,
+                        40, PRICE, PRICE);
+        journal.recordIntent(open);
+        journal.recordAccepted(open, "order-2");
+
+        recovery.replay(reopen());
+
+        Position position = algorithm.getPosition();
+
+        assertEquals(40, position.getTotalShares());
+        assertEquals(160, position.getPendingBuyShares());
+        assertEquals(2, riskGate.getOpenOrders());
+
+        broker.openOrderIds.add("order-2");
+        broker.positions.put(SYMBOL, 40L);
+        recovery.reconcile();
+
+        assertEquals(40, position.getTotalShares());
+        assertEquals(100, position.getPendingBuyShares());
+        assertEquals(1, riskGate.getOpenOrders());
+
+        assertFalse(recovery.accept("order-1", OrderUpdateType.PARTIAL_FILL));
+        assertFalse(recovery.accept("order-1", OrderUpdateType.FILL));
+        assertTrue(recovery.accept("order-2", OrderUpdateType.PARTIAL_FILL));
+        assertTrue(recovery.accept("order-2", OrderUpdateType.FILL));
+        assertTrue(recovery.accept("order-3", OrderUpdateType.FILL));
+    }
+
+    /**
+     * An intent with no ack is released once every order open at the broker is accounted for.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void releasesUnacknowledgedIntents() throws IOException {
+        journal.recordCheckpoint(SYMBOL, 0);
+        journal.recordIntent(buy(1));
+
+        recovery.replay(reopen());
+
+        assertEquals(100, algorithm.getPosition().getPendingBuyShares());
+        assertEquals(1, riskGate.getOpenOrders());
+
+        recovery.reconcile();
+
+        assertEquals(0, algorithm.getPosition().getPendingBuyShares());
+        assertEquals(0, riskGate.getOpenOrders());
+    }
+
+    /**
+     * An intent with no ack stays reserved while the broker has an open order the journal
+     * doesn't know, as that order may be it.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void keepsUnacknowledgedIntentsWithUnknownOpenOrders() throws IOException {
+        journal.recordCheckpoint(SYMBOL, 0);
+        journal.recordIntent(buy(1));
+
+        recovery.replay(reopen());
+
+        broker.openOrderIds.add("order-9");
+        recovery.reconcile();
+
+        assertEquals(100, algorithm.getPosition().getPendingBuyShares());
+        assertEquals(1, riskGate.getOpenOrders());
+    }
+
+    /**
+     * Reopens the journal as after a crash.
+     *
+     * @return the journal
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private PositionJournal reopen() throws IOException {
+        return new PositionJournal(file, 64, 10);
+    }
+
+    /**
+     * Makes a buy intent.
+     *
+     * @param signalNanos the signal nanos
+     * @return the intent
+     */
+    private static OrderIntent buy(long signalNanos) {
+        return new OrderIntent(SYMBOL, 100, OrderSide.BUY, PRICE, signalNanos);
+    }
+
+    /**
+     * A broker that reports the open orders and positions it is given.
+     */
+    private static class StubBroker implements Broker {
+
+        /** The open order ids. */
+        final List<String> openOrderIds = new ArrayList<String>();
+
+        /** The positions. */
+        final Map<String, Long> positions = new HashMap<String, Long>();
+
+        @Override
+        public MarketHours getMarketHours() throws BrokerException {
+            throw new BrokerException("Not available");
+        }
+
+        @Override
+        public long getBuyingPowerCents() throws BrokerException {
+            throw new BrokerException("Not available");
+        }
+
+        @Override
+        public Map<String, Long> getPositions() {
+            return positions;
+        }
+
+        @Override
+        public List<String> getOpenOrderIds(Collection<String> symbols) {
+            return openOrderIds;
+        }
+
+        @Override
+        public boolean isImmediateOrCancel() {
+            return true;
+        }
+
+        @Override
+        public String submitOrder(OrderIntent intent) throws BrokerException {
+            throw new BrokerException("Not available");
+        }
+
+        @Override
+        public boolean cancelOrder(String orderId) {
+            return false;
+        }
+
+        @Override
+        public void addOrderUpdateListener(OrderUpdateListener listener) {}
+
+        @Override
+        public void removeOrderUpdateListener(OrderUpdateListener listener) {}
+    }
+
+}